@@ -504,6 +504,18 @@ public interface CliMessages {
         return format(bundle.getString("prospero.updates.list.header"), installationDir.toAbsolutePath());
     }
 
+    default String watchChangesHeader(Path installationDir) {
+        return format(bundle.getString("prospero.updates.watch.header"), installationDir.toAbsolutePath());
+    }
+
+    default String updateEstimate(int replacedFiles, int removedFiles, String download, String write, String backup) {
+        return format(bundle.getString("prospero.updates.estimate"), replacedFiles, removedFiles, download, write, backup);
+    }
+
+    default String updateEstimateUnknown(int artifacts) {
+        return format(bundle.getString("prospero.updates.estimate.unknown"), artifacts);
+    }
+
     default String revertStart(Path installationDir, String revision) {
         return format(bundle.getString("prospero.revert.started.header"), installationDir, revision);
     }
@@ -718,6 +730,10 @@ public interface CliMessages {
         return format(bundle.getString("prospero.candidate.apply.error.rollback_error.desc"), backup);
     }
 
+    default String candidateApplyNotModified() {
+        return bundle.getString("prospero.candidate.apply.error.not_modified.desc");
+    }
+
     default OperationException cancelledByConfilcts() {
         return new OperationException(format(
                 bundle.getString("prospero.updates.apply.candidate.cancel_conflicts"),
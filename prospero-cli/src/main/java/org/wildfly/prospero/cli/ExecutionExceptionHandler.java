@@ -110,7 +110,9 @@ public class ExecutionExceptionHandler implements CommandLine.IExecutionExceptio
                 ApplyCandidateException ace = (ApplyCandidateException) ex;
                 console.error(System.lineSeparator() + ace.getMessage());
 
-                if (ace.isRollbackSuccessful()) {
+                if (!ace.isInstallationModified()) {
+                    console.error(System.lineSeparator() + CliMessages.MESSAGES.candidateApplyNotModified());
+                } else if (ace.isRollbackSuccessful()) {
                     console.error(System.lineSeparator() + CliMessages.MESSAGES.candidateApplyRollbackSuccess());
                 } else {
                     console.error(System.lineSeparator() + CliMessages.MESSAGES.candidateApplyRollbackFailure(ace.getBackupPath()));
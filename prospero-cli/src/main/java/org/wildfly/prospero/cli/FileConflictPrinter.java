@@ -21,17 +21,46 @@ import org.wildfly.prospero.api.Console;
 import org.wildfly.prospero.api.FileConflict;
 
 import java.util.List;
+import java.util.function.Consumer;
 
-public class FileConflictPrinter {
+/**
+ * Prints {@code FileConflict}s as they are reported. The header is printed before the first conflict, so nothing is
+ * printed if there are no conflicts.
+ */
+public class FileConflictPrinter implements Consumer<FileConflict> {
+
+    private final Console console;
+    private int count;
+
+    public FileConflictPrinter(Console console) {
+        this.console = console;
+    }
 
     public static void print(List<FileConflict> fileConflicts, Console console) {
-        if (!fileConflicts.isEmpty()) {
+        final FileConflictPrinter printer = new FileConflictPrinter(console);
+        fileConflicts.forEach(printer);
+        printer.finish();
+    }
+
+    @Override
+    public void accept(FileConflict fileConflict) {
+        if (count == 0) {
             console.println("\n");
             console.println(CliMessages.MESSAGES.conflictingChangesDetected());
-            for (FileConflict fileConflict : fileConflicts) {
-                console.println(fileConflict.prettyPrint());
-            }
+        }
+        console.println(fileConflict.prettyPrint());
+        count++;
+    }
+
+    /**
+     * completes the list of printed conflicts.
+     *
+     * @return number of printed conflicts
+     */
+    public int finish() {
+        if (count > 0) {
             console.println("\n");
         }
+        return count;
     }
 }
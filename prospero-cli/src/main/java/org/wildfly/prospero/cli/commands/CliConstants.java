@@ -55,6 +55,7 @@ public final class CliConstants {
         public static final String REVERT = "revert";
         public static final String SUBSCRIBE = "subscribe";
         public static final String UPDATE = "update";
+        public static final String WATCH = "watch";
         protected static final String VERSIONS = "versions";
     }
 
@@ -104,5 +105,6 @@ public final class CliConstants {
     public static final String YES = "--yes";
     public static final String NO_CONFLICTS_ONLY = "--no-conflicts-only";
     public static final String DRY_RUN = "--dry-run";
+    public static final String ESTIMATE = "--estimate";
 
 }
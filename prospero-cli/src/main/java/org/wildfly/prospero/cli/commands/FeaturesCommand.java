@@ -17,11 +17,11 @@
 
 package org.wildfly.prospero.cli.commands;
 
+import org.jboss.galleon.ProvisioningException;
 import org.jboss.galleon.config.ConfigId;
 import org.wildfly.channel.Repository;
 import org.wildfly.prospero.actions.ApplyCandidateAction;
 import org.wildfly.prospero.actions.FeaturesAddAction;
-import org.wildfly.prospero.api.FileConflict;
 import org.wildfly.prospero.api.MavenOptions;
 import org.wildfly.prospero.api.RepositoryUtils;
 import org.wildfly.prospero.cli.ActionFactory;
@@ -32,6 +32,7 @@ import org.wildfly.prospero.cli.LicensePrinter;
 import org.wildfly.prospero.cli.RepositoryDefinition;
 import org.wildfly.prospero.cli.ReturnCodes;
 import org.wildfly.prospero.api.TemporaryFilesManager;
+import org.wildfly.prospero.api.exceptions.OperationException;
 import org.wildfly.prospero.licenses.License;
 import org.wildfly.prospero.model.FeaturePackTemplate;
 import picocli.CommandLine;
@@ -149,7 +150,7 @@ public class FeaturesCommand extends AbstractParentCommand {
 
                         // list conflicts (e.g. config files) and apply the update
                         final ApplyCandidateAction applyCandidateAction = actionFactory.applyUpdate(installationDir, candidate);
-                        if (confirmConflicts(applyCandidateAction.getConflicts())) {
+                        if (confirmConflicts(applyCandidateAction)) {
                             applyCandidateAction.applyUpdate(ApplyCandidateAction.Type.FEATURE_ADD);
                         }
                     } catch (FeaturesAddAction.LayerNotFoundException e) {
@@ -175,14 +176,20 @@ public class FeaturesCommand extends AbstractParentCommand {
             }
         }
 
-        private boolean confirmConflicts(List<FileConflict> conflicts) {
-            if (conflicts.isEmpty() || skipConfirmation) {
+        private boolean confirmConflicts(ApplyCandidateAction applyCandidateAction) throws ProvisioningException, OperationException {
+            if (skipConfirmation) {
                 console.println(CliMessages.MESSAGES.featuresAddPromptAccepted());
                 return true;
             }
 
-            FileConflictPrinter.print(conflicts, console);
-            return skipConfirmation || console.confirm(CliMessages.MESSAGES.featuresAddPrompt(),
+            final FileConflictPrinter conflictPrinter = new FileConflictPrinter(console);
+            applyCandidateAction.reportConflicts(conflictPrinter);
+            if (conflictPrinter.finish() == 0) {
+                console.println(CliMessages.MESSAGES.featuresAddPromptAccepted());
+                return true;
+            }
+
+            return console.confirm(CliMessages.MESSAGES.featuresAddPrompt(),
                     CliMessages.MESSAGES.featuresAddPromptAccepted(),
                     CliMessages.MESSAGES.featuresAddPromptCancelled());
         }
@@ -29,7 +29,6 @@ import org.wildfly.prospero.ProsperoLogger;
 import org.wildfly.prospero.actions.ApplyCandidateAction;
 import org.wildfly.prospero.actions.InstallationHistoryAction;
 import org.wildfly.prospero.api.ArtifactChange;
-import org.wildfly.prospero.api.FileConflict;
 import org.wildfly.prospero.api.MavenOptions;
 import org.wildfly.prospero.api.RepositoryUtils;
 import org.wildfly.prospero.api.SavedState;
@@ -57,14 +56,15 @@ public class RevertCommand extends AbstractParentCommand {
             throws OperationException, ProvisioningException {
         List<ArtifactChange> artifactUpdates = applyCandidateAction.findUpdates().getArtifactUpdates();
         console.printArtifactChanges(artifactUpdates);
-        final List<FileConflict> conflicts = applyCandidateAction.getConflicts();
-        FileConflictPrinter.print(conflicts, console);
+        final FileConflictPrinter conflictPrinter = new FileConflictPrinter(console);
+        applyCandidateAction.reportConflicts(conflictPrinter);
+        final int conflictCount = conflictPrinter.finish();
 
         if (dryRun) {
             return SUCCESS;
         }
 
-        if (noConflictsOnly && !conflicts.isEmpty()) {
+        if (noConflictsOnly && conflictCount > 0) {
             throw CliMessages.MESSAGES.cancelledByConfilcts();
         }
 
@@ -44,7 +44,6 @@ import org.wildfly.prospero.ProsperoLogger;
 import org.wildfly.prospero.actions.ApplyCandidateAction;
 import org.wildfly.prospero.actions.SubscribeNewServerAction;
 import org.wildfly.prospero.actions.UpdateAction;
-import org.wildfly.prospero.api.FileConflict;
 import org.wildfly.prospero.api.InstallationMetadata;
 import org.wildfly.prospero.api.InstallationProfilesManager;
 import org.wildfly.prospero.api.MavenOptions;
@@ -60,10 +59,12 @@ import org.wildfly.prospero.cli.FileConflictPrinter;
 import org.wildfly.prospero.cli.RepositoryDefinition;
 import org.wildfly.prospero.cli.ReturnCodes;
 import org.wildfly.prospero.api.TemporaryFilesManager;
+import org.wildfly.prospero.galleon.ChangeJournal;
 import org.wildfly.prospero.galleon.FeaturePackLocationParser;
 import org.wildfly.prospero.galleon.GalleonUtils;
 import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
 import org.wildfly.prospero.model.InstallationProfile;
+import org.wildfly.prospero.updates.UpdateEstimate;
 import org.wildfly.prospero.updates.UpdateSet;
 import picocli.CommandLine;
 
@@ -142,10 +143,9 @@ public class UpdateCommand extends AbstractParentCommand {
                     console.buildUpdatesComplete();
 
                     ApplyCandidateAction applyCandidateAction = actionFactory.applyUpdate(installDir, targetDir);
-                    final List<FileConflict> conflicts = applyCandidateAction.getConflicts();
-                    if (!conflicts.isEmpty()) {
-                        FileConflictPrinter.print(conflicts, console);
-
+                    final FileConflictPrinter conflictPrinter = new FileConflictPrinter(console);
+                    applyCandidateAction.reportConflicts(conflictPrinter);
+                    if (conflictPrinter.finish() > 0) {
                         if (noConflictsOnly) {
                             throw CliMessages.MESSAGES.cancelledByConfilcts();
                         }
@@ -269,14 +269,15 @@ public class UpdateCommand extends AbstractParentCommand {
             }
 
             console.updatesFound(applyCandidateAction.findUpdates().getArtifactUpdates());
-            final List<FileConflict> conflicts = applyCandidateAction.getConflicts();
-            FileConflictPrinter.print(conflicts, console);
+            final FileConflictPrinter conflictPrinter = new FileConflictPrinter(console);
+            applyCandidateAction.reportConflicts(conflictPrinter);
+            final int conflictCount = conflictPrinter.finish();
 
             if (dryRun) {
                 return ReturnCodes.SUCCESS;
             }
 
-            if (noConflictsOnly && !conflicts.isEmpty()) {
+            if (noConflictsOnly && conflictCount > 0) {
                 throw CliMessages.MESSAGES.cancelledByConfilcts();
             }
 
@@ -302,6 +303,9 @@ public class UpdateCommand extends AbstractParentCommand {
     @CommandLine.Command(name = CliConstants.Commands.LIST, sortOptions = false)
     public static class ListCommand extends AbstractMavenCommand {
 
+        @CommandLine.Option(names = {CliConstants.ESTIMATE})
+        boolean estimate;
+
         public ListCommand(CliConsole console, ActionFactory actionFactory) {
             super(console, actionFactory);
         }
@@ -319,6 +323,9 @@ public class UpdateCommand extends AbstractParentCommand {
                 try (UpdateAction updateAction = actionFactory.update(installationDir, mavenOptions, console, repositories)) {
                     final UpdateSet updateSet = updateAction.findUpdates();
                     console.updatesFound(updateSet.getArtifactUpdates());
+                    if (estimate && !updateSet.isEmpty()) {
+                        printEstimate(updateAction.estimateUpdate(updateSet));
+                    }
                 }
 
                 final float totalTime = (System.currentTimeMillis() - startTime) / 1000f;
@@ -327,6 +334,56 @@ public class UpdateCommand extends AbstractParentCommand {
                 return ReturnCodes.SUCCESS;
             }
         }
+
+        private void printEstimate(UpdateEstimate updateEstimate) {
+            console.println("");
+            console.println(CliMessages.MESSAGES.updateEstimate(updateEstimate.getFilesToReplace(),
+                    updateEstimate.getFilesToRemove(),
+                    FileUtils.byteCountToDisplaySize(updateEstimate.getBytesToDownload()),
+                    FileUtils.byteCountToDisplaySize(updateEstimate.getBytesToWrite()),
+                    FileUtils.byteCountToDisplaySize(updateEstimate.getBackupBytes())));
+            if (updateEstimate.getUnknownArtifactCount() > 0) {
+                console.println(CliMessages.MESSAGES.updateEstimateUnknown(updateEstimate.getUnknownArtifactCount()));
+            }
+        }
+    }
+
+    @CommandLine.Command(name = CliConstants.Commands.WATCH, sortOptions = false)
+    public static class WatchCommand extends AbstractCommand {
+
+        @CommandLine.Option(names = CliConstants.DIR)
+        Optional<Path> directory;
+
+        public WatchCommand(CliConsole console, ActionFactory actionFactory) {
+            super(console, actionFactory);
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            final Path installationDir = determineInstallationDirectory(directory);
+
+            try (ChangeJournal.Watcher watcher = ChangeJournal.watch(installationDir)) {
+                final Thread shutdownHook = new Thread(() -> {
+                    try {
+                        watcher.close();
+                    } catch (IOException e) {
+                        log.debug("Unable to stop watching " + installationDir, e);
+                    }
+                });
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+                console.println(CliMessages.MESSAGES.watchChangesHeader(installationDir));
+                try {
+                    watcher.run();
+                } finally {
+                    try {
+                        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                    } catch (IllegalStateException e) {
+                        // already shutting down
+                    }
+                }
+            }
+            return ReturnCodes.SUCCESS;
+        }
     }
 
     @CommandLine.Command(name = CliConstants.Commands.SUBSCRIBE, sortOptions = false)
@@ -455,6 +512,7 @@ public class UpdateCommand extends AbstractParentCommand {
                     new UpdateCommand.ApplyCommand(console, actionFactory),
                     new UpdateCommand.PerformCommand(console, actionFactory),
                     new UpdateCommand.ListCommand(console, actionFactory),
+                    new UpdateCommand.WatchCommand(console, actionFactory),
                     new SubscribeCommand(console, actionFactory))
         );
     }
@@ -21,8 +21,16 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.contrib.java.lang.system.SystemErrRule;
 import org.junit.contrib.java.lang.system.SystemOutRule;
+import org.wildfly.prospero.actions.ApplyCandidateAction;
+import org.wildfly.prospero.api.FileConflict;
 import picocli.CommandLine;
 
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
 public class AbstractConsoleTest {
 
     @Rule
@@ -79,6 +87,17 @@ public class AbstractConsoleTest {
         return new ActionFactory();
     }
 
+    /**
+     * stubs the {@code applyCandidateAction} to report {@code conflicts} when the conflicts are requested.
+     */
+    protected static void mockConflicts(ApplyCandidateAction applyCandidateAction, List<FileConflict> conflicts) throws Exception {
+        when(applyCandidateAction.reportConflicts(any())).thenAnswer(invocation -> {
+            final Consumer<FileConflict> conflictConsumer = invocation.getArgument(0);
+            conflicts.forEach(conflictConsumer);
+            return conflicts.size();
+        });
+    }
+
     public String getStandardOutput() {
         return systemOutRule.getLog();
     }
@@ -181,7 +181,7 @@ public class ApplyUpdateCommandTest extends AbstractConsoleTest {
     public void testAskForConfirmationIfConflictsPresent() throws Exception {
         final Path updatePath = mockInstallation("update");
         final Path targetPath = mockInstallation("target");
-        when(applyCandidateAction.getConflicts()).thenReturn(List.of(mock(FileConflict.class)));
+        mockConflicts(applyCandidateAction, List.of(mock(FileConflict.class)));
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.APPLY,
                 CliConstants.CANDIDATE_DIR, updatePath.toString(),
                 CliConstants.DIR, targetPath.toString());
@@ -194,7 +194,7 @@ public class ApplyUpdateCommandTest extends AbstractConsoleTest {
     public void noConflictArgumentFailsCommand_WhenConflictsAreFound() throws Exception {
         final Path updatePath = mockInstallation("update");
         final Path targetPath = mockInstallation("target");
-        when(applyCandidateAction.getConflicts()).thenReturn(List.of(mock(FileConflict.class)));
+        mockConflicts(applyCandidateAction, List.of(mock(FileConflict.class)));
 
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.APPLY,
                 CliConstants.CANDIDATE_DIR, updatePath.toString(),
@@ -212,7 +212,7 @@ public class ApplyUpdateCommandTest extends AbstractConsoleTest {
     public void noConflictArgumentHasNoEffect_WhenNoConflictsAreFound() throws Exception {
         final Path updatePath = mockInstallation("update");
         final Path targetPath = mockInstallation("target");
-        when(applyCandidateAction.getConflicts()).thenReturn(Collections.emptyList());
+        mockConflicts(applyCandidateAction, Collections.emptyList());
 
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.APPLY,
                 CliConstants.CANDIDATE_DIR, updatePath.toString(),
@@ -227,7 +227,7 @@ public class ApplyUpdateCommandTest extends AbstractConsoleTest {
     public void dryRun_DoesntCallApplyAction() throws Exception {
         final Path updatePath = mockInstallation("update");
         final Path targetPath = mockInstallation("target");
-        when(applyCandidateAction.getConflicts()).thenReturn(Collections.emptyList());
+        mockConflicts(applyCandidateAction, Collections.emptyList());
 
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.APPLY,
                 CliConstants.CANDIDATE_DIR, updatePath.toString(),
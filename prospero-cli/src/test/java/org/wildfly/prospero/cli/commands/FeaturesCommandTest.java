@@ -333,10 +333,7 @@ public class FeaturesCommandTest extends AbstractMavenCommandTest {
 
     @Test
     public void promptUserIfConflictsDetected() throws Exception {
-        when(applyUpdateAction.getConflicts())
-                .thenReturn(List.of(
-                        FileConflict.userModified("path/to/file").updateModified().userPreserved())
-                );
+        mockConflicts(applyUpdateAction, List.of(FileConflict.userModified("path/to/file").updateModified().userPreserved()));
         commandLine.execute(CliConstants.Commands.FEATURE_PACKS, CliConstants.Commands.ADD,
                 CliConstants.DIR, installationDir.toString(),
                 CliConstants.TARGET_CONFIG, "test/idontexist",
@@ -348,10 +345,7 @@ public class FeaturesCommandTest extends AbstractMavenCommandTest {
 
     @Test
     public void rejectChangesIfConflictsAreNotAccepted() throws Exception {
-        when(applyUpdateAction.getConflicts())
-                .thenReturn(List.of(
-                        FileConflict.userModified("path/to/file").updateModified().userPreserved())
-                );
+        mockConflicts(applyUpdateAction, List.of(FileConflict.userModified("path/to/file").updateModified().userPreserved()));
         // reject 2nd prompt which should show user the conflicts
         this.setDenyConfirm(true, 2);
         commandLine.execute(CliConstants.Commands.FEATURE_PACKS, CliConstants.Commands.ADD,
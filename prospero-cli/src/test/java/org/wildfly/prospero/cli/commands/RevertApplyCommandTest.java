@@ -128,7 +128,7 @@ public class RevertApplyCommandTest extends AbstractConsoleTest {
 
     @Test
     public void noConflictArgumentFailsCommand_WhenConflictsAreFound() throws Exception {
-        when(applyCandidateAction.getConflicts()).thenReturn(List.of(mock(FileConflict.class)));
+        mockConflicts(applyCandidateAction, List.of(mock(FileConflict.class)));
 
         int exitCode = commandLine.execute(CliConstants.Commands.REVERT, CliConstants.Commands.APPLY,
                 CliConstants.DIR, installationDir.toString(),
@@ -144,7 +144,7 @@ public class RevertApplyCommandTest extends AbstractConsoleTest {
 
     @Test
     public void noConflictArgumentHasNoEffect_WhenNoConflictsAreFound() throws Exception {
-        when(applyCandidateAction.getConflicts()).thenReturn(Collections.emptyList());
+        mockConflicts(applyCandidateAction, Collections.emptyList());
 
         int exitCode = commandLine.execute(CliConstants.Commands.REVERT, CliConstants.Commands.APPLY,
                 CliConstants.DIR, installationDir.toString(),
@@ -157,7 +157,7 @@ public class RevertApplyCommandTest extends AbstractConsoleTest {
 
     @Test
     public void dryRun_DoesntCallApplyAction() throws Exception {
-        when(applyCandidateAction.getConflicts()).thenReturn(Collections.emptyList());
+        mockConflicts(applyCandidateAction, Collections.emptyList());
 
         int exitCode = commandLine.execute(CliConstants.Commands.REVERT, CliConstants.Commands.APPLY,
                 CliConstants.CANDIDATE_DIR, updateDir.toString(),
@@ -159,7 +159,7 @@ public class RevertPerformCommandTest extends AbstractMavenCommandTest {
 
     @Test
     public void noConflictArgumentFailsCommand_WhenConflictsAreFound() throws Exception {
-        when(applyCandidateAction.getConflicts()).thenReturn(List.of(mock(FileConflict.class)));
+        mockConflicts(applyCandidateAction, List.of(mock(FileConflict.class)));
 
         int exitCode = commandLine.execute(CliConstants.Commands.REVERT, CliConstants.Commands.PERFORM,
                 CliConstants.DIR, installationDir.toString(),
@@ -175,7 +175,7 @@ public class RevertPerformCommandTest extends AbstractMavenCommandTest {
 
     @Test
     public void noConflictArgumentHasNoEffect_WhenNoConflictsAreFound() throws Exception {
-        when(applyCandidateAction.getConflicts()).thenReturn(Collections.emptyList());
+        mockConflicts(applyCandidateAction, Collections.emptyList());
 
         int exitCode = commandLine.execute(CliConstants.Commands.REVERT, CliConstants.Commands.PERFORM,
                 CliConstants.DIR, installationDir.toString(),
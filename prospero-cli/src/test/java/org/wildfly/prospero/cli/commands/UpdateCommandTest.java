@@ -44,6 +44,7 @@ import org.wildfly.prospero.api.MavenOptions;
 import org.wildfly.prospero.cli.ActionFactory;
 import org.wildfly.prospero.cli.CliMessages;
 import org.wildfly.prospero.cli.ReturnCodes;
+import org.wildfly.prospero.updates.UpdateEstimate;
 import org.wildfly.prospero.updates.UpdateSet;
 import org.wildfly.prospero.test.MetadataTestUtils;
 
@@ -230,6 +231,26 @@ public class UpdateCommandTest extends AbstractMavenCommandTest {
         Mockito.verify(updateAction).findUpdates();
     }
 
+    @Test
+    public void testListWithEstimatePrintsEstimate() throws Exception {
+        System.setProperty(UpdateCommand.JBOSS_MODULE_PATH, installationDir.toString());
+        final UpdateSet updateSet = new UpdateSet(List.of(change("1.0.0", "1.0.1")));
+        when(updateAction.findUpdates()).thenReturn(updateSet);
+        final UpdateEstimate estimate = mock(UpdateEstimate.class);
+        when(estimate.getFilesToReplace()).thenReturn(1);
+        when(estimate.getFilesToRemove()).thenReturn(2);
+        when(estimate.getBytesToDownload()).thenReturn(2048L);
+        when(updateAction.estimateUpdate(updateSet)).thenReturn(estimate);
+
+        int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.LIST,
+                CliConstants.DIR, installationDir.toAbsolutePath().toString(), CliConstants.ESTIMATE);
+
+        assertEquals(ReturnCodes.SUCCESS, exitCode);
+        Mockito.verify(updateAction, never()).buildUpdate(any());
+        assertThat(getStandardOutput())
+                .contains(CliMessages.MESSAGES.updateEstimate(1, 2, "2 KB", "0 bytes", "0 bytes"));
+    }
+
     @Test
     public void testListCurrentDirNotValidInstallation() {
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.LIST);
@@ -239,6 +260,15 @@ public class UpdateCommandTest extends AbstractMavenCommandTest {
                 .getMessage()));
     }
 
+    @Test
+    public void testWatchCurrentDirNotValidInstallation() {
+        int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.WATCH);
+
+        Assert.assertEquals(ReturnCodes.INVALID_ARGUMENTS, exitCode);
+        assertTrue(getErrorOutput().contains(CliMessages.MESSAGES.invalidInstallationDir(UpdateCommand.currentDir().toAbsolutePath())
+                .getMessage()));
+    }
+
     @Test
     public void testBuildUpdateCallsUpdateActionWhenUpdatesAvailable() throws Exception {
         System.setProperty(UpdateCommand.JBOSS_MODULE_PATH, installationDir.toString());
@@ -310,7 +340,7 @@ public class UpdateCommandTest extends AbstractMavenCommandTest {
     public void noConflictArgumentFailsCommand_WhenConflictsAreFound() throws Exception {
         when(updateAction.findUpdates()).thenReturn(new UpdateSet(List.of(change("1.0.0", "1.0.1"))));
         when(updateAction.buildUpdate(any())).thenReturn(true);
-        when(applyCandidateAction.getConflicts()).thenReturn(List.of(mock(FileConflict.class)));
+        mockConflicts(applyCandidateAction, List.of(mock(FileConflict.class)));
 
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.PERFORM,
                 CliConstants.DIR, installationDir.toString(),
@@ -327,7 +357,7 @@ public class UpdateCommandTest extends AbstractMavenCommandTest {
     public void noConflictArgumentHasNoEffect_WhenNoConflictsAreFound() throws Exception {
         when(updateAction.findUpdates()).thenReturn(new UpdateSet(List.of(change("1.0.0", "1.0.1"))));
         when(updateAction.buildUpdate(any())).thenReturn(true);
-        when(applyCandidateAction.getConflicts()).thenReturn(Collections.emptyList());
+        mockConflicts(applyCandidateAction, Collections.emptyList());
 
         int exitCode = commandLine.execute(CliConstants.Commands.UPDATE, CliConstants.Commands.PERFORM,
                 CliConstants.DIR, installationDir.toString(),
@@ -34,6 +34,7 @@ import org.wildfly.prospero.api.exceptions.InvalidRepositoryArchiveException;
 import org.wildfly.prospero.api.exceptions.InvalidUpdateCandidateException;
 import org.wildfly.prospero.api.exceptions.MetadataException;
 import org.wildfly.prospero.api.exceptions.NoChannelException;
+import org.wildfly.prospero.api.exceptions.OperationException;
 import org.wildfly.prospero.api.exceptions.ProvisioningRuntimeException;
 
 import java.io.IOException;
@@ -403,4 +404,19 @@ public interface ProsperoLogger extends BasicLogger {
     @Message(id = 275, value = "The candidate at [%s] was not prepared for %s operation.")
     InvalidUpdateCandidateException wrongCandidateOperation(Path candidateServer, ApplyCandidateAction.Type operationType);
 
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 276, value = "The shared artifact store %s is not supported on this system, the artifacts will be copied into the installation.")
+    void sharedArtifactStoreNotSupported(String storeLocation);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 277, value = "Unable to stage the updated server next to %s, the candidate will be applied in place.")
+    void unableToStageCandidate(Path installationDir, @Cause IOException e);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 278, value = "Unable to replace the server %s with the updated copy, the candidate will be applied in place.")
+    void unableToReplaceWithStagedCandidate(Path installationDir, @Cause IOException e);
+
+    @Message(id = 279, value = "Invalid value of the %s property: %s. Expected one of: %s.")
+    OperationException invalidPropertyValue(String property, String value, String expectedValues);
+
 }
@@ -18,6 +18,7 @@ package org.wildfly.prospero.actions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -30,10 +31,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -72,7 +82,10 @@ import org.jboss.galleon.util.HashUtils;
 import org.jboss.galleon.util.IoUtils;
 import org.jboss.galleon.util.PathsUtils;
 import org.wildfly.prospero.galleon.ArtifactCache;
+import org.wildfly.prospero.galleon.FileDigests;
+import org.wildfly.prospero.galleon.FileStateTree;
 import org.wildfly.prospero.galleon.GalleonUtils;
+import org.wildfly.prospero.galleon.SharedArtifactStore;
 import org.wildfly.prospero.installation.git.GitStorage;
 import org.wildfly.prospero.licenses.LicenseManager;
 import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
@@ -89,9 +102,45 @@ public class ApplyCandidateAction {
     public static final Path STANDALONE_STARTUP_MARKER = Path.of("standalone", "tmp", "startup-marker");
     public static final Path DOMAIN_STARTUP_MARKER = Path.of("domain", "tmp", "startup-marker");
     public static final String CANDIDATE_CHANNEL_NAME_LIST = "candidate_properties.yaml";
+    /**
+     * Maximum number of threads used to compare and copy updated files into the installation.
+     * Defaults to the number of available processors.
+     */
+    public static final String APPLY_PARALLELISM_PROPERTY = "prospero.apply.threads";
+    /**
+     * If set to {@code true}, the candidate is applied to a copy of the installation staged next to it, which then
+     * replaces the installation. The installation is not modified if applying the candidate fails. Falls back to
+     * applying the candidate in place if the copy cannot be created or the installation cannot be moved away, e.g.
+     * because its root is a mount point.
+     * <p>
+     * The staged copy replaces the installation by two renames, so the replacement is not atomic. If the process is
+     * interrupted between them, the installation is left in {@code .<name>.replaced} next to its original location.
+     * The replaced installation consists of new directories, so a running change journal watcher starts a new session
+     * and the next operation scans all the installation files instead of using the recorded file states.
+     */
+    public static final String SWAP_APPLY_PROPERTY = "prospero.apply.swap";
+    /**
+     * Controls when the files written while applying a candidate are synced to the disk: {@code none} (default) leaves
+     * it to the operating system, {@code phase} syncs the written files and their directories once the backup, the
+     * updated files and the metadata are written, {@code strict} syncs each file as soon as it's written.
+     */
+    public static final String APPLY_SYNC_PROPERTY = "prospero.apply.sync";
+    /**
+     * If set to {@code true}, the backup of the installation records each file only right before it is replaced or
+     * removed, instead of linking all the server files before the candidate is applied. The Galleon provisioned state
+     * and the installation metadata are always copied.
+     */
+    public static final String LAZY_BACKUP_PROPERTY = "prospero.apply.lazy-backup";
     private final Path updateDir;
     private final Path installationDir;
     private final SystemPaths systemPaths;
+    private final boolean swap;
+    // applied to a staged copy of the installation, which is discarded on failure, so no backup is needed
+    private final boolean staged;
+    private final WriteSync writeSync;
+    private final Map<Path, Optional<ArtifactCache>> artifactCaches = new ConcurrentHashMap<>();
+    // set while the candidate is applied, the files have to be recorded before they are modified
+    private ApplyStageBackup backup;
 
     private static final Logger log = Logger.getLogger(ApplyCandidateAction.class);
 
@@ -124,6 +173,14 @@ public class ApplyCandidateAction {
 
     public ApplyCandidateAction(Path installationDir, Path updateDir)
             throws ProvisioningException, OperationException {
+        this(installationDir, updateDir, Boolean.getBoolean(SWAP_APPLY_PROPERTY), false);
+    }
+
+    private ApplyCandidateAction(Path installationDir, Path updateDir, boolean swap, boolean staged)
+            throws ProvisioningException, OperationException {
+        this.swap = swap;
+        this.staged = staged;
+        this.writeSync = WriteSync.fromSystemProperties();
         this.updateDir = InstallFolderUtils.toRealPath(updateDir);
         this.installationDir = InstallFolderUtils.toRealPath(installationDir);
 
@@ -175,13 +232,23 @@ public class ApplyCandidateAction {
             throw ex;
         }
 
-        final FsDiff diffs = GalleonUtils.findChanges(installationDir);
-        ApplyStageBackup backup = null;
+        if (swap) {
+            return applyUpdateBySwap(operation);
+        }
+
+        final FsDiff diffs = GalleonUtils.findChanges(installationDir, ApplyStageBackup.IGNORED_PATHS);
+        backup = null;
         try {
-            backup = new ApplyStageBackup(installationDir, updateDir);
-            backup.recordAll();
+            if (!staged) {
+                backup = new ApplyStageBackup(installationDir, updateDir, writeSync);
+                if (Boolean.getBoolean(LAZY_BACKUP_PROPERTY)) {
+                    backup.recordMetadata();
+                } else {
+                    backup.recordAll();
+                }
 
-            ProsperoLogger.ROOT_LOGGER.debug("Update backup generated in " + installationDir.resolve(ApplyStageBackup.BACKUP_FOLDER));
+                ProsperoLogger.ROOT_LOGGER.debug("Update backup generated in " + installationDir.resolve(ApplyStageBackup.BACKUP_FOLDER));
+            }
 
             ProsperoLogger.ROOT_LOGGER.applyingCandidate(operation.text.toLowerCase(Locale.ROOT), updateDir);
             ProsperoLogger.ROOT_LOGGER.candidateChanges(
@@ -189,6 +256,8 @@ public class ApplyCandidateAction {
             );
 
             final List<FileConflict> conflicts = doApplyUpdate(diffs);
+            // the updated files have to be durable before the metadata records them
+            writeSync.commit();
 
             if (conflicts.isEmpty()) {
                 ProsperoLogger.ROOT_LOGGER.noCandidateConflicts();
@@ -202,10 +271,13 @@ public class ApplyCandidateAction {
             }
 
             updateMetadata(operation);
+            writeSync.commit();
             ProsperoLogger.ROOT_LOGGER.candidateApplied(operation.text, installationDir);
 
             // remove the backup if the apply operation was successful
-            backup.close();
+            if (backup != null) {
+                backup.close();
+            }
             return conflicts;
         } catch (IOException ex) {
             boolean backupRestored = false;
@@ -225,6 +297,64 @@ public class ApplyCandidateAction {
         }
     }
 
+    /*
+     * applies the candidate to a staged copy of the installation and replaces the installation with it. Only the files
+     * changed by the candidate are written, the rest of the staged copy is linked to the installation files. No backup
+     * is recorded, a failed staged copy is simply discarded.
+     */
+    private List<FileConflict> applyUpdateBySwap(Type operation) throws ProvisioningException, OperationException {
+        final StagedInstallation stagedInstallation = new StagedInstallation(installationDir, writeSync);
+        try {
+            stagedInstallation.create();
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.unableToStageCandidate(installationDir, e);
+            stagedInstallation.discard();
+            return new ApplyCandidateAction(installationDir, updateDir, false, false).applyUpdate(operation);
+        }
+
+        final List<FileConflict> conflicts;
+        try {
+            conflicts = new ApplyCandidateAction(stagedInstallation.getStagedDir(), updateDir, false, true).applyUpdate(operation);
+        } catch (ApplyCandidateException e) {
+            // the installation was not modified, it's enough to remove the staged copy
+            stagedInstallation.discard();
+            throw new ApplyCandidateException(e.getMessage(), e.getCause());
+        } catch (ProvisioningException | OperationException | RuntimeException e) {
+            stagedInstallation.discard();
+            throw e;
+        } finally {
+            ArtifactCache.invalidateInstance(stagedInstallation.getStagedDir());
+        }
+
+        try {
+            // the staged copy has to be durable before it replaces the installation
+            writeSync.commit();
+            stagedInstallation.swap();
+        } catch (StagedInstallation.NotMovedException e) {
+            ProsperoLogger.ROOT_LOGGER.unableToReplaceWithStagedCandidate(installationDir, e);
+            stagedInstallation.discard();
+            return new ApplyCandidateAction(installationDir, updateDir, false, false).applyUpdate(operation);
+        } catch (StagedInstallation.SwapException e) {
+            throw new ApplyCandidateException(ProsperoLogger.ROOT_LOGGER.failedToApplyCandidate(e.getLocalizedMessage()),
+                    false, e.getReplacedDir(), e);
+        } catch (IOException e) {
+            // the installation was moved back in place
+            stagedInstallation.discard();
+            final String msg = e.getLocalizedMessage() == null ? e.getMessage() : e.getLocalizedMessage();
+            throw new ApplyCandidateException(ProsperoLogger.ROOT_LOGGER.failedToApplyCandidate(msg), e);
+        } finally {
+            // the cached instance refers to the replaced files
+            ArtifactCache.invalidateInstance(installationDir);
+        }
+        try {
+            writeSync.commit();
+        } catch (IOException e) {
+            // the installation has already been replaced, the rename is left to the operating system to persist
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to sync the replaced installation " + installationDir, e);
+        }
+        return conflicts;
+    }
+
     public enum ValidationResult {
         OK, NOT_CANDIDATE, STALE, WRONG_TYPE, NO_CHANGES;
     }
@@ -298,11 +428,31 @@ public class ApplyCandidateAction {
      * @throws OperationException
      */
     public List<FileConflict> getConflicts() throws ProvisioningException, OperationException {
+        final List<FileConflict> conflicts = new ArrayList<>();
+        reportConflicts(conflicts::add);
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * passes conflicts between the candidate ({@code installationDir} and target server {@code updateDir} to
+     * {@code conflictConsumer} as they are found, without collecting them first.
+     *
+     * @param conflictConsumer - receives each {@code FileConflict}
+     * @return number of conflicts found
+     * @throws ProvisioningException
+     * @throws OperationException
+     */
+    public int reportConflicts(Consumer<FileConflict> conflictConsumer) throws ProvisioningException, OperationException {
+        final int[] count = {0};
         try {
-            return compareServers(GalleonUtils.findChanges(installationDir));
+            compareServers(GalleonUtils.findChanges(installationDir, ApplyStageBackup.IGNORED_PATHS), conflict -> {
+                count[0]++;
+                conflictConsumer.accept(conflict);
+            });
         } catch (IOException ex) {
             throw new ProvisioningException(ex);
         }
+        return count[0];
     }
 
     public boolean removeCandidate(File updateDir) {
@@ -402,8 +552,13 @@ public class ApplyCandidateAction {
         // add all files in .galleon folder to the backup set
         IoUtils.recursiveDelete(installationGalleonPath);
         IoUtils.copy(updateGalleonPath, installationGalleonPath, true);
+        writeSync.writtenTree(installationGalleonPath);
+        GalleonHashesDigest.record(installationDir);
+        // only the files replaced by the update are hashed
+        FileStateTree.record(installationDir, ApplyStageBackup.IGNORED_PATHS);
         // after the galleon data is copied, persist a copy of provisioning.xml and record it
         ProsperoMetadataUtils.recordProvisioningDefinition(installationDir);
+        writeSync.written(installationDir.resolve(METADATA_DIR).resolve(ProsperoMetadataUtils.PROVISIONING_RECORD_XML));
         writeProsperoMetadata(operation);
         updateInstallationCache();
         updateAcceptedLicences();
@@ -420,7 +575,9 @@ public class ApplyCandidateAction {
     private void copyCurrentVersions() throws IOException {
         Path sourceVersions = updateDir.resolve(METADATA_DIR).resolve(CURRENT_VERSION_FILE);
         if (Files.exists(sourceVersions)) {
-            Files.copy(sourceVersions, installationDir.resolve(METADATA_DIR).resolve(CURRENT_VERSION_FILE), StandardCopyOption.REPLACE_EXISTING);
+            final Path targetVersions = installationDir.resolve(METADATA_DIR).resolve(CURRENT_VERSION_FILE);
+            Files.copy(sourceVersions, targetVersions, StandardCopyOption.REPLACE_EXISTING);
+            writeSync.written(targetVersions);
         }
     }
 
@@ -452,29 +609,22 @@ public class ApplyCandidateAction {
         }
     }
 
-    private static void copyFiles(Path source, Path target) throws IOException {
+    private void copyFiles(Path source, Path target) throws IOException {
+        recordBackup(target);
         if (Files.exists(target)) {
             // need to remove the existing file, because we use a hardlink to provide a backup
             FileUtils.deleteQuietly(target.toFile());
         }
         IoUtils.copy(source, target);
+        writeSync.written(target);
     }
 
     private void updateInstallationCache() throws IOException {
-        Path updateCacheDir = updateDir.resolve(ArtifactCache.CACHE_FOLDER);
-
-
-        Path installationCacheDir = installationDir.resolve(ArtifactCache.CACHE_FOLDER);
-        if (Files.exists(installationCacheDir)) {
-            IoUtils.recursiveDelete(installationCacheDir);
-        }
-        if (Files.exists(updateCacheDir)) {
-            copyFiles(updateCacheDir, installationCacheDir);
-        }
+        // only the changed artifacts are replaced, only the stored artifacts they linked to are released
+        ArtifactCache.updateFromCandidate(updateDir, installationDir, SharedArtifactStore.fromSystemProperties().orElse(null));
     }
 
-    private List<FileConflict> handleRemovedFiles(FsDiff fsDiff) throws IOException {
-        final List<FileConflict> conflictList = new ArrayList<>();
+    private void handleRemovedFiles(FsDiff fsDiff, Consumer<FileConflict> conflictConsumer) throws IOException {
         if (fsDiff.hasRemovedEntries()) {
             for (FsEntry removed : fsDiff.getRemovedEntries()) {
                 final Path target = updateDir.resolve(removed.getRelativePath());
@@ -483,7 +633,7 @@ public class ApplyCandidateAction {
                 }
                 if (Files.exists(target)) {
                     if (systemPaths.isSystemPath(Paths.get(removed.getRelativePath()))) {
-                        conflictList.add(FileConflict.userRemoved(removed.getRelativePath()).updateModified().overwritten());
+                        conflictConsumer.accept(FileConflict.userRemoved(removed.getRelativePath()).updateModified().overwritten());
                         if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                             ProsperoLogger.ROOT_LOGGER.debug(formatMessage(FORCED, removed.getRelativePath(), HAS_CHANGED_IN_THE_UPDATED_VERSION));
                         }
@@ -496,11 +646,9 @@ public class ApplyCandidateAction {
                 }
             }
         }
-        return conflictList;
     }
 
-    private List<FileConflict> handleAddedFiles(FsDiff fsDiff) throws IOException, ProvisioningException {
-        final List<FileConflict> conflictList = new ArrayList<>();
+    private void handleAddedFiles(FsDiff fsDiff, Consumer<FileConflict> conflictConsumer) throws IOException, ProvisioningException {
         if (fsDiff.hasAddedEntries()) {
             for (FsEntry added : fsDiff.getAddedEntries()) {
                 Path p = Paths.get(added.getRelativePath());
@@ -508,14 +656,13 @@ public class ApplyCandidateAction {
                 if (p.getNameCount() > 0 && p.getName(0).toString().equals(METADATA_DIR)) {
                     continue;
                 }
-                addFsEntry(updateDir, added, systemPaths, conflictList);
+                addFsEntry(updateDir, added, systemPaths, conflictConsumer);
             }
         }
-        return conflictList;
     }
 
     private void addFsEntry(Path updateDir, FsEntry added, SystemPaths systemPaths,
-                            List<FileConflict> conflictList)
+                            Consumer<FileConflict> conflictConsumer)
             throws ProvisioningException {
         final Path target = updateDir.resolve(added.getRelativePath());
         if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
@@ -524,13 +671,13 @@ public class ApplyCandidateAction {
         if (Files.exists(target)) {
             if (added.isDir()) {
                 for (FsEntry child : added.getChildren()) {
-                    addFsEntry(updateDir, child, systemPaths, conflictList);
+                    addFsEntry(updateDir, child, systemPaths, conflictConsumer);
                 }
                 return;
             }
             final byte[] targetHash;
             try {
-                targetHash = HashUtils.hashPath(target);
+                targetHash = hashPath(target);
             } catch (IOException e) {
                 throw new ProvisioningException(BaseErrors.hashCalculation(target), e);
             }
@@ -544,19 +691,18 @@ public class ApplyCandidateAction {
                     if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.debug(formatMessage(FORCED, added.getRelativePath(), CONFLICTS_WITH_THE_UPDATED_VERSION));
                     }
-                    conflictList.add(FileConflict.userAdded(added.getRelativePath()).updateAdded().overwritten());
+                    conflictConsumer.accept(FileConflict.userAdded(added.getRelativePath()).updateAdded().overwritten());
                 } else {
                     if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.debug(formatMessage(CONFLICT, added.getRelativePath(), CONFLICTS_WITH_THE_UPDATED_VERSION));
                     }
-                    conflictList.add(FileConflict.userAdded(added.getRelativePath()).updateAdded().userPreserved());
+                    conflictConsumer.accept(FileConflict.userAdded(added.getRelativePath()).updateAdded().userPreserved());
                 }
             }
         }
     }
 
-    private List<FileConflict> handleModifiedFiles(FsDiff fsDiff) throws IOException, ProvisioningException {
-        final List<FileConflict> conflictList = new ArrayList<>();
+    private void handleModifiedFiles(FsDiff fsDiff, Consumer<FileConflict> conflictConsumer) throws IOException, ProvisioningException {
         if (fsDiff.hasModifiedEntries()) {
             for (FsEntry[] modified : fsDiff.getModifiedEntries()) {
                 FsEntry installation = modified[1];
@@ -568,7 +714,7 @@ public class ApplyCandidateAction {
                 if (Files.exists(file)) {
                     byte[] updateHash;
                     try {
-                        updateHash = HashUtils.hashPath(file);
+                        updateHash = hashPath(file);
                     } catch (IOException e) {
                         throw new ProvisioningException(BaseErrors.hashCalculation(file), e);
                     }
@@ -583,12 +729,12 @@ public class ApplyCandidateAction {
                                 if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                                     ProsperoLogger.ROOT_LOGGER.debug(formatMessage(FORCED, installation.getRelativePath(), HAS_CHANGED_IN_THE_UPDATED_VERSION));
                                 }
-                                conflictList.add(FileConflict.userModified(installation.getRelativePath()).updateModified().overwritten());
+                                conflictConsumer.accept(FileConflict.userModified(installation.getRelativePath()).updateModified().overwritten());
                             } else {
                                 if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                                     ProsperoLogger.ROOT_LOGGER.debug(formatMessage(CONFLICT, installation.getRelativePath(), HAS_CHANGED_IN_THE_UPDATED_VERSION));
                                 }
-                                conflictList.add(FileConflict.userModified(installation.getRelativePath()).updateModified().userPreserved());
+                                conflictConsumer.accept(FileConflict.userModified(installation.getRelativePath()).updateModified().userPreserved());
                             }
                         }
                     }
@@ -597,28 +743,51 @@ public class ApplyCandidateAction {
                     if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.debug(formatMessage(MODIFIED, installation.getRelativePath(), HAS_BEEN_REMOVED_FROM_THE_UPDATED_VERSION));
                     }
-                    conflictList.add(FileConflict.userModified(installation.getRelativePath()).updateRemoved().userPreserved());
+                    conflictConsumer.accept(FileConflict.userModified(installation.getRelativePath()).updateRemoved().userPreserved());
                 }
             }
         }
-        return conflictList;
     }
 
-    private List<FileConflict> compareServers(FsDiff fsDiff) throws IOException, ProvisioningException {
-        List<FileConflict> conflicts = new ArrayList<>();
+    /*
+     * hashes a file of the installation or the candidate. If the file is a cached artifact that has not been changed
+     * since it was verified, the hash recorded in the artifact cache is used instead of reading the file.
+     */
+    private byte[] hashPath(Path file) throws IOException {
+        final Path root = file.startsWith(updateDir) ? updateDir : installationDir;
+        final Optional<String> recordedHash = getArtifactCache(root).flatMap(cache -> cache.getVerifiedHash(file));
+        if (recordedHash.isPresent()) {
+            return HashUtils.hexStringToByteArray(recordedHash.get());
+        }
+        if (Files.isRegularFile(file)) {
+            // unlike HashUtils, doesn't serialize concurrent hashing
+            return HashUtils.hexStringToByteArray(FileDigests.of(file).getSha1());
+        }
+        return HashUtils.hashPath(file);
+    }
+
+    private Optional<ArtifactCache> getArtifactCache(Path root) {
+        return artifactCaches.computeIfAbsent(root, r -> {
+            try {
+                // a registered instance of the candidate would be stale once the candidate is applied or discarded
+                return Optional.of(r.equals(updateDir) ? ArtifactCache.load(r) : ArtifactCache.getInstance(r));
+            } catch (IOException e) {
+                ProsperoLogger.ROOT_LOGGER.debug("Unable to read the artifact cache of " + r, e);
+                return Optional.empty();
+            }
+        });
+    }
+
+    private void compareServers(FsDiff fsDiff, Consumer<FileConflict> conflictConsumer) throws IOException, ProvisioningException {
         // Handles user added/removed/modified files
-        conflicts.addAll(handleRemovedFiles(fsDiff));
-        conflicts.addAll(handleAddedFiles(fsDiff));
-        conflicts.addAll(handleModifiedFiles(fsDiff));
-        return Collections.unmodifiableList(conflicts);
+        handleRemovedFiles(fsDiff, conflictConsumer);
+        handleAddedFiles(fsDiff, conflictConsumer);
+        handleModifiedFiles(fsDiff, conflictConsumer);
     }
 
     private List<FileConflict> doApplyUpdate(FsDiff fsDiff) throws IOException, ProvisioningException {
-        List<FileConflict> conflicts = new ArrayList<>();
-        // Handles user added/removed/modified files
-        conflicts.addAll(handleRemovedFiles(fsDiff));
-        conflicts.addAll(handleAddedFiles(fsDiff));
-        conflicts.addAll(handleModifiedFiles(fsDiff));
+        final List<FileConflict> conflicts = new ArrayList<>();
+        compareServers(fsDiff, conflicts::add);
 
         resolveFileConflicts(conflicts);
 
@@ -628,6 +797,16 @@ public class ApplyCandidateAction {
         Path skipInstallationGalleon = PathsUtils.getProvisionedStateDir(installationDir);
         Path skipInstallationInstallation = installationDir.resolve(METADATA_DIR);
 
+        // Both servers record the hashes of provisioned files. A file that has not been changed by the user matches the
+        // recorded hash, so the records can be compared instead of reading the files.
+        final GalleonHashesRecord installationHashes = GalleonHashesRecord.read(installationDir);
+        final GalleonHashesRecord updateHashes = GalleonHashesRecord.read(updateDir);
+        // If the states of both servers are recorded, directories with the same content can be skipped entirely.
+        final Optional<FileStateTree> installationState = scanRecordedState(installationDir);
+        final Optional<FileStateTree> updateState = installationState.isPresent() ? scanRecordedState(updateDir) : Optional.empty();
+        final List<Path> changedFiles = new ArrayList<>();
+        final List<Path> unknownFiles = new ArrayList<>();
+
         // Copy the new/modified files that the update brings that are not in the installation and not removed/modified by the user.
         Files.walkFileTree(updateDir, new SimpleFileVisitor<Path>() {
             @Override
@@ -639,13 +818,17 @@ public class ApplyCandidateAction {
                 final String pathKey = getFsDiffKey(relative, false);
                 if (fsDiff.getModifiedEntry(pathKey) == null &&
                         fsDiff.getAddedEntry(pathKey) == null && !isParentAdded(fsDiff, relative)) {
-                    byte[] updateHash = HashUtils.hashPath(file);
                     // The file could be new or updated in the installation
-                    if (!Files.exists(installationFile) || !Arrays.equals(updateHash, HashUtils.hashPath(installationFile))) {
-                        if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
-                            ProsperoLogger.ROOT_LOGGER.debug("Copying updated file " + relative + " to the installation");
+                    final String installationHash = installationHashes.getHash(pathKey);
+                    final String updateHash = updateHashes.getHash(pathKey);
+                    if (!Files.exists(installationFile)) {
+                        changedFiles.add(relative);
+                    } else if (installationHash == null || updateHash == null) {
+                        if (!sameState(pathKey, installationState, updateState)) {
+                            unknownFiles.add(relative);
                         }
-                        copyFiles(file, installationFile);
+                    } else if (!installationHash.equalsIgnoreCase(updateHash)) {
+                        changedFiles.add(relative);
                     }
                 }
                 return FileVisitResult.CONTINUE;
@@ -669,6 +852,10 @@ public class ApplyCandidateAction {
                 if (dir.equals(skipUpdateGalleon) || dir.equals(skipUpdateInstallation)) {
                     return FileVisitResult.SKIP_SUBTREE;
                 }
+                if (!dir.equals(updateDir) && sameState(getFsDiffKey(updateDir.relativize(dir), false), installationState, updateState)) {
+                    // all the files are the same in the installation, nothing to copy
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
                 return FileVisitResult.CONTINUE;
             }
 
@@ -679,8 +866,14 @@ public class ApplyCandidateAction {
             }
         });
 
+        copyUpdatedFiles(changedFiles, unknownFiles);
+
         // Delete the files in the installation that are not present in the update and not added by the user
         // We need to skip .glnew and .glold.
+        // The files are collected first, so that they are recorded in the backup at once.
+        final List<Path> removedFiles = new ArrayList<>();
+        // directories not present in the update, children before parents
+        final List<Path> removedDirCandidates = new ArrayList<>();
         Files.walkFileTree(installationDir, new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
@@ -689,10 +882,7 @@ public class ApplyCandidateAction {
                 Path updateFile = updateDir.resolve(relative);
                 final String fsDiffKey = getFsDiffKey(relative, false);
                 if (isNotAddedOrModified(fsDiffKey, fsDiff) && fileNotPresent(updateFile)) {
-                    if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
-                        ProsperoLogger.ROOT_LOGGER.debug("Deleting the file " + relative + " that doesn't exist in the update");
-                    }
-                    IoUtils.recursiveDelete(file);
+                    removedFiles.add(file);
                 }
                 return FileVisitResult.CONTINUE;
             }
@@ -718,6 +908,10 @@ public class ApplyCandidateAction {
                     Path relative = installationDir.relativize(dir);
                     Path target = updateDir.resolve(relative);
                     String pathKey = getFsDiffKey(relative, true);
+                    if (sameState(getFsDiffKey(relative, false), installationState, updateState)) {
+                        // all the files exist in the update, nothing to delete
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
                     if (isAdded(pathKey, fsDiff) && !Files.exists(target)) {
                         if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
                             ProsperoLogger.ROOT_LOGGER.debug("The directory " + relative + " that doesn't exist in the update is a User changes, skipping it");
@@ -734,12 +928,8 @@ public class ApplyCandidateAction {
                     Path relative = installationDir.relativize(dir);
                     Path target = updateDir.resolve(relative);
                     String pathKey = getFsDiffKey(relative, true);
-                    if (!isAdded(pathKey, fsDiff) && !Files.exists(target) && isEmpty(dir)) {
-                        if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
-                            ProsperoLogger.ROOT_LOGGER.debug("Deleting the directory " + relative + " that doesn't exist in the update");
-                        }
-                        IoUtils.recursiveDelete(dir);
-                        return FileVisitResult.SKIP_SUBTREE;
+                    if (!isAdded(pathKey, fsDiff) && !Files.exists(target)) {
+                        removedDirCandidates.add(dir);
                     }
                 }
                 return FileVisitResult.CONTINUE;
@@ -760,9 +950,142 @@ public class ApplyCandidateAction {
                 }
             }
         });
+
+        // only the directories left empty by the removed files are deleted
+        final Set<Path> removed = new HashSet<>(removedFiles);
+        final List<Path> removedDirs = new ArrayList<>();
+        for (Path dir : removedDirCandidates) {
+            if (isEmptyAfterRemoval(dir, removed)) {
+                removed.add(dir);
+                removedDirs.add(dir);
+            }
+        }
+        if (backup != null) {
+            backup.record(Stream.concat(removedFiles.stream(), removedDirs.stream()).collect(Collectors.toList()));
+        }
+        for (Path file : removedFiles) {
+            if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
+                ProsperoLogger.ROOT_LOGGER.debug("Deleting the file " + installationDir.relativize(file) + " that doesn't exist in the update");
+            }
+            IoUtils.recursiveDelete(file);
+            writeSync.entryChanged(file);
+        }
+        for (Path dir : removedDirs) {
+            if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
+                ProsperoLogger.ROOT_LOGGER.debug("Deleting the directory " + installationDir.relativize(dir) + " that doesn't exist in the update");
+            }
+            IoUtils.recursiveDelete(dir);
+            writeSync.entryChanged(dir);
+        }
         return Collections.unmodifiableList(conflicts);
     }
 
+    /*
+     * scans the current state of a server, if it has been recorded. Servers without a recorded state would have to be
+     * hashed completely.
+     */
+    private static Optional<FileStateTree> scanRecordedState(Path root) {
+        if (!FileStateTree.isRecorded(root)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(FileStateTree.scan(root, ApplyStageBackup.IGNORED_PATHS));
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to scan the file state of " + root, e);
+            return Optional.empty();
+        }
+    }
+
+    private static boolean sameState(String pathKey, Optional<FileStateTree> installationState, Optional<FileStateTree> updateState) {
+        if (installationState.isEmpty() || updateState.isEmpty()) {
+            return false;
+        }
+        final Optional<String> digest = installationState.get().getDigest(pathKey);
+        return digest.isPresent() && digest.equals(updateState.get().getDigest(pathKey));
+    }
+
+    /*
+     * copies files from the candidate to the installation. The {@code changedFiles} are copied, the {@code unknownFiles}
+     * are copied only if their content differs. The files are processed in parallel, if any of them fails, the remaining
+     * files are skipped and the method returns once the files already being processed are done.
+     */
+    private void copyUpdatedFiles(List<Path> changedFiles, List<Path> unknownFiles) throws IOException {
+        final int fileCount = changedFiles.size() + unknownFiles.size();
+        if (fileCount == 0) {
+            return;
+        }
+        final int parallelism = Math.max(1, Math.min(fileCount, Integer.getInteger(APPLY_PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors())));
+        // record all the files at once, the copies don't need to wait for the backup
+        if (backup != null) {
+            backup.record(Stream.concat(changedFiles.stream(), unknownFiles.stream())
+                    .map(installationDir::resolve)
+                    .collect(Collectors.toList()));
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            final List<Future<?>> tasks = new ArrayList<>(fileCount);
+            for (Path relative : changedFiles) {
+                tasks.add(executorService.submit(() -> {
+                    copyUpdatedFile(relative);
+                    return null;
+                }));
+            }
+            for (Path relative : unknownFiles) {
+                tasks.add(executorService.submit(() -> {
+                    if (!Arrays.equals(hashPath(updateDir.resolve(relative)), hashPath(installationDir.resolve(relative)))) {
+                        copyUpdatedFile(relative);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    tasks.forEach(t -> t.cancel(false));
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    } else if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    } else {
+                        throw new RuntimeException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    tasks.forEach(t -> t.cancel(false));
+                    throw new InterruptedIOException("Interrupted while copying updated files");
+                }
+            }
+        } finally {
+            executorService.shutdown();
+            awaitTermination(executorService);
+        }
+    }
+
+    private void copyUpdatedFile(Path relative) throws IOException {
+        if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
+            ProsperoLogger.ROOT_LOGGER.debug("Copying updated file " + relative + " to the installation");
+        }
+        copyFiles(updateDir.resolve(relative), installationDir.resolve(relative));
+    }
+
+    private static void awaitTermination(ExecutorService executorService) {
+        // the backup can only be restored after all the running copies are finished
+        boolean interrupted = false;
+        while (!executorService.isTerminated()) {
+            try {
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void resolveFileConflicts(List<FileConflict> conflicts) throws IOException, ProvisioningException {
         // apply conflict resolution
         for (FileConflict conflict : conflicts) {
@@ -772,8 +1095,10 @@ public class ApplyCandidateAction {
                 if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
                     ProsperoLogger.ROOT_LOGGER.trace("Resolving file conflict: restoring files removed by the user: " + conflict);
                 }
+                recordBackup(current);
                 Files.createDirectories(current.getParent());
                 IoUtils.copy(target, current);
+                writeSync.written(current);
             } else if (conflict.getUpdateChange() == FileConflict.Change.ADDED && conflict.getResolution() == FileConflict.Resolution.UPDATE) {
                 if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
                     ProsperoLogger.ROOT_LOGGER.trace("Resolving file conflict: backing up user changes and applying update changes: " + conflict);
@@ -800,12 +1125,18 @@ public class ApplyCandidateAction {
         }
     }
 
-    private static boolean isEmpty(Path dir) {
-        final String[] children = dir.toFile().list();
+    private void recordBackup(Path path) throws IOException {
+        if (backup != null) {
+            backup.record(List.of(path));
+        }
+    }
+
+    private static boolean isEmptyAfterRemoval(Path dir, Set<Path> removed) {
+        final File[] children = dir.toFile().listFiles();
         if (children == null) {
             throw new RuntimeException("Unable to list children of " + dir);
         }
-        return children.length == 0;
+        return Arrays.stream(children).map(File::toPath).allMatch(removed::contains);
     }
 
     private static boolean isAdded(String pathKey, FsDiff fsDiff) {
@@ -827,7 +1158,7 @@ public class ApplyCandidateAction {
 
 
 
-    private static void glnew(final Path updateFile, Path installationFile) throws ProvisioningException {
+    private void glnew(final Path updateFile, Path installationFile) throws ProvisioningException {
         final Path glnewFile = installationFile.getParent().resolve(installationFile.getFileName() + Constants.DOT_GLNEW);
         try {
             copyFiles(updateFile, glnewFile);
@@ -836,7 +1167,7 @@ public class ApplyCandidateAction {
         }
     }
 
-    private static void glold(Path installationFile, final Path target) throws ProvisioningException {
+    private void glold(Path installationFile, final Path target) throws ProvisioningException {
         final Path gloldFile = installationFile.getParent().resolve(installationFile.getFileName() + Constants.DOT_GLOLD);
         try {
             copyFiles(installationFile, gloldFile);
@@ -847,32 +1178,13 @@ public class ApplyCandidateAction {
     }
 
     private static boolean compareContent(Path installationDir, Path updateDir) throws IOException {
-        Path instGalleonHashPath = PathsUtils.getProvisionedStateDir(installationDir).resolve(Constants.HASHES);
-        Path updateGalleonHashPath = PathsUtils.getProvisionedStateDir(updateDir).resolve(Constants.HASHES);
-
-        Set<Path> instDirsPaths;
-        try (Stream<Path> instDirs = Files.walk(instGalleonHashPath)) {
-            instDirsPaths = instDirs.map(instGalleonHashPath::relativize).collect(Collectors.toUnmodifiableSet());
-        }
-
-        Set<Path> updateDirsPaths;
-        try (Stream<Path> instDirs = Files.walk(updateGalleonHashPath)) {
-            updateDirsPaths = instDirs.map(updateGalleonHashPath::relativize).collect(Collectors.toUnmodifiableSet());
-        }
-
-        if (instDirsPaths.size() != updateDirsPaths.size() || !instDirsPaths.containsAll(updateDirsPaths)) {
+        // the digests are recorded when the servers are provisioned, only the hashes files changed since then are read
+        final GalleonHashesDigest installationHashes = GalleonHashesDigest.of(installationDir);
+        final GalleonHashesDigest updateHashes = GalleonHashesDigest.of(updateDir);
+        if (!installationHashes.getRoot().equals(updateHashes.getRoot())) {
             return false;
         }
 
-        for (Path path : instDirsPaths) {
-            Path sourcePath = instGalleonHashPath.resolve(path);
-            if (Files.isRegularFile(sourcePath)) {
-                Path targetPath = updateGalleonHashPath.resolve(path);
-                if (!FileUtils.contentEquals(sourcePath.toFile(), targetPath.toFile())) {
-                    return false;
-                }
-            }
-        }
         Path instConfPath = ProsperoMetadataUtils.configurationPath(installationDir);
         Path updatePath = ProsperoMetadataUtils.configurationPath(updateDir);
 
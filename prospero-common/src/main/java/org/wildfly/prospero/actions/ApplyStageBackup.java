@@ -4,37 +4,75 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.jboss.galleon.Constants;
 import org.wildfly.prospero.ProsperoLogger;
+import org.wildfly.prospero.galleon.ChangeJournal;
+import org.wildfly.prospero.galleon.FileTimestamps;
 import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A temporary record of all files modified, removed or added during applying a candidate server.
+ *
+ * The record is either created upfront by linking all the server-managed files ({@link #recordAll()}), or lazily
+ * ({@link #recordMetadata()}), in which case each file has to be {@link #record(Collection) recorded} right before it
+ * is modified. Lazily recorded changes are listed in a journal in the backup folder: {@code f <path>} for a backed-up
+ * file, {@code d <path>} for a removed directory and {@code a <path>} for an added file or directory.
  */
 class ApplyStageBackup implements AutoCloseable {
 
     protected static final String BACKUP_FOLDER = ".update.old";
+    // the backup is created after the changes in the server are found, it must not invalidate them
+    static final Set<Path> IGNORED_PATHS = Set.of(Path.of(BACKUP_FOLDER));
+    static final String JOURNAL_FILE = ".backup-journal";
+    private static final String FILE_ENTRY = "f ";
+    private static final String DIRECTORY_ENTRY = "d ";
+    private static final String ADDED_ENTRY = "a ";
     private final Path backupRoot;
     private final Path serverRoot;
     private final Path candidateRoot;
+    private final WriteSync writeSync;
+    private final Set<Path> recorded = ConcurrentHashMap.newKeySet();
+    // only used if the files are recorded lazily
+    private BufferedWriter journal;
 
     /**
-     * create a record for server at {@code serverRoot}. The recorded files will be stored in {@tempRoot}
+     * create a record for server at {@code serverRoot}. The recorded files will be stored in {@tempRoot}. The files are
+     * not explicitly synced to the disk.
      *
      * @param serverRoot - root folder of the server that will be updated
      */
     ApplyStageBackup(Path serverRoot, Path candidateRoot) throws IOException {
+        this(serverRoot, candidateRoot, new WriteSync(WriteSync.Mode.NONE));
+    }
+
+    /**
+     * create a record for server at {@code serverRoot}, syncing the backup and restored files with {@code writeSync}.
+     *
+     * @param serverRoot - root folder of the server that will be updated
+     * @param writeSync - records the files written to the disk
+     */
+    ApplyStageBackup(Path serverRoot, Path candidateRoot, WriteSync writeSync) throws IOException {
 
         this.serverRoot = serverRoot;
         this.candidateRoot = candidateRoot;
+        this.writeSync = writeSync;
         this.backupRoot = serverRoot.resolve(BACKUP_FOLDER);
 
         if (ProsperoLogger.ROOT_LOGGER.isDebugEnabled()) {
@@ -47,6 +85,7 @@ class ApplyStageBackup implements AutoCloseable {
             }
 
             Files.createDirectories(backupRoot);
+            writeSync.entryChanged(backupRoot);
         } else if (!Files.isDirectory(backupRoot) || !Files.isWritable(backupRoot)) {
             throw new RuntimeException(String.format(
                     "Unable to create backup in %s. It is not a directory or is not writable.",
@@ -89,8 +128,16 @@ class ApplyStageBackup implements AutoCloseable {
                 final Path serverPath = serverRoot.resolve(file);
                 final Path backupPath = backupRoot.resolve(file);
 
-                if (!Files.exists(serverPath)) {
+                final BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(serverPath, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
                     ProsperoLogger.ROOT_LOGGER.debug("Unable to find managed file: " + serverPath + ". File backup skipped.");
+                    return;
+                }
+                if (attrs.isDirectory()) {
+                    // a directory without any recorded files
+                    visitDirectory(file);
                 } else {
                     backupFile(serverPath, backupPath);
                 }
@@ -100,6 +147,7 @@ class ApplyStageBackup implements AutoCloseable {
             void visitDirectory(Path relative) throws IOException {
                 ProsperoLogger.ROOT_LOGGER.tracef("Creating a directory in the backup folder: %s", relative);
                 Files.createDirectories(backupRoot.resolve(relative));
+                writeSync.entryChanged(backupRoot.resolve(relative));
             }
         };
         serverFS.walk();
@@ -120,7 +168,14 @@ class ApplyStageBackup implements AutoCloseable {
                 final Path backupFile = backupRoot
                         .resolve(file);
 
-                if (Files.exists(serverFile) && !Files.exists(backupFile)) {
+                final BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(serverFile, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    return;
+                }
+                // a directory is not overwritten by the candidate
+                if (!attrs.isDirectory() && !Files.exists(backupFile)) {
                     // the server file has to be read and write-able by the current user
                     if (!Files.isReadable(serverFile) || !Files.isWritable(serverFile)) {
                         throw new RuntimeException("The update is unable to modify file " + serverFile + " due to invalid file permissions.");
@@ -129,6 +184,7 @@ class ApplyStageBackup implements AutoCloseable {
                     if (!Files.exists(backupFile.getParent())) {
                         ProsperoLogger.ROOT_LOGGER.tracef("Creating added directory based on the candidate folder:%s.", backupFile);
                         Files.createDirectories(backupFile.getParent());
+                        writeSync.entryChanged(backupFile.getParent());
                     }
 
                     backupFile(serverFile, backupFile);
@@ -142,28 +198,129 @@ class ApplyStageBackup implements AutoCloseable {
         };
         candidateFS.walk();
 
+        copyMetadata();
+
+        // the backup has to be durable before the server is modified
+        writeSync.commit();
+
+        ProsperoLogger.ROOT_LOGGER.debug("Finished building the update backup.");
+    }
+
+    /**
+     * add only the Galleon provisioned state and the installation metadata to the cache. The remaining files have to
+     * be recorded with {@link #record(Collection)} before they are modified, so the size of the backup depends on the
+     * number of changed files, not on the size of the server.
+     *
+     * @throws IOException - if unable to backup the metadata
+     */
+    public void recordMetadata() throws IOException {
+        ProsperoLogger.ROOT_LOGGER.debug("Starting building the update backup journal.");
+
+        final Path journalFile = backupRoot.resolve(JOURNAL_FILE);
+        journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8);
+        writeSync.written(journalFile);
+
+        copyMetadata();
+
+        writeSync.commit();
+    }
+
+    /**
+     * add {@code files} to the cache before they are replaced or removed. Files that don't exist yet are recorded as
+     * added and are removed when the backup is restored. Does nothing if all the files were recorded by
+     * {@link #recordAll()}, or if a file has been recorded already.
+     *
+     * @param files - files in the server that are going to be modified
+     * @throws IOException - if unable to backup the files
+     */
+    public void record(Collection<Path> files) throws IOException {
+        if (journal == null) {
+            return;
+        }
+
+        boolean changed = false;
+        for (Path file : files) {
+            final Path relative = serverRoot.relativize(file);
+            if (recorded.contains(relative) || isCopiedMetadata(relative)) {
+                continue;
+            }
+            synchronized (this) {
+                changed |= recordPath(relative);
+            }
+        }
+
+        if (changed) {
+            // the backup has to be durable before the files are modified
+            writeSync.commit();
+        }
+    }
+
+    private boolean recordPath(Path relative) throws IOException {
+        if (!recorded.add(relative)) {
+            return false;
+        }
+
+        final Path serverPath = serverRoot.resolve(relative);
+        final Path backupPath = backupRoot.resolve(relative);
+        if (Files.isDirectory(serverPath, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(backupPath);
+            writeSync.entryChanged(backupPath);
+            journal(DIRECTORY_ENTRY, relative);
+        } else if (Files.exists(serverPath, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(backupPath.getParent());
+            writeSync.entryChanged(backupPath.getParent());
+            backupFile(serverPath, backupPath);
+            journal(FILE_ENTRY, relative);
+        } else {
+            // directories created for the file have to be removed as well, parents are journaled before children
+            final Path parent = relative.getParent();
+            if (parent != null && !Files.exists(serverRoot.resolve(parent), LinkOption.NOFOLLOW_LINKS)) {
+                recordPath(parent);
+            }
+            journal(ADDED_ENTRY, relative);
+        }
+        return true;
+    }
+
+    private void journal(String type, Path relative) throws IOException {
+        journal.write(type + relative.toString().replace(File.separatorChar, '/'));
+        journal.newLine();
+        journal.flush();
+        writeSync.written(backupRoot.resolve(JOURNAL_FILE));
+    }
+
+    private static boolean isCopiedMetadata(Path relative) {
+        return relative.startsWith(Constants.PROVISIONED_STATE_DIR) || relative.startsWith(ProsperoMetadataUtils.METADATA_DIR)
+                || relative.startsWith(BACKUP_FOLDER);
+    }
+
+    private void copyMetadata() throws IOException {
         // copy .installation and .hashes folders as they are
         if (Files.exists(serverRoot.resolve(Constants.PROVISIONED_STATE_DIR))) {
             ProsperoLogger.ROOT_LOGGER.trace("Copying the Galleon provisioned state directory.");
             FileUtils.copyDirectory(serverRoot.resolve(Constants.PROVISIONED_STATE_DIR).toFile(), backupRoot.resolve(Constants.PROVISIONED_STATE_DIR).toFile());
+            writeSync.writtenTree(backupRoot.resolve(Constants.PROVISIONED_STATE_DIR));
         }
         if (Files.exists(serverRoot.resolve(ProsperoMetadataUtils.METADATA_DIR))) {
             ProsperoLogger.ROOT_LOGGER.trace("Copying the Prospero installation directory.");
-            FileUtils.copyDirectory(serverRoot.resolve(ProsperoMetadataUtils.METADATA_DIR).toFile(), backupRoot.resolve(ProsperoMetadataUtils.METADATA_DIR).toFile());
+            // the change journal describes the live server, it's not restored and can be large
+            FileUtils.copyDirectory(serverRoot.resolve(ProsperoMetadataUtils.METADATA_DIR).toFile(), backupRoot.resolve(ProsperoMetadataUtils.METADATA_DIR).toFile(),
+                    file -> !ChangeJournal.isJournalFile(serverRoot.relativize(file.toPath())));
+            writeSync.writtenTree(backupRoot.resolve(ProsperoMetadataUtils.METADATA_DIR));
         }
-
-        ProsperoLogger.ROOT_LOGGER.debug("Finished building the update backup.");
     }
 
-    private static void backupFile(Path serverPath, Path backupPath) throws IOException {
+    private void backupFile(Path serverPath, Path backupPath) throws IOException {
         // we try to use hardlinks instead of copy to save disk space
         // fallback on copy if Filesystem doesn't support hardlinks
         ProsperoLogger.ROOT_LOGGER.tracef("Backing up file %s to %s.", serverPath, backupPath);
 
         try {
             Files.createLink(backupPath, serverPath);
+            writeSync.entryChanged(backupPath);
         } catch (UnsupportedOperationException e) {
             Files.copy(serverPath, backupPath);
+            writeSync.written(backupPath);
         }
     }
 
@@ -172,6 +329,7 @@ class ApplyStageBackup implements AutoCloseable {
      */
     @Override
     public void close() {
+        closeJournal();
         FileUtils.deleteQuietly(backupRoot.toFile());
     }
 
@@ -193,36 +351,136 @@ class ApplyStageBackup implements AutoCloseable {
             throw new RuntimeException("Backup root doesn't exist.");
         }
 
-        // copy backed-up files back into the server
-        Files.walkFileTree(backupRoot, restoreModifiedFiles());
+        if (journal != null) {
+            closeJournal();
+            restoreJournaledChanges();
+        } else {
+            // copy backed-up files back into the server
+            Files.walkFileTree(backupRoot, restoreModifiedFiles(FileTimestamps.settledBefore()));
+
+            // remove all files added to recorded folders that were not handled by addedFiles
+            final ParallelFileWalker walker = ParallelFileWalker.fromSystemProperties();
+            final Set<Path> backupPaths = listTree(walker, backupRoot);
+            final Set<Path> candidatePaths = listTree(walker, candidateRoot);
+            walker.walk(serverRoot, deleteNewFiles(backupPaths, candidatePaths));
+        }
 
-        // remove all files added to recorded folders that were not handled by addedFiles
-        Files.walkFileTree(serverRoot, deleteNewFiles());
+        writeSync.commit();
     }
 
-    private SimpleFileVisitor<Path> deleteNewFiles() {
+    private void restoreJournaledChanges() throws IOException {
+        final List<String> entries = Files.readAllLines(backupRoot.resolve(JOURNAL_FILE), StandardCharsets.UTF_8);
+
+        // removed directories might not contain any backed-up files
+        for (String entry : entries) {
+            if (entry.startsWith(DIRECTORY_ENTRY)) {
+                final Path dir = serverRoot.resolve(entry.substring(DIRECTORY_ENTRY.length()));
+                if (!Files.isDirectory(dir)) {
+                    if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
+                        ProsperoLogger.ROOT_LOGGER.trace("Recreating removed directory " + dir);
+                    }
+                    Files.createDirectories(dir);
+                    writeSync.entryChanged(dir);
+                }
+            }
+        }
+
+        Files.walkFileTree(backupRoot, restoreModifiedFiles(FileTimestamps.settledBefore()));
+
+        // the children of added directories were journaled after them
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final String entry = entries.get(i);
+            if (!entry.startsWith(ADDED_ENTRY)) {
+                continue;
+            }
+            final Path path = serverRoot.resolve(entry.substring(ADDED_ENTRY.length()));
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                final String[] children = path.toFile().list();
+                if (children == null || children.length > 0) {
+                    continue;
+                }
+            } else if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
+                ProsperoLogger.ROOT_LOGGER.trace("Removing added file " + path);
+            }
+            Files.delete(path);
+            writeSync.entryChanged(path);
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                ProsperoLogger.ROOT_LOGGER.debug("Unable to close the backup journal", e);
+            }
+        }
+    }
+
+    /*
+     * lists the paths of the files and directories in {@code root}, relative to it. The content of the Galleon and
+     * installation metadata directories is not listed, the restore doesn't walk it.
+     */
+    private static Set<Path> listTree(ParallelFileWalker walker, Path root) throws IOException {
+        final Set<Path> paths = ConcurrentHashMap.newKeySet();
+        walker.walk(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                final Path relativePath = root.relativize(dir);
+                paths.add(relativePath);
+                if (relativePath.equals(Path.of(Constants.PROVISIONED_STATE_DIR))
+                        || relativePath.equals(Path.of(ProsperoMetadataUtils.METADATA_DIR))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // Files.exists follows the links, a dangling link doesn't exist
+                if (!attrs.isSymbolicLink() || Files.exists(file)) {
+                    paths.add(root.relativize(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // the entry exists even if it cannot be read
+                if (!(exc instanceof NoSuchFileException)) {
+                    paths.add(root.relativize(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return paths;
+    }
+
+    private SimpleFileVisitor<Path> deleteNewFiles(Set<Path> backupPaths, Set<Path> candidatePaths) {
         return new SimpleFileVisitor<>() {
 
             @Override
             public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-                return ignoreUserManagedFiles(file, exc);
+                return ignoreUserManagedFiles(file, exc, candidatePaths);
             }
 
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if (isUserProtectedFile(file)) {
-                    return FileVisitResult.SKIP_SUBTREE;
-                }
                 final Path relativePath = serverRoot.relativize(file);
-                // remove it only if it exists in the candidate but doesn't exist in the backup
+                // remove it only if it exists in the candidate but doesn't exist in the backup. Files missing in the
+                // candidate are kept, so user protected files don't need to be checked here
                 // note that doesn't handle the case of a pre-existing file being overwritten by an update...
                 // in this case I think we need to compare the candidate before the update starts. Or record each replaced file separately
-                if (!Files.exists(backupRoot.resolve(relativePath)) && Files.exists(candidateRoot.resolve(relativePath))) {
+                if (!backupPaths.contains(relativePath) && candidatePaths.contains(relativePath)) {
                     if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.trace("Removing added file " + relativePath);
                     }
 
                     Files.delete(file);
+                    writeSync.entryChanged(file);
                 }
                 return FileVisitResult.CONTINUE;
             }
@@ -230,12 +488,13 @@ class ApplyStageBackup implements AutoCloseable {
             @Override
             public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
                 final Path relativePath = serverRoot.relativize(dir);
-                if (!Files.exists(backupRoot.resolve(relativePath)) && Files.exists(candidateRoot.resolve(relativePath))) {
+                if (!backupPaths.contains(relativePath) && candidatePaths.contains(relativePath)) {
                     if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.trace("Removing added directory " + relativePath);
                     }
 
                     Files.delete(dir);
+                    writeSync.entryChanged(dir);
                 }
                 return FileVisitResult.CONTINUE;
             }
@@ -252,54 +511,74 @@ class ApplyStageBackup implements AutoCloseable {
         };
     }
 
-    private FileVisitResult ignoreUserManagedFiles(Path file, IOException exc) throws IOException {
+    private FileVisitResult ignoreUserManagedFiles(Path file, IOException exc, Set<Path> candidatePaths) throws IOException {
         // if the file in the installation is not readable AND it does not exist in the candidate
         // we assume it is user controlled file and we ignore it
-        if (isUserProtectedFile(file)) {
+        if (!candidatePaths.contains(serverRoot.relativize(file)) && !Files.isReadable(file)) {
             return FileVisitResult.SKIP_SUBTREE;
         }
         throw exc;
     }
 
-    private boolean isUserProtectedFile(Path file) {
-        final Path relative = serverRoot.relativize(file);
-        final Path candidatePath = candidateRoot.resolve(relative);
-        return !Files.isReadable(file) && !Files.exists(candidatePath);
-    }
-
-    private SimpleFileVisitor<Path> restoreModifiedFiles() {
+    private SimpleFileVisitor<Path> restoreModifiedFiles(long settledBefore) {
         return new SimpleFileVisitor<>() {
+            // parent directories known to exist in the server
+            private final Set<Path> existingDirs = new HashSet<>();
+
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                 final Path relativePath = backupRoot.relativize(file);
+                if (relativePath.equals(Path.of(JOURNAL_FILE))) {
+                    return FileVisitResult.CONTINUE;
+                }
 
                 final Path parentDir = relativePath.getParent();
-                if (parentDir != null && !Files.exists(serverRoot.resolve(parentDir))) {
+                if (parentDir != null && existingDirs.add(parentDir) && !Files.exists(serverRoot.resolve(parentDir))) {
                     if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.trace("Recreating removed directory " + parentDir);
                     }
 
                     Files.createDirectories(serverRoot.resolve(parentDir));
+                    writeSync.entryChanged(serverRoot.resolve(parentDir));
                 }
 
                 final Path targetFile = serverRoot.resolve(relativePath);
-                if (fileChanged(file, targetFile)) {
+                if (fileChanged(file, attrs, targetFile, settledBefore)) {
                     if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
                         ProsperoLogger.ROOT_LOGGER.trace("Restoring changed file " + relativePath);
                     }
 
                     Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING);
+                    writeSync.written(targetFile);
                 }
                 return FileVisitResult.CONTINUE;
             }
         };
     }
 
-    private static boolean fileChanged(Path file, Path targetFile) throws IOException {
-        if (!Files.exists(targetFile)) {
+    private static boolean fileChanged(Path file, BasicFileAttributes attrs, Path targetFile, long settledBefore) throws IOException {
+        final BasicFileAttributes targetAttrs;
+        try {
+            targetAttrs = Files.readAttributes(targetFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
             return true;
         }
 
+        // the attributes of links in the backup describe the link itself, compare the content instead
+        if (attrs.isRegularFile() && targetAttrs.isRegularFile()) {
+            // most of the backed-up files are hardlinks of the server files that were not replaced
+            if (attrs.fileKey() != null && attrs.fileKey().equals(targetAttrs.fileKey())) {
+                return false;
+            }
+            if (attrs.size() != targetAttrs.size()) {
+                return true;
+            }
+            final long modified = attrs.lastModifiedTime().toMillis();
+            if (modified < settledBefore && modified == targetAttrs.lastModifiedTime().toMillis()) {
+                return false;
+            }
+        }
+
         try (FileInputStream fis1 = new FileInputStream(targetFile.toFile());
              FileInputStream fis2 = new FileInputStream(file.toFile())){
             return !IOUtils.contentEquals(fis1, fis2);
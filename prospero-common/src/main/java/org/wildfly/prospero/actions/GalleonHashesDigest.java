@@ -0,0 +1,238 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.jboss.galleon.Constants;
+import org.jboss.galleon.util.HashUtils;
+import org.wildfly.prospero.ProsperoLogger;
+import org.wildfly.prospero.galleon.FileDigests;
+import org.wildfly.prospero.galleon.FileTimestamps;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A Merkle tree of the Galleon hashes record ({@code .galleon/hashes}) of a server.
+ *
+ * Each directory of the record is digested from the names and digests of its files and sub-directories, so two servers
+ * with the same root digest have the same hashes record. The digests of the files are persisted in the server metadata
+ * together with their sizes and modification times. Only the files that changed since the digests were recorded are
+ * read again. Files modified too recently to be identified by their modification time are not recorded.
+ */
+class GalleonHashesDigest {
+
+    static final Path RECORD_FILE = Path.of(ProsperoMetadataUtils.METADATA_DIR, ".hashes-digest");
+
+    private final String root;
+
+    private GalleonHashesDigest(String root) {
+        this.root = root;
+    }
+
+    /**
+     * computes the digest of the hashes record of the server at {@code serverRoot}, re-using the digests of unchanged
+     * files recorded previously. The digests are recorded again if any of the files changed.
+     *
+     * @param serverRoot - root of the server
+     * @return digest of the hashes record
+     * @throws IOException - if the server doesn't have a hashes record or it cannot be read
+     */
+    static GalleonHashesDigest of(Path serverRoot) throws IOException {
+        final Path hashesRoot = serverRoot.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES);
+        final Path recordFile = serverRoot.resolve(RECORD_FILE);
+        final Map<String, Entry> recorded = readRecord(recordFile);
+        final Map<String, Entry> current = new TreeMap<>();
+        final long settledBefore = FileTimestamps.settledBefore();
+        final Deque<Map<String, String>> children = new ArrayDeque<>();
+        final String[] rootDigest = new String[1];
+
+        Files.walkFileTree(hashesRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                children.push(new TreeMap<>());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                final String relative = relativePath(hashesRoot, file);
+                final long modified = attrs.lastModifiedTime().toMillis();
+                Entry entry = recorded.get(relative);
+                if (entry == null || entry.size != attrs.size() || entry.modified != modified) {
+                    entry = new Entry(FileDigests.of(file).getSha1(), attrs.size(), modified);
+                }
+                if (modified < settledBefore) {
+                    current.put(relative, entry);
+                }
+                children.peek().put("f " + file.getFileName(), entry.digest);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                final String digest = digest(children.pop());
+                if (children.isEmpty()) {
+                    rootDigest[0] = digest;
+                } else {
+                    children.peek().put("d " + dir.getFileName(), digest);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // the record is created even before any of the files has settled, it is part of the server metadata
+        if (!current.equals(recorded) || !Files.exists(recordFile)) {
+            writeRecord(recordFile, current);
+        }
+
+        return new GalleonHashesDigest(rootDigest[0]);
+    }
+
+    /**
+     * records the digests of the hashes record of the server at {@code serverRoot}, so that they are not computed when
+     * the record is compared.
+     *
+     * @param serverRoot - root of a provisioned server
+     */
+    static void record(Path serverRoot) {
+        try {
+            of(serverRoot);
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to record the digest of the Galleon hashes in " + serverRoot, e);
+        }
+    }
+
+    String getRoot() {
+        return root;
+    }
+
+    private static String digest(Map<String, String> children) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Map.Entry<String, String> child : children.entrySet()) {
+            digest.update(child.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(child.getValue().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return HashUtils.bytesToHexString(digest.digest());
+    }
+
+    private static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separator, "/");
+    }
+
+    private static Map<String, Entry> readRecord(Path recordFile) {
+        if (!Files.exists(recordFile)) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            final List<String> lines = Files.readAllLines(recordFile, StandardCharsets.UTF_8);
+            final Map<String, Entry> entries = new HashMap<>();
+            for (String line : lines) {
+                // <digest> <size> <modified> <path>, the path is last as it can contain spaces
+                final String[] parts = line.split(" ", 4);
+                if (parts.length != 4) {
+                    return Collections.emptyMap();
+                }
+                entries.put(parts[3], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+            return entries;
+        } catch (IOException | NumberFormatException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to read the recorded digests " + recordFile + ", the digests will be re-computed", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static void writeRecord(Path recordFile, Map<String, Entry> entries) {
+        if (!Files.isDirectory(recordFile.getParent())) {
+            return;
+        }
+
+        try {
+            final Path tempFile = Files.createTempFile(recordFile.getParent(), RECORD_FILE.getFileName().toString(), ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                        final Entry value = entry.getValue();
+                        writer.write(value.digest + " " + value.size + " " + value.modified + " " + entry.getKey());
+                        writer.newLine();
+                    }
+                }
+                Files.move(tempFile, recordFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            // the candidate folder might not be writable, the digests will be computed next time
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to record the digests in " + recordFile, e);
+        }
+    }
+
+    private static final class Entry {
+        private final String digest;
+        private final long size;
+        private final long modified;
+
+        private Entry(String digest, long size, long modified) {
+            this.digest = digest;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Entry entry = (Entry) o;
+            return size == entry.size && modified == entry.modified && Objects.equals(digest, entry.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(digest, size, modified);
+        }
+    }
+}
@@ -16,41 +16,51 @@ import org.wildfly.prospero.galleon.GalleonUtils;
  * recorded in a hashes file in those directories.
  *
  * We use Galleon APIs to parse the hashes
+ *
+ * The sub-directories are walked in parallel, the visitor methods are called from several threads at once. A directory
+ * is visited before the files in it. Only the recorded directories are checked in the file system, {@link #visitFile(Path)}
+ * can be called for a path that is not a file anymore. If the visitor fails, the failure coming first in the order of
+ * a sequential walk is thrown, see {@link ParallelFileWalker}.
  */
 abstract class GalleonHashesFileWalker {
 
     private final Path rootPath;
+    private final ParallelFileWalker walker;
 
     GalleonHashesFileWalker(Path rootPath) {
         this.rootPath = rootPath;
+        this.walker = ParallelFileWalker.fromSystemProperties();
     }
 
     public void walk() throws IOException {
+        final FsEntry root;
         try {
-            final FsDiff changes = GalleonUtils.findChanges(rootPath);
-            doWalk(changes.getOriginalRoot());
-
+            final FsDiff changes = GalleonUtils.findChanges(rootPath, ApplyStageBackup.IGNORED_PATHS);
+            root = changes.getOriginalRoot();
         } catch (ProvisioningException e) {
             throw new RuntimeException(e);
         } catch (OperationException e) {
             throw new RuntimeException(e);
         }
-    }
 
-    private void doWalk(FsEntry root) throws IOException {
-        for (FsEntry child : root.getChildren()) {
-            if (child.isDiffStatusAdded()) {
-                // ignore added files and folders
-                continue;
-            }
+        walker.walk(root, (dir, subdirectories) -> {
+            for (FsEntry child : dir.getChildren()) {
+                if (child.isDiffStatusAdded()) {
+                    // ignore added files and folders
+                    continue;
+                }
 
-            if (Files.isDirectory(rootPath.resolve(child.getRelativePath()))) {
-                visitDirectory(Path.of(child.getRelativePath()));
-                doWalk(child);
-            } else {
-                visitFile(Path.of(child.getRelativePath()));
+                final Path relative = Path.of(child.getRelativePath());
+                // a recorded directory might have been replaced or removed by the user
+                if ((child.isDir() || !child.getChildren().isEmpty()) && Files.isDirectory(rootPath.resolve(relative))) {
+                    visitDirectory(relative);
+                    subdirectories.accept(child);
+                } else {
+                    visitFile(relative);
+                }
             }
-        }
+            return false;
+        });
     }
 
     abstract void visitFile(Path file) throws IOException;
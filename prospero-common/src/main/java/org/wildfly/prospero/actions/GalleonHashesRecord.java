@@ -0,0 +1,87 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.jboss.galleon.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Hashes of the provisioned files recorded by Galleon in {@code .galleon/hashes}.
+ *
+ * Each directory of the server has a {@code hashes} file in the corresponding directory of the record, listing
+ * the names and hashes of the files in that directory on alternating lines.
+ */
+class GalleonHashesRecord {
+
+    private final Map<String, String> hashes;
+
+    private GalleonHashesRecord(Map<String, String> hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * reads the hashes recorded in the server at {@code serverRoot}.
+     *
+     * @param serverRoot - root of the server
+     * @return recorded hashes, empty if the server doesn't have a hashes record
+     * @throws IOException - if unable to read the record
+     */
+    static GalleonHashesRecord read(Path serverRoot) throws IOException {
+        final Path hashesRoot = serverRoot.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES);
+        if (!Files.isDirectory(hashesRoot)) {
+            return new GalleonHashesRecord(Collections.emptyMap());
+        }
+
+        final List<Path> hashesFiles;
+        try (Stream<Path> walk = Files.walk(hashesRoot)) {
+            hashesFiles = walk
+                    .filter(p -> p.getFileName().toString().equals(Constants.HASHES) && Files.isRegularFile(p))
+                    .collect(Collectors.toList());
+        }
+
+        final Map<String, String> hashes = new HashMap<>();
+        for (Path hashesFile : hashesFiles) {
+            final Path dir = hashesRoot.relativize(hashesFile.getParent());
+            // FsDiff always uses UNIX separators
+            final String prefix = dir.toString().isEmpty() ? "" : dir.toString().replace(File.separator, "/") + "/";
+            final List<String> lines = Files.readAllLines(hashesFile);
+            for (int i = 0; i + 1 < lines.size(); i += 2) {
+                hashes.put(prefix + lines.get(i), lines.get(i + 1));
+            }
+        }
+        return new GalleonHashesRecord(hashes);
+    }
+
+    /**
+     * @param relativePath - path of a file relative to the server root, using UNIX separators
+     * @return recorded hex-encoded hash of the file, or {@code null} if the file is not recorded
+     */
+    String getHash(String relativePath) {
+        return hashes.get(relativePath);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Walks a file tree like {@link Files#walkFileTree(Path, FileVisitor)}, visiting the sub-directories in parallel.
+ *
+ * The visitor is called from several threads at once. A directory is always pre-visited before its entries and
+ * post-visited after all of them, the entries of a directory are visited in the order of their names. Symbolic links
+ * are not followed. {@link FileVisitResult#SKIP_SIBLINGS} and {@link FileVisitResult#TERMINATE} skip the remaining
+ * entries of the current directory.
+ *
+ * Sub-directories that are already being visited are finished if the visitor fails. Of all the failures, the one
+ * coming first in the order of a sequential walk is thrown and the others are suppressed, so the reported error
+ * doesn't depend on the scheduling of the threads.
+ *
+ * Other trees, e.g. the recorded Galleon hashes, can be walked the same way with {@link #walk(Object, TreeVisitor)}.
+ * The walks share one pool of threads for each level of parallelism.
+ */
+class ParallelFileWalker {
+
+    // the worker threads are daemons and are released when idle
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private final int parallelism;
+
+    ParallelFileWalker(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return walker using the number of threads configured by {@link ApplyCandidateAction#APPLY_PARALLELISM_PROPERTY}
+     */
+    static ParallelFileWalker fromSystemProperties() {
+        return new ParallelFileWalker(Integer.getInteger(ApplyCandidateAction.APPLY_PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * walks the tree at {@code root}, calling the {@code visitor} for each entry.
+     *
+     * @param root - root of the tree
+     * @param visitor - thread-safe visitor
+     * @throws IOException - the first failure of the visitor
+     */
+    void walk(Path root, FileVisitor<Path> visitor) throws IOException {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            visitor.visitFileFailed(root, e);
+            return;
+        }
+        if (!attrs.isDirectory()) {
+            visitor.visitFile(root, attrs);
+            return;
+        }
+
+        walk(new Directory(root, attrs), new FileTreeVisitor(visitor));
+    }
+
+    /**
+     * walks a tree of directories, visiting the sub-directories passed by the {@code visitor} in parallel.
+     *
+     * @param root - the root directory
+     * @param visitor - thread-safe visitor
+     * @throws IOException - the first failure of the visitor
+     */
+    <T> void walk(T root, TreeVisitor<T> visitor) throws IOException {
+        final DirectoryTask<T> task = new DirectoryTask<>(visitor, root);
+        POOLS.computeIfAbsent(parallelism, ForkJoinPool::new).invoke(task);
+        rethrow(task.failures);
+    }
+
+    /*
+     * throws the first of the {@code failures}, suppressing the rest
+     */
+    private static void rethrow(List<Exception> failures) throws IOException {
+        if (failures.isEmpty()) {
+            return;
+        }
+        final Exception first = failures.get(0);
+        for (Exception failure : failures.subList(1, failures.size())) {
+            first.addSuppressed(failure);
+        }
+        if (first instanceof IOException) {
+            throw (IOException) first;
+        }
+        throw (RuntimeException) first;
+    }
+
+    /**
+     * visits the directories of a tree.
+     */
+    interface TreeVisitor<T> {
+        /**
+         * visits the entries of {@code dir}. The sub-directories passed to {@code subdirectories} are walked in
+         * parallel, any failure of this directory is reported after theirs.
+         *
+         * @return {@code true} if {@link #postVisitDirectory(Object)} should be called for {@code dir}
+         */
+        boolean visitDirectory(T dir, Consumer<T> subdirectories) throws IOException;
+
+        /**
+         * called after the entries of {@code dir} and all its sub-directories were visited without a failure.
+         */
+        default void postVisitDirectory(T dir) throws IOException {
+        }
+    }
+
+    private static final class DirectoryTask<T> extends RecursiveAction {
+        private final TreeVisitor<T> visitor;
+        private final T dir;
+        // failures in the order of a sequential walk
+        private final List<Exception> failures = new ArrayList<>();
+
+        private DirectoryTask(TreeVisitor<T> visitor, T dir) {
+            this.visitor = visitor;
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DirectoryTask<T>> subtasks = new ArrayList<>();
+            Exception failure = null;
+            boolean visited = false;
+            try {
+                visited = visitor.visitDirectory(dir, subdir -> {
+                    final DirectoryTask<T> subtask = new DirectoryTask<>(visitor, subdir);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                });
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+
+            // the sub-directories precede the failed entry of this directory
+            for (DirectoryTask<T> subtask : subtasks) {
+                subtask.join();
+                failures.addAll(subtask.failures);
+            }
+            if (failure != null) {
+                failures.add(failure);
+            }
+
+            if (failures.isEmpty() && visited) {
+                try {
+                    visitor.postVisitDirectory(dir);
+                } catch (IOException | RuntimeException e) {
+                    failures.add(e);
+                }
+            }
+        }
+    }
+
+    private static final class Directory {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+
+        private Directory(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+
+    /*
+     * adapts a FileVisitor to the directories of the file tree
+     */
+    private static final class FileTreeVisitor implements TreeVisitor<Directory> {
+        private final FileVisitor<Path> visitor;
+
+        private FileTreeVisitor(FileVisitor<Path> visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public boolean visitDirectory(Directory dir, Consumer<Directory> subdirectories) throws IOException {
+            final List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.path)) {
+                stream.forEach(entries::add);
+            } catch (IOException e) {
+                visitor.visitFileFailed(dir.path, e);
+                return false;
+            } catch (DirectoryIteratorException e) {
+                visitor.visitFileFailed(dir.path, e.getCause());
+                return false;
+            }
+            Collections.sort(entries);
+
+            if (visitor.preVisitDirectory(dir.path, dir.attrs) != FileVisitResult.CONTINUE) {
+                return false;
+            }
+
+            for (Path entry : entries) {
+                final BasicFileAttributes entryAttrs;
+                try {
+                    entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    if (isTerminal(visitor.visitFileFailed(entry, e))) {
+                        return true;
+                    }
+                    continue;
+                }
+
+                if (entryAttrs.isDirectory()) {
+                    subdirectories.accept(new Directory(entry, entryAttrs));
+                } else if (isTerminal(visitor.visitFile(entry, entryAttrs))) {
+                    return true;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void postVisitDirectory(Directory dir) throws IOException {
+            visitor.postVisitDirectory(dir.path, null);
+        }
+
+        private static boolean isTerminal(FileVisitResult result) {
+            return result == FileVisitResult.SKIP_SIBLINGS || result == FileVisitResult.TERMINATE;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.wildfly.prospero.api.exceptions.ArtifactResolutionException;
 import org.wildfly.prospero.api.exceptions.MetadataException;
 import org.wildfly.prospero.api.exceptions.OperationException;
 import org.wildfly.prospero.galleon.ArtifactCache;
+import org.wildfly.prospero.galleon.FileStateTree;
 import org.wildfly.prospero.galleon.GalleonEnvironment;
 import org.wildfly.prospero.galleon.GalleonFeaturePackAnalyzer;
 import org.wildfly.prospero.galleon.GalleonUtils;
@@ -62,6 +63,12 @@ import org.jboss.galleon.api.config.GalleonProvisioningConfig;
 class PrepareCandidateAction implements AutoCloseable {
 
     private static final Logger LOG = Logger.getLogger(PrepareCandidateAction.class.getName());
+    /**
+     * If set to {@code true}, artifacts of the candidate that are the same as in the installation are replaced with
+     * hardlinks to the installation files, so that the candidate only takes disk space for the updated artifacts.
+     * Requires the candidate and the installation to be on the same filesystem.
+     */
+    static final String LINK_UNCHANGED_PROPERTY = "prospero.prepare.link-unchanged";
     private final InstallationMetadata metadata;
     private final ProsperoConfig prosperoConfig;
     private final MavenSessionManager mavenSessionManager;
@@ -162,6 +169,13 @@ class PrepareCandidateAction implements AutoCloseable {
             throw new RuntimeException(e);
         }
 
+        if (Boolean.getBoolean(LINK_UNCHANGED_PROPERTY)) {
+            linkUnchangedArtifacts(targetDir);
+        }
+        // recorded once all the files are in place, including the cached and linked artifacts
+        GalleonHashesDigest.record(targetDir);
+        FileStateTree.recordProvisioned(targetDir, ApplyStageBackup.IGNORED_PATHS);
+
         try {
             new LicenseManager().copyIfExists(installDir, targetDir);
         } catch (IOException e) {
@@ -169,6 +183,15 @@ class PrepareCandidateAction implements AutoCloseable {
         }
     }
 
+    private void linkUnchangedArtifacts(Path targetDir) {
+        try {
+            ArtifactCache.linkUnchangedArtifacts(installDir, targetDir);
+        } catch (IOException e) {
+            // the candidate is still complete, the artifacts that were not linked are copies
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to link unchanged artifacts from the installation to the candidate", e);
+        }
+    }
+
     private Optional<ManifestVersionRecord> getManifestVersionRecord(GalleonEnvironment galleonEnv) {
         try {
             return Optional.of(ManifestVersionResolver.getCurrentVersions(galleonEnv.getChannelSession()));
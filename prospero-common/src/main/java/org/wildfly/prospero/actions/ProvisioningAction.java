@@ -38,6 +38,7 @@ import org.wildfly.prospero.api.exceptions.MetadataException;
 import org.wildfly.prospero.api.exceptions.OperationException;
 import org.wildfly.prospero.api.exceptions.StreamNotFoundException;
 import org.wildfly.prospero.galleon.ArtifactCache;
+import org.wildfly.prospero.galleon.FileStateTree;
 import org.wildfly.prospero.galleon.GalleonFeaturePackAnalyzer;
 import org.wildfly.prospero.galleon.GalleonEnvironment;
 import org.wildfly.prospero.galleon.GalleonUtils;
@@ -163,6 +164,8 @@ public class ProvisioningAction {
                         installDir.resolve(ProsperoMetadataUtils.METADATA_DIR).resolve(ProsperoMetadataUtils.PROVISIONING_RECORD_XML), e);
             }
             writeProsperoMetadata(installDir, galleonEnv.getChannelSession().getRecordedChannel(), recordedChannels, manifestRecord);
+            GalleonHashesDigest.record(installDir);
+            FileStateTree.recordProvisioned(installDir, ApplyStageBackup.IGNORED_PATHS);
         }
 
 
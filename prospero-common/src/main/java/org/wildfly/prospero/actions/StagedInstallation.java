@@ -0,0 +1,194 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.jboss.galleon.util.IoUtils;
+import org.wildfly.prospero.galleon.ArtifactCache;
+import org.wildfly.prospero.galleon.ChangeJournal;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.wildfly.prospero.metadata.ProsperoMetadataUtils.METADATA_DIR;
+
+/**
+ * A copy of an installation placed next to it, that a candidate can be applied to without modifying the installation.
+ * Once the candidate is applied, the staged copy replaces the installation by renaming the folders.
+ *
+ * The files of the installation are hardlinked into the staged copy, so that creating it doesn't require copying the
+ * content. Applying a candidate never writes into an existing file - updated files are removed and created again - so
+ * the installation is not affected by changes to the staged copy. The exception is the installation metadata, which
+ * is modified in place (e.g. by git) and is copied instead. The artifact cache is updated by replacing files and is
+ * linked as well.
+ *
+ * The installation is replaced by two renames, moving the installation away and the staged copy in its place. The
+ * replacement is not atomic - the installation path doesn't exist between the renames - and it's not possible if the
+ * installation root is a mount point.
+ */
+class StagedInstallation {
+
+    private static final String STAGED_SUFFIX = ".staged";
+    private static final String REPLACED_SUFFIX = ".replaced";
+
+    private final Path installationDir;
+    private final Path stagedDir;
+    private final Path replacedDir;
+    private final WriteSync writeSync;
+
+    StagedInstallation(Path installationDir, WriteSync writeSync) {
+        this.installationDir = installationDir;
+        this.writeSync = writeSync;
+        this.stagedDir = installationDir.resolveSibling("." + installationDir.getFileName() + STAGED_SUFFIX);
+        this.replacedDir = installationDir.resolveSibling("." + installationDir.getFileName() + REPLACED_SUFFIX);
+    }
+
+    Path getStagedDir() {
+        return stagedDir;
+    }
+
+    /**
+     * creates the staged copy of the installation, replacing any leftovers of previous attempts.
+     *
+     * @throws IOException - if any file of the installation cannot be copied, e.g. because it's not readable
+     */
+    void create() throws IOException {
+        IoUtils.recursiveDelete(stagedDir);
+        IoUtils.recursiveDelete(replacedDir);
+
+        final Path parentDir = installationDir.getParent();
+        if (parentDir == null || !Files.getFileStore(installationDir).equals(Files.getFileStore(parentDir))) {
+            throw new IOException("The installation " + installationDir + " is a mount point and cannot be replaced.");
+        }
+
+        final Path backupDir = installationDir.resolve(ApplyStageBackup.BACKUP_FOLDER);
+        final Path metadataDir = installationDir.resolve(METADATA_DIR);
+        final Path cacheDir = installationDir.resolve(ArtifactCache.CACHE_FOLDER);
+        Files.walkFileTree(installationDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(backupDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.copy(dir, stagedPath(dir), StandardCopyOption.COPY_ATTRIBUTES);
+                writeSync.entryChanged(stagedPath(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (ChangeJournal.isJournalFile(installationDir.relativize(file))) {
+                    // the staged copy is journaled from scratch once it replaces the installation
+                    return FileVisitResult.CONTINUE;
+                }
+                final Path target = stagedPath(file);
+                if (attrs.isSymbolicLink()) {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                    writeSync.entryChanged(target);
+                } else if (file.startsWith(metadataDir) && !file.startsWith(cacheDir)) {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    writeSync.written(target);
+                } else {
+                    link(file, target);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * replaces the installation with the staged copy. If the staged copy cannot be moved in place, the original
+     * installation is restored.
+     *
+     * @throws NotMovedException - if the installation cannot be moved away, it was not modified
+     * @throws IOException - if unable to replace the installation, it was restored
+     * @throws SwapException - if unable to restore the installation after a failure
+     */
+    void swap() throws IOException {
+        try {
+            Files.move(installationDir, replacedDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new NotMovedException(installationDir, e);
+        }
+        try {
+            Files.move(stagedDir, installationDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.move(replacedDir, installationDir, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+                throw new SwapException(replacedDir, e);
+            }
+            throw e;
+        }
+        writeSync.entryChanged(installationDir);
+
+        IoUtils.recursiveDelete(replacedDir);
+    }
+
+    /**
+     * removes the staged copy.
+     */
+    void discard() {
+        IoUtils.recursiveDelete(stagedDir);
+    }
+
+    private Path stagedPath(Path path) {
+        return stagedDir.resolve(installationDir.relativize(path));
+    }
+
+    private void link(Path file, Path target) throws IOException {
+        try {
+            Files.createLink(target, file);
+            writeSync.entryChanged(target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+            writeSync.written(target);
+        }
+    }
+
+    /**
+     * the installation could not be moved away, e.g. because it's a mount point or its parent folder is not writable.
+     */
+    static class NotMovedException extends IOException {
+        NotMovedException(Path installationDir, IOException cause) {
+            super("Unable to move the installation " + installationDir, cause);
+        }
+    }
+
+    /**
+     * the installation was moved away, but could not be restored.
+     */
+    static class SwapException extends IOException {
+        private final Path replacedDir;
+
+        SwapException(Path replacedDir, IOException cause) {
+            super("Unable to restore the installation from " + replacedDir, cause);
+            this.replacedDir = replacedDir;
+        }
+
+        Path getReplacedDir() {
+            return replacedDir;
+        }
+    }
+}
@@ -35,7 +35,9 @@ import org.wildfly.prospero.api.TemporaryRepositoriesHandler;
 import org.wildfly.prospero.api.InstallationMetadata;
 import org.wildfly.prospero.api.exceptions.OperationException;
 import org.wildfly.prospero.galleon.GalleonEnvironment;
+import org.wildfly.prospero.galleon.ArtifactCache;
 import org.wildfly.prospero.model.ProsperoConfig;
+import org.wildfly.prospero.updates.UpdateEstimate;
 import org.wildfly.prospero.updates.UpdateFinder;
 import org.wildfly.prospero.updates.UpdateSet;
 import org.wildfly.prospero.wfchannel.MavenSessionManager;
@@ -151,6 +153,24 @@ public class UpdateAction implements AutoCloseable {
         }
     }
 
+    /**
+     * estimates the downloads and file system changes needed to apply {@code updateSet} to {@code installDir}, without
+     * provisioning the update. The new versions of the artifacts are resolved into the local repository.
+     *
+     * @param updateSet - updates found by {@link #findUpdates()}
+     * @return the estimate
+     * @throws OperationException - if the installation's artifact cache cannot be read
+     * @throws ProvisioningException
+     */
+    public UpdateEstimate estimateUpdate(UpdateSet updateSet) throws OperationException, ProvisioningException {
+        try (GalleonEnvironment galleonEnv = getGalleonEnv(installDir)) {
+            return UpdateEstimate.of(installDir, mavenSessionManager.getProvisioningRepo(), galleonEnv.getChannelSession(),
+                    updateSet);
+        } catch (IOException e) {
+            throw ProsperoLogger.ROOT_LOGGER.unableToReadFile(installDir.resolve(ArtifactCache.CACHE_FOLDER), e);
+        }
+    }
+
     private GalleonEnvironment getGalleonEnv(Path target) throws ProvisioningException, OperationException {
         return GalleonEnvironment
                 .builder(target, prosperoConfig.getChannels(), mavenSessionManager, false)
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.wildfly.prospero.ProsperoLogger;
+import org.wildfly.prospero.api.exceptions.OperationException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Makes the files written while applying a candidate durable.
+ *
+ * Written files are recorded and flushed to the disk at commit points, together with one sync of each directory
+ * containing them. The files are synced before the directories, and everything recorded before a commit is durable
+ * before anything recorded after it, so e.g. the installation metadata never describes files that could be lost.
+ */
+class WriteSync {
+
+    enum Mode {
+        /**
+         * the files are never explicitly synced, leaving it to the operating system.
+         */
+        NONE,
+        /**
+         * the files are synced when a phase of the apply (e.g. backup, updating files, updating metadata) is finished.
+         */
+        PHASE,
+        /**
+         * each file, and the directory containing it, is synced as soon as it is written.
+         */
+        STRICT;
+
+        static Mode from(String text) throws OperationException {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(text.trim())) {
+                    return mode;
+                }
+            }
+            throw ProsperoLogger.ROOT_LOGGER.invalidPropertyValue(ApplyCandidateAction.APPLY_SYNC_PROPERTY, text,
+                    Arrays.stream(values()).map(mode -> mode.name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(", ")));
+        }
+    }
+
+    private final Mode mode;
+    private final Set<Path> files = ConcurrentHashMap.newKeySet();
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+
+    WriteSync(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * @return {@code WriteSync} in the mode set by {@link ApplyCandidateAction#APPLY_SYNC_PROPERTY}
+     * @throws OperationException - if the property is not a valid mode
+     */
+    static WriteSync fromSystemProperties() throws OperationException {
+        final String mode = System.getProperty(ApplyCandidateAction.APPLY_SYNC_PROPERTY);
+        return new WriteSync(mode == null ? Mode.NONE : Mode.from(mode));
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * records a file that has been created or replaced. Both the content of the file and its entry in the parent
+     * directory are synced.
+     *
+     * @param file - the written file
+     * @throws IOException - if in the strict mode and unable to sync the file
+     */
+    void written(Path file) throws IOException {
+        if (mode == Mode.NONE) {
+            return;
+        }
+
+        if (mode == Mode.STRICT) {
+            if (Files.isRegularFile(file)) {
+                syncFile(file);
+            }
+        } else if (Files.isRegularFile(file)) {
+            files.add(file);
+        }
+        entryChanged(file);
+    }
+
+    /**
+     * records a path that has been created, linked, moved or removed, without changing the content. Only the entry
+     * in its parent directory is synced.
+     *
+     * @param path - the changed path
+     */
+    void entryChanged(Path path) {
+        if (mode == Mode.NONE) {
+            return;
+        }
+
+        final Path parent = path.toAbsolutePath().getParent();
+        if (parent == null) {
+            return;
+        }
+        if (mode == Mode.STRICT) {
+            syncDirectory(parent);
+        } else {
+            directories.add(parent);
+        }
+    }
+
+    /**
+     * records all the files and directories in {@code root} and the entry of {@code root} in its parent.
+     *
+     * @param root - directory that has been written
+     * @throws IOException - if unable to list the directory or, in the strict mode, sync its content
+     */
+    void writtenTree(Path root) throws IOException {
+        if (mode == Mode.NONE || !Files.exists(root)) {
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                written(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                entryChanged(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * syncs all the recorded files, followed by the directories containing them.
+     *
+     * @throws IOException - if unable to sync any of the files
+     */
+    void commit() throws IOException {
+        if (mode != Mode.PHASE) {
+            return;
+        }
+
+        final List<Path> pendingFiles = new ArrayList<>(files);
+        files.removeAll(pendingFiles);
+        for (Path file : pendingFiles) {
+            // the file might have been replaced by a directory or removed since it was written
+            if (Files.isRegularFile(file)) {
+                syncFile(file);
+            }
+        }
+
+        final List<Path> pendingDirectories = new ArrayList<>(directories);
+        directories.removeAll(pendingDirectories);
+        for (Path directory : pendingDirectories) {
+            if (Files.isDirectory(directory)) {
+                syncDirectory(directory);
+            }
+        }
+
+        if (ProsperoLogger.ROOT_LOGGER.isTraceEnabled()) {
+            ProsperoLogger.ROOT_LOGGER.tracef("Synced %d files in %d directories.", pendingFiles.size(), pendingDirectories.size());
+        }
+    }
+
+    // visible for testing
+    int pendingFiles() {
+        return files.size();
+    }
+
+    // visible for testing
+    int pendingDirectories() {
+        return directories.size();
+    }
+
+    private static void syncFile(Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        } catch (AccessDeniedException e) {
+            // read-only files can still be synced on most platforms
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        try (FileChannel c = channel) {
+            c.force(true);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        // not every platform allows opening a directory (e.g. Windows), the entries are synced with the files there
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.tracef(e, "Unable to sync directory %s", directory);
+        }
+    }
+}
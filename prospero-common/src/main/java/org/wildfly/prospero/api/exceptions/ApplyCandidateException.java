@@ -23,11 +23,23 @@ public class ApplyCandidateException extends OperationException {
 
     private final boolean rollbackSuccessful;
     private final Path backupPath;
+    private final boolean installationModified;
 
     public ApplyCandidateException(String msg, boolean rollbackSuccessful, Path backupPath, Throwable e) {
         super(msg, e);
         this.rollbackSuccessful = rollbackSuccessful;
         this.backupPath = backupPath;
+        this.installationModified = true;
+    }
+
+    /**
+     * the candidate could not be applied, but the installation was not modified and there is nothing to roll back.
+     */
+    public ApplyCandidateException(String msg, Throwable e) {
+        super(msg, e);
+        this.rollbackSuccessful = true;
+        this.backupPath = null;
+        this.installationModified = false;
     }
 
     public boolean isRollbackSuccessful() {
@@ -37,4 +49,8 @@ public class ApplyCandidateException extends OperationException {
     public Path getBackupPath() {
         return backupPath;
     }
+
+    public boolean isInstallationModified() {
+        return installationModified;
+    }
 }
@@ -20,7 +20,6 @@ package org.wildfly.prospero.galleon;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.jboss.galleon.universe.maven.MavenUniverseException;
-import org.jboss.galleon.util.HashUtils;
 import org.jboss.galleon.util.IoUtils;
 import org.jboss.logging.Logger;
 import org.wildfly.channel.ChannelManifest;
@@ -35,16 +34,28 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.HashMap;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.TreeMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Manages artifact cache located in {@code installationDir}/{@code CACHE_FOLDER}.
@@ -55,7 +66,15 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * If the artifact cannot be found within Galleon-provisioned {@code installationDir}, the artifact can be added to the
  * {@code CACHE_FOLDER}.
  *
- * The cache is rebuild during update and only current artifacts are stored.
+ * The cache is rebuild during update and only current artifacts are stored. The rebuilt cache is merged into the
+ * installation with {@link #updateFromCandidate(Path, Path)}, replacing only the changed files.
+ *
+ * To avoid re-parsing the descriptor on every change, the entries are persisted in a binary {@link ArtifactCacheIndex}.
+ * Recorded artifacts are appended to the index journal and the descriptor is re-written only when the cache is
+ * {@link #flush() flushed}.
+ *
+ * Lookups don't block. Artifacts can be recorded concurrently, the journal is written by a single background thread.
+ * Only flushing the cache or re-loading a descriptor modified outside of the cache excludes other writers.
  */
 public class ArtifactCache {
     private static final Logger LOG = Logger.getLogger(ArtifactCache.class);
@@ -63,41 +82,372 @@ public class ArtifactCache {
     static final String CACHE_LINE_SEPARATOR = "::";
     static final String CACHE_FILENAME = "artifacts.txt";
     public static final Path CACHE_FOLDER = Path.of(ProsperoMetadataUtils.METADATA_DIR, ".cache");
+    /**
+     * If set to {@code true}, cached files are always re-hashed when looked up, even if their size, modification time
+     * and file key match the state recorded when the file was last verified.
+     */
+    public static final String PARANOID_VERIFICATION_PROPERTY = "prospero.cache.paranoid";
+    /**
+     * Maximum number of caches of different installations kept in memory by {@link #getInstance(Path)}. Defaults to 32.
+     */
+    public static final String MAX_INSTANCES_PROPERTY = "prospero.cache.max-instances";
+    /**
+     * Number of seconds after which a cache that was not requested by {@link #getInstance(Path)} is released from
+     * memory. Defaults to 600.
+     */
+    public static final String INSTANCE_IDLE_TIMEOUT_PROPERTY = "prospero.cache.instance-idle-timeout";
 
     private final Path cacheDir;
     private final Path installationDir;
 
-    private final Map<String, Path> paths = new TreeMap<>();
-    private final Map<String, String> hashes = new TreeMap<>();
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ArtifactCacheIndex index;
+    private final SharedArtifactStore sharedStore;
+    private final ConcurrentNavigableMap<String, ArtifactCacheIndex.Entry> entries = new ConcurrentSkipListMap<>();
+    // keys of the entries recorded for each path, the same file might be recorded for several GAVs
+    private final ConcurrentMap<String, Set<String>> keysByPath = new ConcurrentHashMap<>();
+    private volatile ArtifactCacheIndex.Stamp descriptorStamp = ArtifactCacheIndex.Stamp.MISSING;
+    private volatile boolean dirty;
+    // shared by threads modifying entries, exclusive for operations replacing the descriptor
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<String> pendingJournal = new ConcurrentLinkedQueue<>();
+    private final ThreadPoolExecutor journalWriter;
 
-    private static final HashMap<Path, ArtifactCache> instances = new HashMap<>();
+    private static final ArtifactCacheRegistry instances = new ArtifactCacheRegistry(
+            Integer.getInteger(MAX_INSTANCES_PROPERTY, 32),
+            TimeUnit.SECONDS.toMillis(Long.getLong(INSTANCE_IDLE_TIMEOUT_PROPERTY, 600)),
+            System::currentTimeMillis);
 
     /**
-     * returns artifact cache located at {@code installationDir}/{code CACHE_FOLDER}
+     * returns artifact cache located at {@code installationDir}/{code CACHE_FOLDER}. The caches are kept in memory
+     * until they are evicted, see {@link #MAX_INSTANCES_PROPERTY} and {@link #INSTANCE_IDLE_TIMEOUT_PROPERTY}.
      *
      * @param installationDir
      * @return
      * @throws IOException if the cache descriptor is corrupt and cannot be read
      */
     public static ArtifactCache getInstance(Path installationDir) throws IOException {
-        synchronized (instances) {
-            if (!instances.containsKey(installationDir.toAbsolutePath())) {
-                instances.put(installationDir.toAbsolutePath(), new ArtifactCache(installationDir));
+        return instances.get(installationDir, ArtifactCache::new);
+    }
+
+    /**
+     * loads the artifact cache located at {@code installationDir} without keeping it in memory, e.g. the cache of
+     * a candidate that is removed once it's applied. Each call reads the cache again.
+     *
+     * @param installationDir - root of the installation
+     * @return the loaded cache
+     * @throws IOException if the cache descriptor is corrupt and cannot be read
+     */
+    public static ArtifactCache load(Path installationDir) throws IOException {
+        return new ArtifactCache(installationDir);
+    }
+
+    public static void cleanInstancesCache() {
+        instances.clear();
+    }
+
+    /**
+     * drops the loaded instance for {@code installationDir}, e.g. after the cache was replaced. The next call to
+     * {@link #getInstance(Path)} loads the cache again.
+     *
+     * @param installationDir - root of the installation
+     */
+    public static void invalidateInstance(Path installationDir) {
+        instances.invalidate(installationDir);
+    }
+
+    /**
+     * replaces the cache of {@code installationDir} with the cache of {@code candidateDir}. Files with the same content
+     * in both caches are kept, new and changed files are linked or copied from the candidate, and files not present
+     * in the candidate are removed. The cache descriptor is replaced last and the cache index is copied from the
+     * candidate.
+     *
+     * @param candidateDir - installation containing the up-to-date cache
+     * @param installationDir - installation which cache should be updated
+     * @return files in the {@code installationDir} cache that were added or replaced
+     * @throws IOException - if unable to update the cache
+     */
+    public static List<Path> updateFromCandidate(Path candidateDir, Path installationDir) throws IOException {
+        return updateFromCandidate(candidateDir, installationDir, null);
+    }
+
+    /**
+     * replaces the cache of {@code installationDir} like {@link #updateFromCandidate(Path, Path)}. The added and replaced
+     * files are linked to the {@code sharedStore}, and the stored files linked by the replaced and removed files are
+     * released from the store.
+     *
+     * @param candidateDir - installation containing the up-to-date cache
+     * @param installationDir - installation which cache should be updated
+     * @param sharedStore - store of the shared artifacts or {@code null} if the artifacts are not shared
+     * @return files in the {@code installationDir} cache that were added or replaced
+     * @throws IOException - if unable to update the cache
+     */
+    public static List<Path> updateFromCandidate(Path candidateDir, Path installationDir, SharedArtifactStore sharedStore) throws IOException {
+        final Path candidateCache = candidateDir.resolve(CACHE_FOLDER);
+        final Path installationCache = installationDir.resolve(CACHE_FOLDER);
+
+        if (!Files.exists(candidateCache)) {
+            instances.invalidate(installationDir);
+            final List<Path> releasedObjects = findStoredObjects(sharedStore, installationCache, listCacheFiles(installationCache));
+            if (Files.exists(installationCache)) {
+                IoUtils.recursiveDelete(installationCache);
+            }
+            new ArtifactCacheIndex(installationDir).replaceWith(new ArtifactCacheIndex(candidateDir));
+            release(sharedStore, releasedObjects);
+            return Collections.emptyList();
+        }
+
+        final List<Path> candidateFiles = listCacheFiles(candidateCache);
+        final List<Path> installationFiles = listCacheFiles(installationCache);
+
+        // compare the files first, the recorded hashes can be used as long as the installation's cache is loaded
+        final ArtifactCache installation = loadQuietly(installationDir, true);
+        // the candidate is removed after it's applied, its cache is not kept in memory
+        final ArtifactCache candidate = loadQuietly(candidateDir, false);
+        final List<Path> changed = new ArrayList<>();
+        for (Path file : candidateFiles) {
+            final Path target = installationCache.resolve(file);
+            if (!Files.exists(target) || !hasSameContent(candidate, candidateCache.resolve(file), installation, target)) {
+                changed.add(file);
+            }
+        }
+        // the descriptor has to be replaced after all the files it lists
+        final Path descriptor = Path.of(CACHE_FILENAME);
+        if (changed.remove(descriptor)) {
+            changed.add(descriptor);
+        }
+
+        final List<Path> removed = installationFiles.stream()
+                .filter(file -> !candidateFiles.contains(file))
+                .collect(Collectors.toList());
+        // the stored files have to be found while the replaced files still link to them
+        final List<Path> replaced = new ArrayList<>(removed);
+        changed.stream().filter(installationFiles::contains).forEach(replaced::add);
+        final List<Path> releasedObjects = findStoredObjects(sharedStore, installationCache, replaced);
+
+        instances.invalidate(installationDir);
+
+        final List<Path> updated = new ArrayList<>();
+        for (Path file : changed) {
+            final Path target = installationCache.resolve(file);
+            if (LOG.isDebugEnabled()) {
+                LOG.debugf("Updating cached file %s.", target);
+            }
+            linkOrCopy(candidateCache.resolve(file), target);
+            updated.add(target);
+        }
+        for (Path file : removed) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debugf("Removing cached file %s.", installationCache.resolve(file));
+            }
+            Files.deleteIfExists(installationCache.resolve(file));
+        }
+
+        // the index is valid only if the descriptor was linked and has the same state as in the candidate
+        new ArtifactCacheIndex(installationDir).replaceWith(new ArtifactCacheIndex(candidateDir));
+
+        if (sharedStore != null) {
+            sharedStore.share(updated);
+            release(sharedStore, releasedObjects);
+        }
+        return updated;
+    }
+
+    private static List<Path> findStoredObjects(SharedArtifactStore sharedStore, Path cacheDir, List<Path> files) {
+        final List<Path> objects = new ArrayList<>();
+        if (sharedStore == null) {
+            return objects;
+        }
+        for (Path file : files) {
+            try {
+                sharedStore.findStoredObject(cacheDir.resolve(file)).ifPresent(objects::add);
+            } catch (IOException e) {
+                LOG.debug("Unable to find the stored copy of " + cacheDir.resolve(file), e);
             }
-            return instances.get(installationDir.toAbsolutePath());
         }
+        return objects;
     }
 
-    public static void cleanInstancesCache() {
-        synchronized (instances) {
-            instances.clear();
+    private static void release(SharedArtifactStore sharedStore, List<Path> objects) {
+        if (sharedStore == null) {
+            return;
+        }
+        try {
+            // the replaced files might have been the last reference to the stored files
+            sharedStore.release(objects);
+        } catch (IOException e) {
+            LOG.debug("Unable to remove unused artifacts from the shared store", e);
+        }
+    }
+
+    private static List<Path> listCacheFiles(Path cacheDir) throws IOException {
+        if (!Files.isDirectory(cacheDir)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            return files.filter(Files::isRegularFile)
+                    .map(cacheDir::relativize)
+                    .collect(Collectors.toList());
         }
     }
 
+    private static boolean hasSameContent(ArtifactCache candidate, Path candidateFile, ArtifactCache installation, Path installationFile) throws IOException {
+        if (Files.isSameFile(candidateFile, installationFile)) {
+            return true;
+        }
+        if (Files.size(candidateFile) != Files.size(installationFile)) {
+            return false;
+        }
+        return hashOf(candidate, candidateFile).equals(hashOf(installation, installationFile));
+    }
+
+    private static String hashOf(ArtifactCache cache, Path file) throws IOException {
+        if (cache != null) {
+            final Optional<String> recordedHash = cache.getVerifiedHash(file);
+            if (recordedHash.isPresent()) {
+                return recordedHash.get();
+            }
+        }
+        return FileDigests.of(file).getSha1();
+    }
+
+    /*
+     * loads the cache of {@code installationDir}, or returns {@code null} if it cannot be read. Only the caches of
+     * installations that outlive the operation should be {@code registered}, so that they are not loaded again.
+     */
+    private static ArtifactCache loadQuietly(Path installationDir, boolean registered) {
+        try {
+            return registered ? getInstance(installationDir) : new ArtifactCache(installationDir);
+        } catch (IOException e) {
+            LOG.debug("Unable to read the artifact cache of " + installationDir, e);
+            return null;
+        }
+    }
+
+    /**
+     * replaces artifacts provisioned in {@code candidateDir} with hardlinks to the same artifacts in
+     * {@code installationDir}. An artifact is linked only if it's recorded with the same hash and path in both caches and
+     * the installation file has not been modified since. Other artifacts, and artifacts that cannot be linked, are left as
+     * provisioned. Nothing is linked if the candidate is not on the same file store as the installation.
+     *
+     * The candidate files are replaced, never modified, when the candidate is applied, so the linked files are not
+     * changed in the installation.
+     *
+     * The cache of the candidate is not kept in memory, the verified states of the linked files are written to its
+     * journal before this method returns.
+     *
+     * @param installationDir - installation the candidate is prepared for
+     * @param candidateDir - provisioned candidate
+     * @return number of linked artifacts
+     * @throws IOException - if unable to read the caches or replace a candidate file
+     */
+    public static int linkUnchangedArtifacts(Path installationDir, Path candidateDir) throws IOException {
+        final ArtifactCache installation = getInstance(installationDir);
+        // the registered instance would be stale once the candidate is applied or discarded
+        final ArtifactCache candidate = new ArtifactCache(candidateDir);
+        try {
+            return linkUnchangedArtifacts(installation, candidate);
+        } finally {
+            candidate.awaitJournal();
+            // an instance registered while the candidate was provisioned doesn't know about the linked files
+            instances.invalidate(candidateDir);
+        }
+    }
+
+    private static int linkUnchangedArtifacts(ArtifactCache installation, ArtifactCache candidate) throws IOException {
+        final Path installationDir = installation.installationDir;
+        final Path candidateDir = candidate.installationDir;
+        if (!Files.getFileStore(installationDir).equals(Files.getFileStore(candidateDir))) {
+            LOG.debugf("Not linking artifacts from %s to %s, the candidate is on a different filesystem.", installationDir, candidateDir);
+            return 0;
+        }
+
+        int linked = 0;
+        int skipped = 0;
+        for (ArtifactCacheIndex.Entry entry : candidate.entries.values()) {
+            final ArtifactCacheIndex.Entry installed = installation.entries.get(entry.getKey());
+            if (installed == null || !installed.isSameRecord(entry)) {
+                continue;
+            }
+            final Path source = installationDir.resolve(installed.getPath());
+            final Path target = candidateDir.resolve(entry.getPath());
+            // the same file can be recorded for several GAVs
+            if (!Files.isRegularFile(target) || Files.isSameFile(source, target) || Files.size(source) != Files.size(target)) {
+                continue;
+            }
+            if (installation.getArtifact(installed).isEmpty()) {
+                continue;
+            }
+            if (!link(source, target)) {
+                // e.g. the link count limit was reached, the candidate keeps its own copy
+                skipped++;
+                continue;
+            }
+            linked++;
+
+            // the candidate file is now the verified installation file
+            final ArtifactCacheIndex.Stamp stamp = ArtifactCacheIndex.Stamp.of(target);
+            final ArtifactCacheIndex.Entry verified = installation.entries.get(entry.getKey());
+            if (isSettled(stamp) && verified != null && stamp.equals(verified.getStamp())) {
+                candidate.recordVerifiedStamp(entry, stamp);
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debugf("Linked %d unchanged artifacts from %s to %s, %d artifacts could not be linked.", linked, installationDir, candidateDir, skipped);
+        }
+        return linked;
+    }
+
+    private static boolean link(Path source, Path target) throws IOException {
+        final Path tempFile = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createLink(tempFile, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.debugf(e, "Unable to link %s.", source);
+            return false;
+        }
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return true;
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        final Path tempFile = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try {
+                Files.createLink(tempFile, source);
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.debugf(e, "Unable to link %s, copying it instead.", source);
+                Files.copy(source, tempFile, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the in-memory caches returned by {@link #getInstance(Path)}
+     */
+    public static RegistryStatistics getRegistryStatistics() {
+        return instances.getStatistics();
+    }
+
     private ArtifactCache(Path installationDir) throws IOException {
         this.installationDir = installationDir;
         this.cacheDir = installationDir.resolve(CACHE_FOLDER);
+        this.index = new ArtifactCacheIndex(installationDir);
+        this.sharedStore = SharedArtifactStore.fromSystemProperties().orElse(null);
+        this.journalWriter = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "artifact-cache-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.journalWriter.allowCoreThreadTimeOut(true);
 
         init();
     }
@@ -106,6 +456,9 @@ public class ArtifactCache {
      * finds a file associated with the {@code GAV} in the local {@code installationDir}. The file is only matched
      * if it's {@code GAV} is recorded in cache descriptor and the file has not been modified since the cache was created.
      *
+     * The content of the file is verified against the recorded hash, unless the file's size, modification time and
+     * file key are the same as when the file was last verified. See {@link #PARANOID_VERIFICATION_PROPERTY}.
+     *
      * @param groupId
      * @param artifactId
      * @param extension
@@ -115,23 +468,148 @@ public class ArtifactCache {
      */
     public Optional<File> getArtifact(String groupId, String artifactId, String extension, String classifier, String version) {
         final String key = asKey(groupId, artifactId, extension, classifier, version);
+        final ArtifactCacheIndex.Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        return getArtifact(entry);
+    }
+
+    private Optional<File> getArtifact(ArtifactCacheIndex.Entry entry) {
+        final String key = entry.getKey();
+        final Path path = installationDir.resolve(entry.getPath());
         try {
-            lock.readLock().lock();
-            if (paths.containsKey(key)) {
-                final Path path = paths.get(key);
-                try {
-                    final String hash = HashUtils.hashFile(path);
-                    if (!hash.equals(hashes.get(key))) {
-                        LOG.debug("Hashes don't match for " + key);
-                        return Optional.empty();
-                    }
-                    return Optional.of(path.toFile());
-                } catch (IOException e) {
-                    LOG.debug("Unable to calculate cached artifact hash " + key, e);
-                    return Optional.empty();
-                }
+            final ArtifactCacheIndex.Stamp stamp = ArtifactCacheIndex.Stamp.of(path);
+            if (!Boolean.getBoolean(PARANOID_VERIFICATION_PROPERTY) && !ArtifactCacheIndex.Stamp.MISSING.equals(stamp)
+                    && stamp.equals(entry.getStamp())) {
+                return Optional.of(path.toFile());
+            }
+
+            final FileDigests digests = FileDigests.of(path);
+            if (!digests.getSha1().equals(entry.getHash())) {
+                LOG.debug("Hashes don't match for " + key);
+                return Optional.empty();
+            }
+
+            // only remember the state if the file can't be changed again without changing the stamp
+            if (isSettled(stamp) && stamp.equals(ArtifactCacheIndex.Stamp.of(path))) {
+                recordVerifiedStamp(entry, stamp);
             }
+            return Optional.of(path.toFile());
+        } catch (IOException e) {
+            LOG.debug("Unable to calculate cached artifact hash " + key, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * lists the artifacts recorded with given {@code groupId}, {@code artifactId}, {@code classifier} and
+     * {@code version}, regardless of their extension. Unlike {@link #getArtifact(String, String, String, String, String)},
+     * the files are not verified.
+     *
+     * @param groupId
+     * @param artifactId
+     * @param classifier - classifier of the artifacts or {@code null} to list artifacts without classifier
+     * @param version
+     * @return the recorded artifacts, with their existing files in the {@code installationDir}
+     */
+    public List<MavenArtifact> findRecordedArtifacts(String groupId, String artifactId, String classifier, String version) {
+        // keys are <groupId>:<artifactId>:<extension>[:<classifier>]:<version>
+        final String prefix = groupId + ":" + artifactId + ":";
+        final String suffix = (classifier == null || classifier.isEmpty() ? "" : ":" + classifier) + ":" + version;
+        final List<MavenArtifact> artifacts = new ArrayList<>();
+        for (ArtifactCacheIndex.Entry entry : entries.subMap(prefix, prefix.substring(0, prefix.length() - 1) + ';').values()) {
+            final String key = entry.getKey();
+            if (key.length() <= prefix.length() + suffix.length() || !key.endsWith(suffix)) {
+                continue;
+            }
+            // the remaining segment has to be just the extension
+            final String extension = key.substring(prefix.length(), key.length() - suffix.length());
+            if (extension.indexOf(':') >= 0) {
+                continue;
+            }
+            final Path file = installationDir.resolve(entry.getPath());
+            if (Files.isRegularFile(file) && artifacts.stream().noneMatch(a -> a.getFile().toPath().equals(file))) {
+                artifacts.add(new MavenArtifact(groupId, artifactId, extension, classifier, version, file.toFile()));
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * returns the SHA-1 hash of a cached {@code file} without reading it, if the file has not been changed since it
+     * was recorded or verified. See {@link #PARANOID_VERIFICATION_PROPERTY}.
+     *
+     * @param file - a file in the {@code installationDir}
+     * @return hex-encoded SHA-1 hash of the file, or empty {@code Optional} if the file has to be hashed by the caller
+     */
+    public Optional<String> getVerifiedHash(Path file) {
+        if (Boolean.getBoolean(PARANOID_VERIFICATION_PROPERTY)) {
+            return Optional.empty();
+        }
+        final Path relative = installationDir.toAbsolutePath().normalize().relativize(file.toAbsolutePath().normalize());
+        if (relative.startsWith("..")) {
+            return Optional.empty();
+        }
+
+        final String recordedPath = relative.toString().replace(File.separatorChar, '/');
+        final Set<String> keys = keysByPath.get(recordedPath);
+        if (keys == null) {
             return Optional.empty();
+        }
+
+        final ArtifactCacheIndex.Stamp stamp;
+        try {
+            stamp = ArtifactCacheIndex.Stamp.of(file);
+        } catch (IOException e) {
+            LOG.debug("Unable to read the state of cached file " + file, e);
+            return Optional.empty();
+        }
+        if (ArtifactCacheIndex.Stamp.MISSING.equals(stamp)) {
+            return Optional.empty();
+        }
+        for (String key : keys) {
+            final ArtifactCacheIndex.Entry entry = entries.get(key);
+            // the key might have been re-recorded with another path concurrently
+            if (entry != null && entry.getPath().equals(recordedPath) && stamp.equals(entry.getStamp())) {
+                return Optional.of(entry.getHash());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void putEntry(ArtifactCacheIndex.Entry entry) {
+        final ArtifactCacheIndex.Entry previous = entries.put(entry.getKey(), entry);
+        if (previous != null && !previous.getPath().equals(entry.getPath())) {
+            keysByPath.computeIfPresent(previous.getPath(), (path, keys) -> {
+                keys.remove(entry.getKey());
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+        indexPath(entry);
+    }
+
+    private void indexPath(ArtifactCacheIndex.Entry entry) {
+        keysByPath.compute(entry.getPath(), (path, keys) -> {
+            final Set<String> pathKeys = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            pathKeys.add(entry.getKey());
+            return pathKeys;
+        });
+    }
+
+    private static boolean isSettled(ArtifactCacheIndex.Stamp stamp) {
+        return stamp.isSettled(FileTimestamps.settledBefore());
+    }
+
+    private void recordVerifiedStamp(ArtifactCacheIndex.Entry entry, ArtifactCacheIndex.Stamp stamp) {
+        try {
+            lock.readLock().lock();
+            // the entry might have been replaced while the file was verified
+            if (entries.replace(entry.getKey(), entry, entry.verified(stamp))) {
+                scheduleJournal(entry.getKey());
+            }
         } finally {
             lock.readLock().unlock();
         }
@@ -145,39 +623,134 @@ public class ArtifactCache {
      * @throws IOException
      */
     public void record(MavenArtifact artifact, Path pathToArtifact) throws IOException {
+        record(artifact, pathToArtifact, FileDigests.of(artifact.getFile().toPath()), ArtifactCacheIndex.Stamp.MISSING);
+    }
+
+    /*
+     * records the artifact with already computed digests. If the {@code stamp} is known, the recorded file doesn't
+     * need to be verified until it's changed.
+     */
+    private void record(MavenArtifact artifact, Path pathToArtifact, FileDigests digests, ArtifactCacheIndex.Stamp stamp) throws IOException {
+        final String key = asKey(artifact.getGroupId(), artifact.getArtifactId(), artifact.getExtension(), artifact.getClassifier(), artifact.getVersion());
+        final String recordedPath = installationDir.relativize(pathToArtifact).toString().replace(File.separatorChar, '/');
+
+        reloadIfModified();
+
+        try {
+            lock.readLock().lock();
+            putEntry(new ArtifactCacheIndex.Entry(key, digests.getSha1(), recordedPath, stamp));
+            dirty = true;
+            scheduleJournal(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * makes sure the latest version of the cache list is used if it was modified outside of this cache
+     */
+    private void reloadIfModified() throws IOException {
+        final Path cacheList = cacheDir.resolve(CACHE_FILENAME);
+        if (descriptorStamp.equals(ArtifactCacheIndex.Stamp.of(cacheList))) {
+            return;
+        }
+
         try {
             lock.writeLock().lock();
+            if (!descriptorStamp.equals(ArtifactCacheIndex.Stamp.of(cacheList))) {
+                awaitJournal();
+                dirty = !entries.isEmpty();
+                init();
+                flush();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-            final Path cacheList = cacheDir.resolve(CACHE_FILENAME);
+    /*
+     * queues the current entry of the {@code key} to be appended to the journal. Each queued write persists all keys
+     * queued so far, so that the journal is written in batches.
+     */
+    private void scheduleJournal(String key) {
+        pendingJournal.add(key);
+        journalWriter.execute(this::writeJournal);
+    }
 
-            final String hash = HashUtils.hashFile(artifact.getFile().toPath());
+    private void writeJournal() {
+        final List<ArtifactCacheIndex.Entry> batch = new ArrayList<>();
+        String key;
+        while ((key = pendingJournal.poll()) != null) {
+            final ArtifactCacheIndex.Entry entry = entries.get(key);
+            if (entry != null) {
+                batch.add(entry);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
 
-            // make sure the latest version of the cache list is read
-            init();
+        try {
+            index.append(descriptorStamp, batch);
+        } catch (IOException e) {
+            LOG.debug("Unable to write the artifact cache journal", e);
+        }
+    }
 
-            // add the file to the paths/hashes
-            paths.put(
-                    asKey(artifact.getGroupId(), artifact.getArtifactId(), artifact.getExtension(), artifact.getClassifier(), artifact.getVersion()),
-                    pathToArtifact
-            );
-            hashes.put(
-                    asKey(artifact.getGroupId(), artifact.getArtifactId(), artifact.getExtension(), artifact.getClassifier(), artifact.getVersion()),
-                    hash
-            );
+    /*
+     * waits until all queued journal writes are completed
+     */
+    void awaitJournal() {
+        try {
+            journalWriter.submit(this::writeJournal).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.debug("Unable to write the artifact cache journal", e);
+        }
+    }
 
-            if (Files.exists(cacheList)) {
-                Files.delete(cacheList);
+    /**
+     * writes all recorded artifacts into the cache descriptor {@code CACHE_FOLDER}/{@code CACHE_FILENAME} and compacts
+     * the cache index. Needs to be called after the artifacts are recorded, before the cache folder is used by other
+     * tools.
+     *
+     * @throws IOException if unable to write the cache descriptor
+     */
+    public void flush() throws IOException {
+        try {
+            lock.writeLock().lock();
+            // all the entries are written below, no need to journal them anymore
+            pendingJournal.clear();
+            awaitJournal();
+
+            if (!dirty) {
+                // only the verified file states changed, the descriptor is up-to-date
+                if (index.hasJournal()) {
+                    index.write(descriptorStamp, entries.values());
+                }
+                return;
             }
 
-            // write all the paths/hashes to make sure they are in alphabetic order
-            try (BufferedWriter writer = Files.newBufferedWriter(cacheList, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW)) {
-                for (String key: paths.keySet()) {
-                    final Path relativePath = installationDir.relativize(paths.get(key));
-                    final String recordedPath = relativePath.toString().replace(File.separatorChar, '/');
-                    String cacheLine = key + CACHE_LINE_SEPARATOR + hashes.get(key) + CACHE_LINE_SEPARATOR + recordedPath + "\n";
-                    writer.write(cacheLine);
+            final Path cacheList = cacheDir.resolve(CACHE_FILENAME);
+            Files.createDirectories(cacheDir);
+            final Path tempList = Files.createTempFile(cacheDir, CACHE_FILENAME, ".tmp");
+            try {
+                // write all the paths/hashes to make sure they are in alphabetic order
+                try (BufferedWriter writer = Files.newBufferedWriter(tempList, StandardCharsets.UTF_8)) {
+                    for (ArtifactCacheIndex.Entry entry : entries.values()) {
+                        String cacheLine = entry.getKey() + CACHE_LINE_SEPARATOR + entry.getHash() + CACHE_LINE_SEPARATOR + entry.getPath() + "\n";
+                        writer.write(cacheLine);
+                    }
                 }
+                Files.move(tempList, cacheList, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempList);
             }
+
+            descriptorStamp = ArtifactCacheIndex.Stamp.of(cacheList);
+            index.write(descriptorStamp, entries.values());
+            dirty = false;
         } finally {
             lock.writeLock().unlock();
         }
@@ -185,14 +758,28 @@ public class ArtifactCache {
 
     /**
      * caches the artifact in {@code CACHE_FOLDER}. The cached artifact is then recorded in the cache list.
+     * If a {@link SharedArtifactStore} is configured, the cached file is linked to the stored copy of the artifact.
      *
      * @param artifact
      * @throws IOException
      */
     public void cache(MavenArtifact artifact) throws IOException {
-        IoUtils.copy(artifact.getFile().toPath(), cacheDir.resolve(artifact.getFile().getName()), false);
+        final Path source = artifact.getFile().toPath();
+        final Path target = cacheDir.resolve(artifact.getFile().getName());
+        // digest the artifact while it's being copied, so that the cached file doesn't have to be read again
+        final FileDigests digests;
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            digests = FileDigests.of(source);
+        } else if (sharedStore != null) {
+            digests = FileDigests.of(source, true);
+            sharedStore.link(source, target, digests.getSha256());
+        } else {
+            digests = FileDigests.copy(source, target, false);
+        }
 
-        record(artifact, cacheDir.resolve(artifact.getFile().getName()));
+        // the copy keeps the modification time of the source, so its state can be trusted unless it was just modified
+        final ArtifactCacheIndex.Stamp stamp = ArtifactCacheIndex.Stamp.of(target);
+        record(artifact, target, digests, isSettled(stamp) ? stamp : ArtifactCacheIndex.Stamp.MISSING);
     }
 
     /**
@@ -221,6 +808,7 @@ public class ArtifactCache {
                 }
             }
         }
+        flush();
     }
 
     private MavenArtifact mapToFile(ManifestVersionRecord manifestRecord, LocalRepositoryManager localRepositoryManager,
@@ -238,27 +826,48 @@ public class ArtifactCache {
 
     private void init() throws IOException {
         Path artifactLog = cacheDir.resolve(CACHE_FILENAME);
+        descriptorStamp = ArtifactCacheIndex.Stamp.of(artifactLog);
+
+        final boolean indexed = index.readSnapshot(descriptorStamp, entries);
+        if (!indexed && Files.exists(artifactLog)) {
+            readDescriptor(artifactLog);
+        }
 
-        if (Files.exists(artifactLog)) {
-            int row = 0;
-            final List<String> lines = Files.readAllLines(artifactLog);
+        final boolean replayed = index.replayJournal(descriptorStamp, entries);
+        if (replayed) {
+            // artifacts recorded by a process that didn't flush the cache
+            dirty = true;
+        } else if (!indexed && Files.exists(artifactLog)) {
             try {
-                for ( ; row < lines.size(); row++) {
-                    final String[] splitLine = lines.get(row).split(CACHE_LINE_SEPARATOR);
-                    if (splitLine.length < 3) {
-                        throw new IOException("Not enough segments, expected format is <GAV>::<hash>::<path>");
-                    }
-                    String gav = splitLine[0];
-                    String hash = splitLine[1];
-                    Path path = Paths.get(splitLine[2]);
-                    final org.jboss.galleon.universe.maven.MavenArtifact mavenArtifact = org.jboss.galleon.universe.maven.MavenArtifact.fromString(gav);
-                    final String key = asKey(mavenArtifact.getGroupId(), mavenArtifact.getArtifactId(), mavenArtifact.getExtension(), mavenArtifact.getClassifier(), mavenArtifact.getVersion());
-                    paths.put(key, installationDir.resolve(path));
-                    hashes.put(key, hash);
+                index.write(descriptorStamp, entries.values());
+            } catch (IOException e) {
+                LOG.debug("Unable to write the artifact cache index", e);
+            }
+        }
+
+        // the entries were loaded in bulk
+        keysByPath.clear();
+        entries.values().forEach(this::indexPath);
+    }
+
+    private void readDescriptor(Path artifactLog) throws IOException {
+        int row = 0;
+        final List<String> lines = Files.readAllLines(artifactLog);
+        try {
+            for ( ; row < lines.size(); row++) {
+                final String[] splitLine = lines.get(row).split(CACHE_LINE_SEPARATOR);
+                if (splitLine.length < 3) {
+                    throw new IOException("Not enough segments, expected format is <GAV>::<hash>::<path>");
                 }
-            } catch (MavenUniverseException | IOException e) {
-                throw ProsperoLogger.ROOT_LOGGER.unableToReadArtifactCache(row + 1, lines.get(row), e);
+                String gav = splitLine[0];
+                String hash = splitLine[1];
+                String path = splitLine[2];
+                final org.jboss.galleon.universe.maven.MavenArtifact mavenArtifact = org.jboss.galleon.universe.maven.MavenArtifact.fromString(gav);
+                final String key = asKey(mavenArtifact.getGroupId(), mavenArtifact.getArtifactId(), mavenArtifact.getExtension(), mavenArtifact.getClassifier(), mavenArtifact.getVersion());
+                entries.put(key, new ArtifactCacheIndex.Entry(key, hash, path));
             }
+        } catch (MavenUniverseException | IOException e) {
+            throw ProsperoLogger.ROOT_LOGGER.unableToReadArtifactCache(row + 1, lines.get(row), e);
         }
     }
 
@@ -276,4 +885,59 @@ public class ArtifactCache {
         }
         return buf.append(':').append(version).toString();
     }
+
+    /**
+     * Usage counters of the in-memory caches returned by {@link #getInstance(Path)}.
+     */
+    public static class RegistryStatistics {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        RegistryStatistics(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        /**
+         * @return number of requests served by an already loaded cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return number of requests that had to load the cache
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return number of caches released from memory because they were idle or the limit was reached
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return number of caches currently held in memory
+         */
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "RegistryStatistics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    '}';
+        }
+    }
 }
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.logging.Logger;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary persistence of the {@link ArtifactCache} entries.
+ *
+ * The index consists of a sorted snapshot ({@code INDEX_FILENAME}) and an append-only journal ({@code JOURNAL_FILENAME})
+ * of entries recorded since the snapshot was written. Recording an artifact only appends to the journal, the journal
+ * is folded into the snapshot when the cache is flushed. Entries are loaded into memory once, when the cache is created.
+ *
+ * The {@code artifacts.txt} descriptor is still the source of truth shared with the Galleon plugin. Both index files
+ * carry a {@link Stamp} of the descriptor they were built from and are discarded if the descriptor has been changed
+ * by anything else than the {@code ArtifactCache}.
+ *
+ * The index is kept outside of {@link ArtifactCache#CACHE_FOLDER} so that it's not recorded in Galleon hashes.
+ */
+class ArtifactCacheIndex {
+
+    private static final Logger LOG = Logger.getLogger(ArtifactCacheIndex.class);
+
+    static final Path INDEX_FOLDER = Path.of(ProsperoMetadataUtils.METADATA_DIR, ".cache-index");
+    static final String INDEX_FILENAME = "artifacts.idx";
+    static final String JOURNAL_FILENAME = "artifacts.journal";
+
+    private static final int MAGIC = 0x50525358;
+    private static final int FORMAT_VERSION = 4;
+
+    private final Path indexFile;
+    private final Path journalFile;
+
+    ArtifactCacheIndex(Path installationDir) {
+        final Path indexDir = installationDir.resolve(INDEX_FOLDER);
+        this.indexFile = indexDir.resolve(INDEX_FILENAME);
+        this.journalFile = indexDir.resolve(JOURNAL_FILENAME);
+    }
+
+    /**
+     * reads the snapshot into {@code entries}.
+     *
+     * @param descriptorStamp - current stamp of the {@code artifacts.txt} descriptor
+     * @param entries - map to populate with the indexed entries
+     * @return {@code true} if the snapshot was up-to-date with the descriptor, {@code false} if it has to be rebuilt
+     */
+    boolean readSnapshot(Stamp descriptorStamp, Map<String, Entry> entries) {
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+
+        final Map<String, Entry> snapshot = new HashMap<>();
+        try (DataInputStream in = open(indexFile)) {
+            if (!descriptorStamp.equals(readHeader(in))) {
+                LOG.debug("The artifact cache descriptor has changed since the index was written.");
+                return false;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final Entry entry = readEntry(in);
+                snapshot.put(entry.getKey(), entry);
+            }
+        } catch (IOException e) {
+            LOG.debug("Unable to read the artifact cache index, it will be rebuilt.", e);
+            return false;
+        }
+
+        entries.putAll(snapshot);
+        return true;
+    }
+
+    /**
+     * applies entries recorded in the journal on top of {@code entries}. A journal recorded for a different version
+     * of the descriptor is discarded.
+     *
+     * @param descriptorStamp - current stamp of the {@code artifacts.txt} descriptor
+     * @param entries - map to apply the journal to
+     * @return {@code true} if any of the replayed entries changes the content of the descriptor
+     */
+    boolean replayJournal(Stamp descriptorStamp, Map<String, Entry> entries) {
+        if (!Files.exists(journalFile)) {
+            return false;
+        }
+
+        boolean changed = false;
+        boolean stale = false;
+        try (DataInputStream in = open(journalFile)) {
+            if (!descriptorStamp.equals(readHeader(in))) {
+                LOG.debug("Discarding artifact cache journal recorded for a different descriptor.");
+                stale = true;
+            } else {
+                while (true) {
+                    final Entry entry = readEntry(in);
+                    final Entry previous = entries.put(entry.getKey(), entry);
+                    changed |= previous == null || !previous.isSameRecord(entry);
+                }
+            }
+        } catch (EOFException e) {
+            // end of the journal, or an incomplete trailing record written by an interrupted process
+        } catch (IOException e) {
+            LOG.debug("Unable to replay the artifact cache journal.", e);
+        }
+
+        if (stale) {
+            discardJournal();
+        }
+        return changed;
+    }
+
+    /**
+     * @return {@code true} if there are recorded entries not yet folded into the snapshot
+     */
+    boolean hasJournal() {
+        return Files.exists(journalFile);
+    }
+
+    /**
+     * appends entries to the journal. The journal is created if needed.
+     *
+     * @param descriptorStamp - stamp of the {@code artifacts.txt} the recorded entries are based on
+     * @param recorded - recorded entries
+     * @throws IOException - if unable to write the journal
+     */
+    void append(Stamp descriptorStamp, Collection<Entry> recorded) throws IOException {
+        final boolean newJournal = !Files.exists(journalFile);
+        if (newJournal) {
+            Files.createDirectories(journalFile.getParent());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (newJournal) {
+                writeHeader(out, descriptorStamp);
+            }
+            for (Entry entry : recorded) {
+                writeEntry(out, entry);
+            }
+        }
+    }
+
+    /**
+     * writes a new snapshot containing {@code entries} and removes the journal.
+     *
+     * @param descriptorStamp - stamp of the {@code artifacts.txt} matching the {@code entries}
+     * @param entries - all the entries of the cache, in alphabetic order
+     * @throws IOException - if unable to write the snapshot
+     */
+    void write(Stamp descriptorStamp, Collection<Entry> entries) throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        final Path tempFile = Files.createTempFile(indexFile.getParent(), INDEX_FILENAME, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                writeHeader(out, descriptorStamp);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    writeEntry(out, entry);
+                }
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        discardJournal();
+    }
+
+    /**
+     * replaces this index with a copy of the {@code source} index. If the {@code source} index is missing, this index is
+     * removed and will be rebuilt from the descriptor.
+     *
+     * @param source - index to copy
+     * @throws IOException - if unable to copy the index
+     */
+    void replaceWith(ArtifactCacheIndex source) throws IOException {
+        discardJournal();
+        if (!Files.exists(source.indexFile)) {
+            Files.deleteIfExists(indexFile);
+            return;
+        }
+
+        Files.createDirectories(indexFile.getParent());
+        copyAtomically(source.indexFile, indexFile);
+        if (Files.exists(source.journalFile)) {
+            copyAtomically(source.journalFile, journalFile);
+        }
+    }
+
+    private static void copyAtomically(Path source, Path target) throws IOException {
+        final Path tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void discardJournal() {
+        try {
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            LOG.debug("Unable to remove the artifact cache journal " + journalFile, e);
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+    }
+
+    private static void writeHeader(DataOutputStream out, Stamp stamp) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeStamp(out, stamp);
+    }
+
+    private static Stamp readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unrecognized artifact cache index format");
+        }
+        return readStamp(in);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getHash());
+        out.writeUTF(entry.getPath());
+        writeStamp(out, entry.getStamp());
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        return new Entry(in.readUTF(), in.readUTF(), in.readUTF(), readStamp(in));
+    }
+
+    private static void writeStamp(DataOutputStream out, Stamp stamp) throws IOException {
+        out.writeLong(stamp.size);
+        out.writeLong(stamp.lastModified);
+        out.writeUTF(stamp.fileKey);
+    }
+
+    private static Stamp readStamp(DataInputStream in) throws IOException {
+        return new Stamp(in.readLong(), in.readLong(), in.readUTF());
+    }
+
+    /**
+     * A cached artifact. The {@code path} is relative to the installation directory and uses {@code '/'} as separator.
+     * The {@code hash} is the SHA-1 hash recorded in the descriptor.
+     * The {@code stamp} is the state of the file when its content was last verified against the {@code hash}, or
+     * {@link Stamp#MISSING} if it was never verified.
+     */
+    static class Entry {
+        private final String key;
+        private final String hash;
+        private final String path;
+        private final Stamp stamp;
+
+        Entry(String key, String hash, String path) {
+            this(key, hash, path, Stamp.MISSING);
+        }
+
+        Entry(String key, String hash, String path, Stamp stamp) {
+            this.key = key;
+            this.hash = hash;
+            this.path = path;
+            this.stamp = stamp;
+        }
+
+        Entry verified(Stamp stamp) {
+            return new Entry(key, hash, path, stamp);
+        }
+
+        /**
+         * @return {@code true} if both entries produce the same line in the descriptor
+         */
+        boolean isSameRecord(Entry other) {
+            return key.equals(other.key) && hash.equals(other.hash) && path.equals(other.path);
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        String getHash() {
+            return hash;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        Stamp getStamp() {
+            return stamp;
+        }
+    }
+
+    /**
+     * Identifies a version of a file without reading it, using its size, modification time and file key (inode).
+     */
+    static class Stamp {
+        static final Stamp MISSING = new Stamp(-1, -1, "");
+
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+
+        Stamp(long size, long lastModified, String fileKey) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        /**
+         * @param settledBefore - time in milliseconds since epoch, see {@link FileTimestamps#settledBefore()}
+         * @return {@code true} if the file was not modified recently. A file modified within the timestamp granularity
+         * of the filesystem could be changed again without changing the stamp.
+         */
+        boolean isSettled(long settledBefore) {
+            return !MISSING.equals(this) && lastModified < TimeUnit.MILLISECONDS.toNanos(settledBefore);
+        }
+
+        static Stamp of(Path file) throws IOException {
+            try {
+                final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                final Object fileKey = attrs.fileKey();
+                return new Stamp(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), fileKey == null ? "" : fileKey.toString());
+            } catch (NoSuchFileException e) {
+                return MISSING;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Stamp stamp = (Stamp) o;
+            return size == stamp.size && lastModified == stamp.lastModified && Objects.equals(fileKey, stamp.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, fileKey);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps loaded {@link ArtifactCache} instances, so that the cache of an installation is not re-loaded for every
+ * operation.
+ *
+ * The registry holds at most {@code maxSize} instances. The least recently requested instance is evicted when the limit
+ * is exceeded, and instances that were not requested for {@code idleTimeout} milliseconds are evicted on the next request.
+ *
+ * An evicted instance is only weakly referenced. If it's still used, e.g. by an operation in progress, the same
+ * instance is returned when it's requested again, so that two instances never write the journal of one installation.
+ * A new instance is loaded only after the evicted one was released, by then all its journal writes are completed.
+ *
+ * Instances are loaded outside of the registry lock. Concurrent requests for an installation that is being loaded
+ * wait for the same instance.
+ */
+class ArtifactCacheRegistry {
+
+    private static final Logger LOG = Logger.getLogger(ArtifactCacheRegistry.class);
+
+    interface Loader {
+        ArtifactCache load(Path installationDir) throws IOException;
+    }
+
+    private final int maxSize;
+    private final long idleTimeout;
+    private final LongSupplier clock;
+    private final Function<ArtifactCache, Reference<ArtifactCache>> referenceFactory;
+
+    // access-ordered, the eldest entry is the least recently requested one
+    private final LinkedHashMap<Path, Registration> instances = new LinkedHashMap<>(16, 0.75f, true);
+    // evicted instances that might still be in use
+    private final Map<Path, Reference<ArtifactCache>> evictedInstances = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ArtifactCacheRegistry(int maxSize, long idleTimeout, LongSupplier clock) {
+        this(maxSize, idleTimeout, clock, WeakReference::new);
+    }
+
+    ArtifactCacheRegistry(int maxSize, long idleTimeout, LongSupplier clock,
+                          Function<ArtifactCache, Reference<ArtifactCache>> referenceFactory) {
+        this.maxSize = Math.max(1, maxSize);
+        this.idleTimeout = idleTimeout;
+        this.clock = clock;
+        this.referenceFactory = referenceFactory;
+    }
+
+    ArtifactCache get(Path installationDir, Loader loader) throws IOException {
+        final Path key = installationDir.toAbsolutePath();
+        final List<ArtifactCache> evicted = new ArrayList<>();
+        final Registration registration;
+        boolean load = false;
+        synchronized (instances) {
+            final long now = clock.getAsLong();
+            evictIdle(now, evicted);
+
+            final Registration existing = instances.get(key);
+            if (existing != null) {
+                hits.incrementAndGet();
+                existing.lastAccess = now;
+                registration = existing;
+            } else {
+                registration = new Registration(now);
+                final Reference<ArtifactCache> reference = evictedInstances.remove(key);
+                final ArtifactCache inUse = reference == null ? null : reference.get();
+                if (inUse != null) {
+                    hits.incrementAndGet();
+                    registration.cache.complete(inUse);
+                } else {
+                    misses.incrementAndGet();
+                    load = true;
+                }
+                instances.put(key, registration);
+                evictOverflow(evicted);
+            }
+        }
+
+        // persist the recorded artifacts of the evicted instances in case they are not used anymore
+        evicted.forEach(ArtifactCache::awaitJournal);
+
+        if (load) {
+            try {
+                registration.cache.complete(loader.load(installationDir));
+            } catch (IOException | RuntimeException e) {
+                synchronized (instances) {
+                    instances.remove(key, registration);
+                }
+                registration.cache.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return await(registration);
+    }
+
+    void invalidate(Path installationDir) {
+        final Registration removed;
+        synchronized (instances) {
+            removed = instances.remove(installationDir.toAbsolutePath());
+            evictedInstances.remove(installationDir.toAbsolutePath());
+        }
+        if (removed != null) {
+            removed.ifLoaded(ArtifactCache::awaitJournal);
+        }
+    }
+
+    void clear() {
+        final List<Registration> removed;
+        synchronized (instances) {
+            removed = new ArrayList<>(instances.values());
+            instances.clear();
+            evictedInstances.clear();
+        }
+        removed.forEach(r -> r.ifLoaded(ArtifactCache::awaitJournal));
+    }
+
+    ArtifactCache.RegistryStatistics getStatistics() {
+        final int size;
+        synchronized (instances) {
+            size = instances.size();
+        }
+        return new ArtifactCache.RegistryStatistics(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    private static ArtifactCache await(Registration registration) throws IOException {
+        try {
+            return registration.cache.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void evictIdle(long now, List<ArtifactCache> evicted) {
+        final Iterator<Map.Entry<Path, Registration>> iterator = instances.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Path, Registration> entry = iterator.next();
+            if (now - entry.getValue().lastAccess < idleTimeout) {
+                // the remaining entries were requested more recently
+                return;
+            }
+            evict(iterator, entry, evicted);
+        }
+    }
+
+    private void evictOverflow(List<ArtifactCache> evicted) {
+        final Iterator<Map.Entry<Path, Registration>> iterator = instances.entrySet().iterator();
+        while (instances.size() > maxSize && iterator.hasNext()) {
+            evict(iterator, iterator.next(), evicted);
+        }
+    }
+
+    private void evict(Iterator<Map.Entry<Path, Registration>> iterator, Map.Entry<Path, Registration> entry,
+                       List<ArtifactCache> evicted) {
+        final CompletableFuture<ArtifactCache> cache = entry.getValue().cache;
+        if (!cache.isDone()) {
+            // still being loaded by another request
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debugf("Evicting artifact cache of %s.", entry.getKey());
+        }
+        iterator.remove();
+        evictions.incrementAndGet();
+        if (!cache.isCompletedExceptionally()) {
+            evicted.add(cache.join());
+            evictedInstances.values().removeIf(r -> r.get() == null);
+            evictedInstances.put(entry.getKey(), referenceFactory.apply(cache.join()));
+        }
+    }
+
+    private static class Registration {
+        private final CompletableFuture<ArtifactCache> cache = new CompletableFuture<>();
+        private long lastAccess;
+
+        Registration(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+
+        void ifLoaded(Consumer<ArtifactCache> action) {
+            if (cache.isDone() && !cache.isCompletedExceptionally()) {
+                action.accept(cache.join());
+            }
+        }
+    }
+}
@@ -19,9 +19,11 @@ package org.wildfly.prospero.galleon;
 
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.installation.InstallRequest;
 import org.eclipse.aether.installation.InstallationException;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.jboss.logging.Logger;
 import org.wildfly.channel.ArtifactCoordinate;
 import org.wildfly.channel.ArtifactTransferException;
@@ -31,13 +33,25 @@ import org.wildfly.channel.UnresolvedMavenArtifactException;
 import org.wildfly.channel.spi.MavenVersionsResolver;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -48,7 +62,25 @@ import java.util.stream.Collectors;
  * Installs locally resolved artifacts in LRM to allow galleon to start thin servers.
  */
 public class CachedVersionResolver implements MavenVersionsResolver {
+    /**
+     * Maximum number of threads used to verify and install cached artifacts in {@link #resolveArtifacts(List)}.
+     * Defaults to the number of available processors.
+     */
+    public static final String CACHE_RESOLUTION_PARALLELISM_PROPERTY = "prospero.cache.resolve-threads";
+    /**
+     * If set to {@code true}, cached artifacts are hardlinked into the local Maven repository instead of being copied.
+     * Falls back to a copy if the link cannot be created, e.g. if the repository is on a different filesystem.
+     */
+    public static final String LINK_CACHED_ARTIFACTS_PROPERTY = "prospero.cache.link-artifacts";
+    /**
+     * Number of seconds a manifest that could not be resolved from the remote repositories is taken from the cache
+     * without another remote attempt. Defaults to 300 seconds, {@code 0} disables the negative caching.
+     */
+    public static final String UNRESOLVED_METADATA_TTL_PROPERTY = "prospero.cache.unresolved-metadata-ttl";
     private static final Logger LOG = Logger.getLogger(CachedVersionResolver.class.getName());
+    // the lookups of all resolvers share one pool for each level of parallelism,
+    // the worker threads are daemons and are released when idle
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
     private final MavenVersionsResolver fallbackResolver;
     private final RepositorySystem system;
     private final RepositorySystemSession session;
@@ -56,15 +88,26 @@ public class CachedVersionResolver implements MavenVersionsResolver {
 
     private final Logger log = Logger.getLogger(CachedVersionResolver.class);
     private final Function<ArtifactCoordinate, String> manifestVersionProvider;
+    private final boolean linkCachedArtifacts;
+    private final UnresolvedMetadataCache unresolvedMetadata;
 
     public CachedVersionResolver(MavenVersionsResolver fallbackResolver, ArtifactCache cache, RepositorySystem system,
                                  RepositorySystemSession session,
                                  Function<ArtifactCoordinate, String> manifestVersionProvider) {
+        this(fallbackResolver, cache, system, session, manifestVersionProvider, new UnresolvedMetadataCache());
+    }
+
+    CachedVersionResolver(MavenVersionsResolver fallbackResolver, ArtifactCache cache, RepositorySystem system,
+                          RepositorySystemSession session,
+                          Function<ArtifactCoordinate, String> manifestVersionProvider,
+                          UnresolvedMetadataCache unresolvedMetadata) {
         this.fallbackResolver = fallbackResolver;
         this.system = system;
         this.session = session;
         this.artifactCache = cache;
         this.manifestVersionProvider = manifestVersionProvider;
+        this.linkCachedArtifacts = Boolean.getBoolean(LINK_CACHED_ARTIFACTS_PROPERTY);
+        this.unresolvedMetadata = unresolvedMetadata;
     }
 
     @Override
@@ -108,26 +151,20 @@ public class CachedVersionResolver implements MavenVersionsResolver {
 
     @Override
     public List<File> resolveArtifacts(List<ArtifactCoordinate> coordinates) throws UnresolvedMavenArtifactException {
+        // verifying and installing cached artifacts is independent for each coordinate, use a parallel pool to speed it up
+        final List<Optional<File>> cached = findCachedArtifacts(coordinates);
+
         final List<Function<List<File>, File>> res = new ArrayList<>(coordinates.size());
         final List<ArtifactCoordinate> missingArtifacts = new ArrayList<>();
         int index = 0;
-        for (ArtifactCoordinate coordinate : coordinates) {
-            Optional<File> path = artifactCache.getArtifact(coordinate.getGroupId(), coordinate.getArtifactId(),
-                    coordinate.getExtension(), coordinate.getClassifier(), coordinate.getVersion());
+        for (int c = 0; c < coordinates.size(); c++) {
+            final Optional<File> path = cached.get(c);
             if (path.isEmpty()) {
                 int i = index++;
                 res.add((list)->list.get(i));
-                missingArtifacts.add(coordinate);
+                missingArtifacts.add(coordinates.get(c));
             } else {
-                // we need to install the artifact locally so that galleon can start embedded server to generate configurations
-                if (installArtifactLocally(coordinate.getGroupId(), coordinate.getArtifactId(),
-                        coordinate.getExtension(), coordinate.getClassifier(), coordinate.getVersion(), path.get())) {
-                    res.add((list) -> path.get());
-                } else {
-                    int i = index++;
-                    res.add((list)->list.get(i));
-                    missingArtifacts.add(coordinate);
-                }
+                res.add((list) -> path.get());
             }
         }
 
@@ -136,85 +173,145 @@ public class CachedVersionResolver implements MavenVersionsResolver {
         return res.stream().map(f->f.apply(resolvedFromMaven)).collect(Collectors.toList());
     }
 
-    @Override
-    public List<URL> resolveChannelMetadata(List<? extends ChannelMetadataCoordinate> manifestCoords) throws UnresolvedMavenArtifactException {
+    /**
+     * finds {@code coordinates} in the cache and installs them in the LRM. The lookups are done in parallel, the result
+     * list follows the order of {@code coordinates}.
+     *
+     * @return list of cached files, or empty {@code Optional} if the artifact needs to be resolved by the fallback resolver
+     */
+    private List<Optional<File>> findCachedArtifacts(List<ArtifactCoordinate> coordinates) {
+        final int parallelism = Integer.getInteger(CACHE_RESOLUTION_PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors());
+        if (parallelism <= 1 || coordinates.size() <= 1) {
+            return coordinates.stream().map(this::findCachedArtifact).collect(Collectors.toList());
+        }
+
+        final ForkJoinPool pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+        final List<CompletableFuture<Optional<File>>> lookups = new ArrayList<>(coordinates.size());
+        for (ArtifactCoordinate coordinate : coordinates) {
+            lookups.add(CompletableFuture.supplyAsync(() -> findCachedArtifact(coordinate), pool));
+        }
+
         try {
-            return fallbackResolver.resolveChannelMetadata(manifestCoords);
-        } catch (ArtifactTransferException e) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Failed to resolve manifests, attempting to fall back to the cache.");
+            return lookups.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            lookups.forEach(l -> l.cancel(false));
+            // the lookups throw only unchecked exceptions, rethrow the original failure
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw e;
             }
-            final URL[] cachedMetadata = new URL[manifestCoords.size()];
-            for (ArtifactCoordinate a : e.getUnresolvedArtifacts()) {
-                // get version from manifest_versions to verify this is the latest version
-                final String version = manifestVersionProvider.apply(a);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debugf("Last used version for manifest %s is %s.", a, version);
-                }
-
-                if (version == null) {
-                    // we can't use cache, just throw the resolution exception
-                    throw e;
-                }
+        }
+    }
 
-                final Optional<File> artifact = artifactCache.getArtifact(
-                        a.getGroupId(),
-                        a.getArtifactId(),
-                        a.getExtension(),
-                        a.getClassifier(),
-                        version
-                );
+    private Optional<File> findCachedArtifact(ArtifactCoordinate coordinate) {
+        final Optional<File> path = artifactCache.getArtifact(coordinate.getGroupId(), coordinate.getArtifactId(),
+                coordinate.getExtension(), coordinate.getClassifier(), coordinate.getVersion());
+        // we need to install the artifact locally so that galleon can start embedded server to generate configurations
+        if (path.isPresent() && installArtifactLocally(coordinate.getGroupId(), coordinate.getArtifactId(),
+                coordinate.getExtension(), coordinate.getClassifier(), coordinate.getVersion(), path.get())) {
+            return path;
+        } else {
+            return Optional.empty();
+        }
+    }
 
+    @Override
+    public List<URL> resolveChannelMetadata(List<? extends ChannelMetadataCoordinate> manifestCoords) throws UnresolvedMavenArtifactException {
+        final URL[] resolvedMetadata = new URL[manifestCoords.size()];
+        List<Integer> pending = new ArrayList<>(manifestCoords.size());
+        for (int i = 0; i < manifestCoords.size(); i++) {
+            final ChannelMetadataCoordinate coord = manifestCoords.get(i);
+            // don't wait for another timeout if the manifest failed to resolve recently and a cached copy is available
+            final Optional<URL> cachedManifest = unresolvedMetadata.isUnresolved(coord) ? findCachedManifest(coord) : Optional.empty();
+            if (cachedManifest.isPresent()) {
+                resolvedMetadata[i] = cachedManifest.get();
+            } else {
+                pending.add(i);
+            }
+        }
 
-                if (artifact.isPresent()) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debugf("Found cached manifest for %s.", a);
-                    }
-                    log.warnf("Unable to resolve manifest for channel %s, no updates will be resolved for this channel.", a);
-                    installArtifactLocally(a.getGroupId(),
-                            a.getArtifactId(),
-                            a.getExtension(),
-                            a.getClassifier(),
-                            version,
-                            artifact.get());
-//                    this.listener.artifactResolved(new RepositoryEvent.Builder(session, RepositoryEvent.EventType.ARTIFACT_RESOLVED)
-//                            .setArtifact(new DefaultArtifact(
-//                                    a.getGroupId(),
-//                                    a.getArtifactId(),
-//                                    a.getClassifier(),
-//                                    a.getExtension(),
-//                                    version,
-//                                    null,
-//                                    artifact.get()
-//                            ))
-//                            .build());
-                    try {
-                        // maintain order as in manifestCoords
-                        for (int i = 0; i < manifestCoords.size(); i++) {
-                            final ChannelMetadataCoordinate coord = manifestCoords.get(i);
-                            if (coord.getGroupId().equals(a.getGroupId()) && coord.getArtifactId().equals(a.getArtifactId()) &&
-                                coord.getClassifier().equals(a.getClassifier()) && coord.getExtension().equals(a.getExtension())) {
-                                cachedMetadata[i] = artifact.get().toURI().toURL();
-                                break;
-                            }
-                        }
-                    } catch (MalformedURLException ex) {
-                        throw new RuntimeException(ex);
+        // every failed attempt either falls back to the cache for the unresolved manifests or throws, so the remaining
+        // manifests are retried in a single request until all of them are resolved
+        while (!pending.isEmpty()) {
+            final List<ChannelMetadataCoordinate> request = pending.stream().map(manifestCoords::get).collect(Collectors.toList());
+            try {
+                final List<URL> urls = fallbackResolver.resolveChannelMetadata(request);
+                for (int i = 0; i < pending.size(); i++) {
+                    resolvedMetadata[pending.get(i)] = urls.get(i);
+                }
+                pending = Collections.emptyList();
+            } catch (ArtifactTransferException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to resolve manifests, attempting to fall back to the cache.");
+                }
+                final List<Integer> retry = new ArrayList<>();
+                for (Integer i : pending) {
+                    final ChannelMetadataCoordinate coord = manifestCoords.get(i);
+                    if (isUnresolved(coord, e)) {
+                        unresolvedMetadata.markUnresolved(coord);
+                        // we can't use cache, just throw the resolution exception
+                        resolvedMetadata[i] = findCachedManifest(coord).orElseThrow(() -> e);
+                    } else {
+                        retry.add(i);
                     }
-                } else {
+                }
+                if (retry.size() == pending.size()) {
                     throw e;
                 }
-            }
-            for (int i = 0; i < cachedMetadata.length; i++) {
-                // retry urls that were before resolved
-                if (cachedMetadata[i] == null) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debugf("Retrying resolution of manifest %s.", cachedMetadata[i]);
-                    }
-                    cachedMetadata[i] = fallbackResolver.resolveChannelMetadata(List.of(manifestCoords.get(i))).get(0);
+                if (LOG.isDebugEnabled() && !retry.isEmpty()) {
+                    LOG.debugf("Retrying resolution of manifests %s.",
+                            retry.stream().map(manifestCoords::get).collect(Collectors.toList()));
                 }
+                pending = retry;
+            }
+        }
+        return Arrays.asList(resolvedMetadata);
+    }
+
+    private static boolean isUnresolved(ChannelMetadataCoordinate coord, ArtifactTransferException e) {
+        for (ArtifactCoordinate a : e.getUnresolvedArtifacts()) {
+            if (Objects.equals(coord.getGroupId(), a.getGroupId()) && Objects.equals(coord.getArtifactId(), a.getArtifactId()) &&
+                    Objects.equals(coord.getClassifier(), a.getClassifier()) && Objects.equals(coord.getExtension(), a.getExtension())) {
+                return true;
             }
-            return Arrays.asList(cachedMetadata);
+        }
+        return false;
+    }
+
+    private Optional<URL> findCachedManifest(ChannelMetadataCoordinate coord) {
+        if (coord.getUrl() != null) {
+            return Optional.empty();
+        }
+        final ArtifactCoordinate a = new ArtifactCoordinate(coord.getGroupId(), coord.getArtifactId(), coord.getExtension(),
+                coord.getClassifier(), "");
+        // get version from manifest_versions to verify this is the latest version
+        final String version = manifestVersionProvider.apply(a);
+        if (LOG.isDebugEnabled()) {
+            LOG.debugf("Last used version for manifest %s is %s.", a, version);
+        }
+        if (version == null) {
+            return Optional.empty();
+        }
+
+        final Optional<File> artifact = artifactCache.getArtifact(a.getGroupId(), a.getArtifactId(), a.getExtension(),
+                a.getClassifier(), version);
+        if (artifact.isEmpty()) {
+            return Optional.empty();
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debugf("Found cached manifest for %s.", a);
+        }
+        log.warnf("Unable to resolve manifest for channel %s, no updates will be resolved for this channel.", a);
+        installArtifactLocally(a.getGroupId(), a.getArtifactId(), a.getExtension(), a.getClassifier(), version, artifact.get());
+        try {
+            return Optional.of(artifact.get().toURI().toURL());
+        } catch (MalformedURLException ex) {
+            throw new RuntimeException(ex);
         }
     }
 
@@ -230,8 +327,12 @@ public class CachedVersionResolver implements MavenVersionsResolver {
 
     private boolean installArtifactLocally(String groupId, String artifactId, String extension, String classifier, String version, File path) {
         try {
+            final Artifact artifact = new DefaultArtifact(groupId, artifactId, classifier, extension, version, null, path);
+            if (linkCachedArtifacts) {
+                linkIntoLocalRepository(artifact);
+            }
             final InstallRequest request = new InstallRequest();
-            request.setArtifacts(List.of(new DefaultArtifact(groupId, artifactId, classifier, extension, version, null, path)));
+            request.setArtifacts(List.of(artifact));
             system.install(session, request);
             return true;
         } catch (InstallationException e) {
@@ -239,4 +340,41 @@ public class CachedVersionResolver implements MavenVersionsResolver {
             return false;
         }
     }
+
+    /*
+     * The installer skips copying a file if the LRM already contains a file with the same size and modification time,
+     * but still registers the artifact in the LRM metadata. Placing a hardlink of the cached file in the LRM before
+     * the installation avoids the copy without bypassing the installer.
+     * POM files are always copied by the installer, so there's no point linking them.
+     */
+    private void linkIntoLocalRepository(Artifact artifact) {
+        if ("pom".equals(artifact.getExtension())) {
+            return;
+        }
+
+        final LocalRepositoryManager lrm = session.getLocalRepositoryManager();
+        final Path source = artifact.getFile().toPath();
+        final Path target = lrm.getRepository().getBasedir().toPath().resolve(lrm.getPathForLocalArtifact(artifact));
+        Path tempLink = null;
+        try {
+            if (Files.exists(target) && Files.isSameFile(source, target)) {
+                return;
+            }
+            Files.createDirectories(target.getParent());
+            // link under a temporary name first to replace any existing file atomically
+            tempLink = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            Files.createLink(tempLink, source);
+            Files.move(tempLink, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debugf(e, "Unable to link cached artifact %s into LRM, it will be copied instead.", artifact);
+        } finally {
+            if (tempLink != null) {
+                try {
+                    Files.deleteIfExists(tempLink);
+                } catch (IOException e) {
+                    log.debug("Unable to remove temporary link " + tempLink, e);
+                }
+            }
+        }
+    }
 }
@@ -39,6 +39,8 @@ public class CachedVersionResolverFactory implements MavenVersionsResolver.Facto
     private final DefaultRepositorySystemSession session;
     private final ArtifactCache artifactCache;
     private final Path installDir;
+    // shared by all the resolvers, so that a manifest that failed to resolve is not requested again by each of them
+    private final UnresolvedMetadataCache unresolvedMetadata = new UnresolvedMetadataCache();
 
     public CachedVersionResolverFactory(VersionResolverFactory factory, Path installDir, RepositorySystem system, DefaultRepositorySystemSession session) throws IOException {
         this.factory = factory;
@@ -51,7 +53,8 @@ public class CachedVersionResolverFactory implements MavenVersionsResolver.Facto
     @Override
     public MavenVersionsResolver create(Collection<Repository> repositories) {
         return new CachedVersionResolver(factory.create(repositories), artifactCache, system, session,
-                (a)->getCurrentManifestVersion(a, installDir.resolve(ProsperoMetadataUtils.METADATA_DIR).resolve(ProsperoMetadataUtils.CURRENT_VERSION_FILE)));
+                (a)->getCurrentManifestVersion(a, installDir.resolve(ProsperoMetadataUtils.METADATA_DIR).resolve(ProsperoMetadataUtils.CURRENT_VERSION_FILE)),
+                unresolvedMetadata);
     }
 
     private static String getCurrentManifestVersion(ArtifactCoordinate a, Path manifestVersionRecord) {
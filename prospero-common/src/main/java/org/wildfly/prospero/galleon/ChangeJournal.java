@@ -0,0 +1,621 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.logging.Logger;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * A journal of the paths changed in a server, recorded in {@code .installation/.change-journal} by a {@link Watcher}.
+ *
+ * While the server is watched, the changes since an earlier {@link Checkpoint} can be read from the journal instead of
+ * scanning all the files of the server. The journal has a gap if the watcher was not running the whole time, if it was
+ * restarted, if the operating system dropped some events, or if the server root was replaced by another directory (e.g.
+ * by a staged copy of the server). The changes cannot be read across a gap and the server has to be scanned.
+ *
+ * Each line of the journal is an entry type followed by its value:
+ * <ul>
+ *     <li>{@code s <id>} - start of a session, always the first line</li>
+ *     <li>{@code c <path>} - a changed path, relative to the server root</li>
+ *     <li>{@code f <name>} - a fence file created by a reader, all changes made before it are recorded above</li>
+ *     <li>{@code g <reason>} - a gap in the journal</li>
+ * </ul>
+ */
+public class ChangeJournal {
+
+    private static final Logger LOG = Logger.getLogger(ChangeJournal.class);
+
+    public static final Path JOURNAL_FILE = Path.of(ProsperoMetadataUtils.METADATA_DIR, ".change-journal");
+    static final Path LOCK_FILE = Path.of(ProsperoMetadataUtils.METADATA_DIR, ".change-journal.lock");
+    private static final String FENCE_PREFIX = ".change-journal-fence";
+    // the journal is started over when it grows larger, readers with older checkpoints have to scan the server
+    private static final long MAX_JOURNAL_SIZE = 16 * 1024 * 1024;
+    private static final long FENCE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long FENCE_POLL_MILLIS = 10;
+    // the root is not watched by the WatchService, it's checked for replacement periodically
+    private static final long ROOT_CHECK_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    // the session entry is short, only the beginning of the journal is read to find it
+    private static final long SESSION_ENTRY_LIMIT = 128;
+
+    private static final char SESSION = 's';
+    private static final char CHANGE = 'c';
+    private static final char FENCE = 'f';
+    private static final char GAP = 'g';
+
+    // servers watched by this JVM, their lock cannot be tested without releasing it
+    private static final Set<Path> WATCHED = ConcurrentHashMap.newKeySet();
+
+    private ChangeJournal() {
+    }
+
+    /**
+     * starts journaling changes in the server at {@code root}. The changes are recorded only while the returned
+     * watcher is {@link Watcher#run() running}.
+     *
+     * @param root - root of the server
+     * @return the watcher
+     * @throws IOException - if the server is already watched or the watcher can't be started
+     */
+    public static Watcher watch(Path root) throws IOException {
+        return new Watcher(root.toAbsolutePath().normalize());
+    }
+
+    /**
+     * @param root - root of the server
+     * @return {@code true} if a watcher is currently journaling changes in the server
+     */
+    public static boolean isWatched(Path root) {
+        final Path normalized = root.toAbsolutePath().normalize();
+        if (WATCHED.contains(normalized)) {
+            return true;
+        }
+        final Path lockFile = normalized.resolve(LOCK_FILE);
+        if (!Files.exists(lockFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            final FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            LOG.debug("Unable to check the change journal lock " + lockFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * @param relative - path relative to the root of the server
+     * @return {@code true} if the path is the journal, its lock or fence, or a journal being written. These files
+     * belong to the watched directory and are not copied with the server.
+     */
+    public static boolean isJournalFile(Path relative) {
+        return relative.getNameCount() == 2 && relative.startsWith(ProsperoMetadataUtils.METADATA_DIR)
+                && relative.getFileName().toString().startsWith(JOURNAL_FILE.getFileName().toString());
+    }
+
+    /**
+     * finds the position in the journal after which any change to the server made from now on is recorded.
+     *
+     * @param root - root of the server
+     * @return the current position, or empty if the server is not watched or the watcher doesn't respond
+     */
+    static Optional<Checkpoint> checkpoint(Path root) {
+        if (!isWatched(root)) {
+            return Optional.empty();
+        }
+
+        final Path journalFile = root.resolve(JOURNAL_FILE);
+        Path fence = null;
+        try {
+            fence = Files.createTempFile(journalFile.getParent(), FENCE_PREFIX, "");
+            final String fenceEntry = FENCE + " " + fence.getFileName();
+            final long deadline = System.currentTimeMillis() + FENCE_TIMEOUT_MILLIS;
+            Optional<String> readSession = Optional.empty();
+            long position = 0;
+            do {
+                try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+                    final Optional<String> session = session(channel);
+                    if (!session.equals(readSession)) {
+                        // the journal was started over
+                        readSession = session;
+                        position = 0;
+                    }
+                    if (session.isPresent()) {
+                        final Segment segment = read(channel, position, Long.MAX_VALUE, fenceEntry::equals);
+                        if (segment.found) {
+                            return Optional.of(new Checkpoint(session.get(), segment.end));
+                        }
+                        position = segment.end;
+                    }
+                } catch (NoSuchFileException e) {
+                    // the server root was replaced and the watcher hasn't started the journal in it yet
+                    readSession = Optional.empty();
+                }
+                Thread.sleep(FENCE_POLL_MILLIS);
+            } while (System.currentTimeMillis() < deadline);
+            LOG.debugf("The change journal of %s didn't record the fence in time, the files will be scanned.", root);
+        } catch (IOException e) {
+            LOG.debug("Unable to read the change journal of " + root, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (fence != null) {
+                try {
+                    Files.deleteIfExists(fence);
+                } catch (IOException e) {
+                    LOG.debug("Unable to remove the change journal fence " + fence, e);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * lists the paths changed between two checkpoints. A changed directory means that any path in it might have
+     * changed.
+     *
+     * @param root - root of the server
+     * @param from - the earlier checkpoint
+     * @param to - the later checkpoint
+     * @return changed paths relative to the root, using UNIX separators, or empty if the journal has a gap between
+     * the checkpoints
+     */
+    static Optional<Set<String>> changes(Path root, Checkpoint from, Checkpoint to) {
+        if (!from.session.equals(to.session) || from.offset > to.offset) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(root.resolve(JOURNAL_FILE), StandardOpenOption.READ)) {
+            // the journal might have been started over since the later checkpoint was taken
+            if (!session(channel).equals(Optional.of(to.session))) {
+                return Optional.empty();
+            }
+            final Set<String> paths = new TreeSet<>();
+            for (String entry : read(channel, from.offset, to.offset, null).entries) {
+                if (entry.isEmpty() || entry.charAt(0) == GAP || entry.charAt(0) == SESSION) {
+                    return Optional.empty();
+                }
+                if (entry.charAt(0) == CHANGE) {
+                    paths.add(entry.substring(2));
+                }
+            }
+            return Optional.of(paths);
+        } catch (IOException e) {
+            LOG.debug("Unable to read the change journal of " + root, e);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<String> session(FileChannel channel) throws IOException {
+        final Segment first = read(channel, 0, SESSION_ENTRY_LIMIT, entry -> true);
+        if (!first.found || first.entries.get(0).length() < 3 || first.entries.get(0).charAt(0) != SESSION) {
+            return Optional.empty();
+        }
+        return Optional.of(first.entries.get(0).substring(2));
+    }
+
+    /*
+     * reads complete entries between the offsets. If the stop condition is given, reading stops after the first
+     * matching entry.
+     */
+    private static Segment read(FileChannel channel, long from, long to, Predicate<String> stop) throws IOException {
+        final long limit = Math.min(to, channel.size());
+        if (limit <= from) {
+            return new Segment(Collections.emptyList(), from, false);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(limit - from));
+        while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0) {
+            // read until the limit
+        }
+        final byte[] bytes = buffer.array();
+        final List<String> entries = new ArrayList<>();
+        int entryStart = 0;
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == '\n') {
+                final String entry = new String(bytes, entryStart, i - entryStart, StandardCharsets.UTF_8);
+                entries.add(entry);
+                entryStart = i + 1;
+                if (stop != null && stop.test(entry)) {
+                    return new Segment(entries, from + entryStart, true);
+                }
+            }
+        }
+        return new Segment(entries, from + entryStart, false);
+    }
+
+    private static String toKey(Path relative) {
+        // FsDiff always uses UNIX separators
+        return relative.toString().replace(File.separator, "/");
+    }
+
+    /**
+     * a position in the journal of a server.
+     */
+    static final class Checkpoint {
+        private final String session;
+        private final long offset;
+
+        Checkpoint(String session, long offset) {
+            this.session = session;
+            this.offset = offset;
+        }
+
+        static Optional<Checkpoint> parse(String text) {
+            final String[] parts = text.split(" ");
+            if (parts.length != 2) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new Checkpoint(parts[0], Long.parseLong(parts[1])));
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Checkpoint that = (Checkpoint) o;
+            return offset == that.offset && session.equals(that.session);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(session, offset);
+        }
+
+        @Override
+        public String toString() {
+            return session + " " + offset;
+        }
+    }
+
+    private static final class Segment {
+        private final List<String> entries;
+        private final long end;
+        private final boolean found;
+
+        private Segment(List<String> entries, long end, boolean found) {
+            this.entries = entries;
+            this.end = end;
+            this.found = found;
+        }
+    }
+
+    /**
+     * records the changes in a server into its journal. Only one watcher can watch a server at a time.
+     */
+    public static final class Watcher implements Closeable {
+
+        private final Path root;
+        private final WatchService watchService;
+        private final Map<WatchKey, Path> directories = new HashMap<>();
+        // the lock and the journal are replaced if the root is replaced
+        private FileChannel lockChannel;
+        private FileLock lock;
+        private Object rootKey;
+        private BufferedWriter journal;
+        private boolean closed;
+
+        private Watcher(Path root) throws IOException {
+            this.root = root;
+            lock();
+            WATCHED.add(root);
+
+            try {
+                this.watchService = root.getFileSystem().newWatchService();
+                startSession();
+                // readers take checkpoints only after this is done, changes made until then are found by scanning
+                watchRoot();
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * records the changes until the watcher is closed or the current thread is interrupted.
+         *
+         * @throws IOException - if unable to write the journal
+         */
+        public void run() throws IOException {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = watchService.poll(ROOT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                final List<String> entries = new ArrayList<>();
+                final List<String> fences = new ArrayList<>();
+                try {
+                    // everything that is pending is written together
+                    while (key != null) {
+                        process(key, entries, fences);
+                        key = watchService.poll();
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                }
+                // events are not ordered across directories, a change made before a fence might be reported by a
+                // directory drained after the fence's one, e.g. a directory signalled again when it was reset
+                entries.addAll(fences);
+                if (isRootReplaced()) {
+                    // the events were reported for the directories of the previous root
+                    if (!rewatch()) {
+                        return;
+                    }
+                    continue;
+                }
+                append(entries);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            WATCHED.remove(root);
+            try {
+                if (watchService != null) {
+                    watchService.close();
+                }
+                if (journal != null) {
+                    journal.close();
+                    journal = null;
+                }
+            } finally {
+                if (lockChannel.isOpen()) {
+                    lock.release();
+                    lockChannel.close();
+                }
+            }
+        }
+
+        private void lock() throws IOException {
+            if (!Files.isDirectory(root.resolve(ProsperoMetadataUtils.METADATA_DIR))) {
+                throw new IOException("Unable to watch " + root + ", it doesn't contain a server installation.");
+            }
+            final FileChannel channel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                channel.close();
+                throw new IOException("The changes in " + root + " are already being watched.");
+            }
+            this.lockChannel = channel;
+            this.lock = fileLock;
+        }
+
+        private void watchRoot() throws IOException {
+            rootKey = fileKey(root);
+            register(root, new ArrayList<>());
+        }
+
+        /*
+         * the directories are watched by their inodes, a root replaced by renaming another directory to its place is
+         * not reported. The check is not possible on file systems without file keys.
+         */
+        private boolean isRootReplaced() {
+            final Object currentKey = fileKey(root);
+            return rootKey != null && currentKey != null && !rootKey.equals(currentKey);
+        }
+
+        private static Object fileKey(Path path) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).fileKey();
+            } catch (IOException e) {
+                // e.g. the root is being replaced and doesn't exist at the moment
+                return null;
+            }
+        }
+
+        /*
+         * starts watching the directory that replaced the root. The lock and the journal of the previous root are
+         * released, and a new session with a gap is started in the new root.
+         */
+        private synchronized boolean rewatch() throws IOException {
+            if (closed) {
+                return false;
+            }
+            LOG.debugf("The server %s was replaced, restarting its change journal.", root);
+            directories.keySet().forEach(WatchKey::cancel);
+            directories.clear();
+            lock.release();
+            lockChannel.close();
+            try {
+                lock();
+                startSession();
+                append(List.of(GAP + " root-replaced"));
+                watchRoot();
+                // readers might have created fences before the new root was watched
+                try (Stream<Path> files = Files.list(root.resolve(ProsperoMetadataUtils.METADATA_DIR))) {
+                    append(files.map(file -> file.getFileName().toString())
+                            .filter(name -> name.startsWith(FENCE_PREFIX))
+                            .map(name -> FENCE + " " + name)
+                            .collect(Collectors.toList()));
+                }
+                return true;
+            } catch (IOException e) {
+                LOG.debug("Unable to watch the replaced server " + root, e);
+                close();
+                return false;
+            }
+        }
+
+        private void process(WatchKey key, List<String> entries, List<String> fences) throws IOException {
+            final Path dir = directories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    entries.add(GAP + " overflow");
+                    continue;
+                }
+                if (dir == null) {
+                    continue;
+                }
+                final Path path = dir.resolve((Path) event.context());
+                final String name = path.getFileName().toString();
+                if (path.getParent().equals(root.resolve(ProsperoMetadataUtils.METADATA_DIR))) {
+                    if (name.startsWith(FENCE_PREFIX)) {
+                        if (event.kind() == ENTRY_CREATE) {
+                            fences.add(FENCE + " " + name);
+                        }
+                        continue;
+                    } else if (name.startsWith(JOURNAL_FILE.getFileName().toString())) {
+                        // the journal and its lock, changes of which would be journaled in a loop
+                        continue;
+                    }
+                }
+                final String entry = CHANGE + " " + toKey(root.relativize(path));
+                // a file being written is reported repeatedly
+                if (entries.isEmpty() || !entries.get(entries.size() - 1).equals(entry)) {
+                    entries.add(entry);
+                }
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    // the directory might have been populated before it was registered
+                    register(path, entries);
+                }
+            }
+            if (!key.reset()) {
+                // the directory was removed
+                directories.remove(key);
+            }
+        }
+
+        private void register(Path start, List<String> entries) throws IOException {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                    if (!dir.equals(start)) {
+                        entries.add(CHANGE + " " + toKey(root.relativize(dir)));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    entries.add(CHANGE + " " + toKey(root.relativize(file)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    // files not readable by the current user are not managed by us
+                    if (exc instanceof AccessDeniedException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exc;
+                }
+            });
+        }
+
+        private synchronized void append(List<String> entries) throws IOException {
+            if (journal == null || entries.isEmpty()) {
+                return;
+            }
+            for (String entry : entries) {
+                journal.write(entry);
+                journal.write('\n');
+            }
+            journal.flush();
+
+            if (Files.size(root.resolve(JOURNAL_FILE)) > MAX_JOURNAL_SIZE) {
+                startSession();
+            }
+        }
+
+        private void startSession() throws IOException {
+            if (journal != null) {
+                journal.close();
+            }
+            final Path journalFile = root.resolve(JOURNAL_FILE);
+            final Path tempFile = Files.createTempFile(journalFile.getParent(), JOURNAL_FILE.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(tempFile, SESSION + " " + UUID.randomUUID() + "\n");
+                // readers holding the previous journal open don't see a partially written one
+                Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            journal = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            LOG.debugf("Started a new change journal session for %s.", root);
+        }
+    }
+}
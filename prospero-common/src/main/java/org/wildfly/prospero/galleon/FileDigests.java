@@ -0,0 +1,139 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.util.HashUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Digests of a file content computed in a single read.
+ *
+ * The SHA-1 hash is compatible with the hashes recorded by Galleon and in the {@link ArtifactCache} descriptor. The
+ * SHA-256 hash is only computed on request.
+ *
+ * Unlike {@link HashUtils}, the digests don't share any state, so multiple files can be digested concurrently.
+ */
+public class FileDigests {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String sha1;
+    private final String sha256;
+
+    private FileDigests(String sha1, String sha256) {
+        this.sha1 = sha1;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * reads the {@code file} and computes its SHA-1 hash.
+     *
+     * @param file - file to digest
+     * @return digests of the file
+     * @throws IOException - if unable to read the file
+     */
+    public static FileDigests of(Path file) throws IOException {
+        return of(file, false);
+    }
+
+    /**
+     * reads the {@code file} and computes its digests.
+     *
+     * @param file - file to digest
+     * @param withSha256 - if {@code true}, the SHA-256 hash is computed as well
+     * @return digests of the file
+     * @throws IOException - if unable to read the file
+     */
+    public static FileDigests of(Path file, boolean withSha256) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return digest(in, null, withSha256);
+        }
+    }
+
+    /**
+     * copies {@code source} to {@code target} and computes the digests of the copied content in the same read.
+     * An existing {@code target} is removed first rather than overwritten, so that the content of any other links
+     * to it is not changed. The modification time of the {@code source} is preserved.
+     *
+     * @param source - file to copy
+     * @param target - location of the copy
+     * @param withSha256 - if {@code true}, the SHA-256 hash is computed as well
+     * @return digests of the copied content
+     * @throws IOException - if unable to copy the file
+     */
+    public static FileDigests copy(Path source, Path target, boolean withSha256) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Files.deleteIfExists(target);
+        final FileDigests digests;
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target)) {
+            digests = digest(in, out, withSha256);
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+        return digests;
+    }
+
+    private static FileDigests digest(InputStream in, OutputStream out, boolean withSha256) throws IOException {
+        final MessageDigest sha1 = messageDigest("SHA-1");
+        final MessageDigest sha256 = withSha256 ? messageDigest("SHA-256") : null;
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            sha1.update(buffer, 0, read);
+            if (sha256 != null) {
+                sha256.update(buffer, 0, read);
+            }
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return new FileDigests(HashUtils.bytesToHexString(sha1.digest()),
+                sha256 == null ? null : HashUtils.bytesToHexString(sha256.digest()));
+    }
+
+    private static MessageDigest messageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return hex-encoded SHA-1 hash
+     */
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * @return hex-encoded SHA-256 hash, or {@code null} if it was not requested
+     */
+    public String getSha256() {
+        return sha256;
+    }
+}
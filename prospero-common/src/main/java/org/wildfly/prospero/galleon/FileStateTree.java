@@ -0,0 +1,473 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.Constants;
+import org.jboss.galleon.util.HashUtils;
+import org.jboss.logging.Logger;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A Merkle tree of the files of a server, recorded in {@code .installation/.file-state}.
+ *
+ * Each file is identified by its SHA-1 hash, each directory by a digest of the names and digests of its children. Two
+ * servers, or two states of a server, can be compared by descending only into the directories with different digests.
+ *
+ * The hashes of the files are persisted together with their sizes and modification times. When the server is scanned,
+ * only the files that changed since the tree was recorded are hashed. Right after the server is provisioned, the hashes
+ * recorded by Galleon are used instead of reading the files.
+ *
+ * The server metadata and Galleon provisioning state are not part of the tree, nor are the paths ignored by the caller,
+ * e.g. the update backup. A symbolic link is not followed, it is identified by its target.
+ */
+public class FileStateTree {
+
+    private static final Logger LOG = Logger.getLogger(FileStateTree.class);
+
+    public static final Path RECORD_FILE = Path.of(ProsperoMetadataUtils.METADATA_DIR, ".file-state");
+    // the metadata and provisioning state
+    private static final Set<Path> EXCLUDED_PATHS = Set.of(Path.of(ProsperoMetadataUtils.METADATA_DIR),
+            Path.of(Constants.PROVISIONED_STATE_DIR));
+    private static final String CHECKPOINT_PREFIX = "# ";
+
+    // relative directory path -> (child name -> child digest), the root directory has an empty path
+    private final Map<String, Map<String, Child>> directories;
+    private final Map<String, String> directoryDigests = new HashMap<>();
+
+    private FileStateTree(Map<String, Map<String, Child>> directories) {
+        this.directories = directories;
+        digestDirectory("");
+    }
+
+    /**
+     * scans the current state of the server at {@code root}. Only the files changed since the tree was last recorded are
+     * hashed. The updated tree is recorded in the server.
+     *
+     * @param root - root of the server
+     * @param ignoredPaths - paths relative to {@code root} that are not part of the tree, e.g. the update backup
+     * @return the current state
+     * @throws IOException - if unable to read the files of the server
+     */
+    public static FileStateTree scan(Path root, Set<Path> ignoredPaths) throws IOException {
+        return scan(root, ignoredPaths, false);
+    }
+
+    /**
+     * records the current state of the server at {@code root}, hashing only the files changed since the state was last
+     * recorded.
+     *
+     * @param root - root of the server
+     * @param ignoredPaths - paths relative to {@code root} that are not part of the tree, e.g. the update backup
+     */
+    public static void record(Path root, Set<Path> ignoredPaths) {
+        try {
+            scan(root, ignoredPaths, false);
+        } catch (IOException e) {
+            LOG.debug("Unable to record the file state of " + root, e);
+        }
+    }
+
+    /**
+     * records the state of a server that has just been provisioned. The hashes recorded by Galleon are used for
+     * the provisioned files, only the files not managed by Galleon are hashed.
+     *
+     * @param root - root of the provisioned server
+     * @param ignoredPaths - paths relative to {@code root} that are not part of the tree, e.g. the update backup
+     */
+    public static void recordProvisioned(Path root, Set<Path> ignoredPaths) {
+        try {
+            scan(root, ignoredPaths, true);
+        } catch (IOException e) {
+            LOG.debug("Unable to record the file state of " + root, e);
+        }
+    }
+
+    /**
+     * @param root - root of the server
+     * @return {@code true} if the state of the server has been recorded, so that scanning it doesn't require hashing
+     * all the files
+     */
+    public static boolean isRecorded(Path root) {
+        return Files.exists(root.resolve(RECORD_FILE));
+    }
+
+    private static FileStateTree scan(Path root, Set<Path> ignoredPaths, boolean provisioned) throws IOException {
+        final Path recordFile = root.resolve(RECORD_FILE);
+        // taken before any file is read, so that changes made during the scan are journaled after it
+        final Optional<ChangeJournal.Checkpoint> checkpoint = ChangeJournal.checkpoint(root);
+        final Record recorded = provisioned ? new Record(galleonHashes(root), null) : readRecord(recordFile);
+        final Optional<Set<String>> journaled = checkpoint.isPresent() && recorded.checkpoint != null
+                ? ChangeJournal.changes(root, recorded.checkpoint, checkpoint.get()) : Optional.empty();
+        final TreeMap<String, FileRecord> current = new TreeMap<>();
+
+        if (journaled.isPresent()) {
+            // only the journaled paths are scanned, always hashing the files as they are known to be changed
+            current.putAll(recorded.files);
+            final Scanner scanner = new Scanner(root, ignoredPaths, Collections.emptyMap(), current);
+            for (String path : journaled.get()) {
+                current.remove(path);
+                // the path and everything under it, '0' follows '/'
+                current.subMap(path + "/", path + "0").clear();
+                final Path file = root.resolve(path);
+                if (!isExcluded(root.relativize(file), ignoredPaths) && Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.walkFileTree(file, scanner);
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debugf("Scanned %d paths changed in %s according to the change journal.", journaled.get().size(), root);
+            }
+        } else {
+            Files.walkFileTree(root, new Scanner(root, ignoredPaths, recorded.files, current));
+        }
+
+        if (!current.equals(recorded.files) || !Objects.equals(checkpoint.orElse(null), recorded.checkpoint)) {
+            // while journaled, recently modified files can be recorded - any further change is found in the journal
+            final long settledBefore = provisioned || checkpoint.isPresent()
+                    ? Long.MAX_VALUE : FileTimestamps.settledBefore();
+            writeRecord(recordFile, current, checkpoint.orElse(null), settledBefore);
+        }
+        return new FileStateTree(buildTree(current));
+    }
+
+    /*
+     * directories of the tree, built from the recorded files and directories
+     */
+    private static Map<String, Map<String, Child>> buildTree(Map<String, FileRecord> records) {
+        final Map<String, Map<String, Child>> directories = new HashMap<>();
+        directories.put("", new TreeMap<>());
+        for (Map.Entry<String, FileRecord> entry : records.entrySet()) {
+            final String key = entry.getKey();
+            if (key.endsWith("/")) {
+                addDirectory(directories, key.substring(0, key.length() - 1));
+            } else {
+                final int index = key.lastIndexOf('/');
+                addDirectory(directories, index < 0 ? "" : key.substring(0, index))
+                        .put(key.substring(index + 1), new Child(entry.getValue().hash));
+            }
+        }
+        return directories;
+    }
+
+    private static Map<String, Child> addDirectory(Map<String, Map<String, Child>> directories, String dir) {
+        Map<String, Child> children = directories.get(dir);
+        if (children == null) {
+            children = new TreeMap<>();
+            directories.put(dir, children);
+            final int index = dir.lastIndexOf('/');
+            addDirectory(directories, index < 0 ? "" : dir.substring(0, index)).put(dir.substring(index + 1), Child.DIRECTORY);
+        }
+        return children;
+    }
+
+    private static boolean isExcluded(Path relative, Set<Path> ignoredPaths) {
+        return EXCLUDED_PATHS.contains(relative.getName(0)) || ignoredPaths.stream().anyMatch(relative::startsWith);
+    }
+
+    /**
+     * @param relativePath - path relative to the server root, using UNIX separators
+     * @return hash of the file, or digest of the directory, at {@code relativePath}
+     */
+    public Optional<String> getDigest(String relativePath) {
+        if (directoryDigests.containsKey(relativePath)) {
+            return Optional.of(directoryDigests.get(relativePath));
+        }
+        final int index = relativePath.lastIndexOf('/');
+        final Map<String, Child> parent = directories.get(index < 0 ? "" : relativePath.substring(0, index));
+        if (parent == null) {
+            return Optional.empty();
+        }
+        final Child child = parent.get(relativePath.substring(index + 1));
+        return child == null || child.isDirectory() ? Optional.empty() : Optional.of(child.hash);
+    }
+
+    private String digestDirectory(String dir) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Map.Entry<String, Child> entry : directories.get(dir).entrySet()) {
+            final String name = entry.getKey();
+            final String hash = entry.getValue().isDirectory()
+                    ? "d:" + digestDirectory(dir.isEmpty() ? name : dir + "/" + name)
+                    : "f:" + entry.getValue().hash;
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(hash.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        final String result = HashUtils.bytesToHexString(digest.digest());
+        directoryDigests.put(dir, result);
+        return result;
+    }
+
+    private static String linkHash(Path target) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // prefixed, so that a link cannot have the same hash as a file
+        digest.update(("link:" + target).getBytes(StandardCharsets.UTF_8));
+        return HashUtils.bytesToHexString(digest.digest());
+    }
+
+    private static String toKey(Path relative) {
+        // FsDiff always uses UNIX separators
+        return relative.toString().replace(File.separator, "/");
+    }
+
+    /*
+     * hashes recorded by Galleon for the provisioned files. Their sizes and modification times are not known.
+     */
+    private static Map<String, FileRecord> galleonHashes(Path root) throws IOException {
+        final Path hashesRoot = root.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES);
+        if (!Files.isDirectory(hashesRoot)) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, FileRecord> hashes = new HashMap<>();
+        Files.walkFileTree(hashesRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!file.getFileName().toString().equals(Constants.HASHES)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                final String dir = toKey(hashesRoot.relativize(file.getParent()));
+                final String prefix = dir.isEmpty() ? "" : dir + "/";
+                final List<String> lines = Files.readAllLines(file);
+                for (int i = 0; i + 1 < lines.size(); i += 2) {
+                    hashes.put(prefix + lines.get(i), new FileRecord(lines.get(i + 1), -1, -1));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return hashes;
+    }
+
+    private static Record readRecord(Path recordFile) {
+        if (!Files.exists(recordFile)) {
+            return new Record(Collections.emptyMap(), null);
+        }
+
+        try {
+            final Map<String, FileRecord> records = new HashMap<>();
+            ChangeJournal.Checkpoint checkpoint = null;
+            for (String line : Files.readAllLines(recordFile, StandardCharsets.UTF_8)) {
+                if (line.startsWith(CHECKPOINT_PREFIX)) {
+                    // position in the change journal the record is up-to-date with
+                    checkpoint = ChangeJournal.Checkpoint.parse(line.substring(CHECKPOINT_PREFIX.length())).orElse(null);
+                    continue;
+                }
+                // <hash> <size> <modified> <path>, the path is last as it can contain spaces
+                final String[] parts = line.split(" ", 4);
+                if (parts.length != 4) {
+                    return new Record(Collections.emptyMap(), null);
+                }
+                records.put(parts[3], new FileRecord(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+            return new Record(records, checkpoint);
+        } catch (IOException | NumberFormatException e) {
+            LOG.debug("Unable to read the recorded file state " + recordFile + ", the files will be hashed", e);
+            return new Record(Collections.emptyMap(), null);
+        }
+    }
+
+    private static void writeRecord(Path recordFile, Map<String, FileRecord> records, ChangeJournal.Checkpoint checkpoint,
+                                    long settledBefore) {
+        if (!Files.isDirectory(recordFile.getParent())) {
+            return;
+        }
+
+        try {
+            final Path tempFile = Files.createTempFile(recordFile.getParent(), RECORD_FILE.getFileName().toString(), ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    if (checkpoint != null) {
+                        writer.write(CHECKPOINT_PREFIX + checkpoint);
+                        writer.newLine();
+                    }
+                    for (Map.Entry<String, FileRecord> entry : records.entrySet()) {
+                        final FileRecord record = entry.getValue();
+                        if (record.modified > settledBefore) {
+                            continue;
+                        }
+                        writer.write(record.hash + " " + record.size + " " + record.modified + " " + entry.getKey());
+                        writer.newLine();
+                    }
+                }
+                Files.move(tempFile, recordFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOG.debug("Unable to record the file state in " + recordFile, e);
+        }
+    }
+
+    private static final class Record {
+        private final Map<String, FileRecord> files;
+        private final ChangeJournal.Checkpoint checkpoint;
+
+        private Record(Map<String, FileRecord> files, ChangeJournal.Checkpoint checkpoint) {
+            this.files = files;
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    /*
+     * records the files and directories it visits, hashing only files that don't match the previous records
+     */
+    private static final class Scanner extends SimpleFileVisitor<Path> {
+        private final Path root;
+        private final Set<Path> ignoredPaths;
+        private final Map<String, FileRecord> recorded;
+        private final Map<String, FileRecord> current;
+
+        private Scanner(Path root, Set<Path> ignoredPaths, Map<String, FileRecord> recorded, Map<String, FileRecord> current) {
+            this.root = root;
+            this.ignoredPaths = ignoredPaths;
+            this.recorded = recorded;
+            this.current = current;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            final Path relative = root.relativize(dir);
+            if (isExcluded(relative, ignoredPaths)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            if (!relative.toString().isEmpty()) {
+                // recorded so that empty directories are part of the tree
+                current.put(toKey(relative) + "/", FileRecord.DIRECTORY);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            final Path relative = root.relativize(file);
+            if (isExcluded(relative, ignoredPaths)) {
+                return FileVisitResult.CONTINUE;
+            }
+            final String key = toKey(relative);
+            final long modified = attrs.lastModifiedTime().toMillis();
+            if (attrs.isSymbolicLink()) {
+                // adding, removing or re-targeting a link changes the digests of its directories
+                current.put(key, new FileRecord(linkHash(Files.readSymbolicLink(file)), attrs.size(), modified));
+                return FileVisitResult.CONTINUE;
+            }
+            if (!attrs.isRegularFile()) {
+                return FileVisitResult.CONTINUE;
+            }
+            FileRecord record = recorded.get(key);
+            if (record == null || !record.matches(attrs.size(), modified)) {
+                try {
+                    record = new FileRecord(FileDigests.of(file).getSha1(), attrs.size(), modified);
+                } catch (AccessDeniedException e) {
+                    return visitFileFailed(file, e);
+                }
+            } else if (record.size < 0) {
+                // the Galleon hashes don't record the file size and time
+                record = new FileRecord(record.hash, attrs.size(), modified);
+            }
+            current.put(key, record);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            // files not readable by the current user are not managed by us
+            if (exc instanceof AccessDeniedException) {
+                return FileVisitResult.CONTINUE;
+            }
+            throw exc;
+        }
+    }
+
+    private static final class Child {
+        private static final Child DIRECTORY = new Child(null);
+
+        private final String hash;
+
+        private Child(String hash) {
+            this.hash = hash;
+        }
+
+        private boolean isDirectory() {
+            return hash == null;
+        }
+    }
+
+    private static final class FileRecord {
+        private static final FileRecord DIRECTORY = new FileRecord("-", -1, -1);
+
+        private final String hash;
+        private final long size;
+        private final long modified;
+
+        private FileRecord(String hash, long size, long modified) {
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private boolean matches(long size, long modified) {
+            // records from the Galleon hashes don't have a size or time
+            return this.size < 0 || this.size == size && this.modified == modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final FileRecord that = (FileRecord) o;
+            return size == that.size && modified == that.modified && hash.equals(that.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+}
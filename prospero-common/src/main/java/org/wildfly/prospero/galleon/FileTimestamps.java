@@ -0,0 +1,49 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides if the state of a file (size and modification time) can be trusted to identify its content.
+ *
+ * A file modified within the modification time granularity of the filesystem could be changed again without changing
+ * its modification time. The state of such file must not be recorded until it settles.
+ */
+public final class FileTimestamps {
+
+    private static final long SETTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    private FileTimestamps() {
+    }
+
+    /**
+     * @return the time in milliseconds since epoch, files modified before it are settled
+     */
+    public static long settledBefore() {
+        return settledBefore(System.currentTimeMillis());
+    }
+
+    /**
+     * @param now - current time in milliseconds since epoch
+     * @return the time in milliseconds since epoch, files modified before it are settled
+     */
+    public static long settledBefore(long now) {
+        return now - SETTLE_TIME_MILLIS;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.ProvisioningException;
+import org.jboss.galleon.diff.FsDiff;
+import org.jboss.galleon.util.HashUtils;
+import org.jboss.logging.Logger;
+import org.wildfly.prospero.api.exceptions.OperationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the {@link FsDiff} computed for a server, so that it is not re-computed while the server files don't change.
+ *
+ * Computing the {@code FsDiff} requires reading all the files of the server. Instead, the cache scans the sizes and
+ * modification times of the files and re-uses the previous {@code FsDiff} if they are the same as when it was computed.
+ * If any file was modified in the last few seconds, a change with the same size and modification time could go
+ * undetected, so the {@code FsDiff} is not cached.
+ *
+ * If the server is watched by a {@link ChangeJournal.Watcher}, the files are not scanned at all. The previous
+ * {@code FsDiff} is re-used if no path has been journaled since it was computed.
+ */
+class FsDiffCache {
+
+    private static final Logger LOG = Logger.getLogger(FsDiffCache.class);
+
+    interface Loader {
+        FsDiff load() throws ProvisioningException, OperationException;
+    }
+
+    private final int maxSize;
+    private final LongSupplier clock;
+    private final Map<Path, Snapshot> snapshots;
+
+    FsDiffCache(int maxSize, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.clock = clock;
+        this.snapshots = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Snapshot> eldest) {
+                return size() > FsDiffCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * returns the {@code FsDiff} of the server at {@code root}, computing it with {@code loader} if the server changed.
+     *
+     * @param root - root of the server
+     * @param ignoredPaths - paths relative to the {@code root}, changes of which don't affect the cached {@code FsDiff}
+     * @param loader - computes the {@code FsDiff}
+     */
+    FsDiff get(Path root, Set<Path> ignoredPaths, Loader loader) throws ProvisioningException, OperationException {
+        final Path key = root.toAbsolutePath().normalize();
+        // the scan has to happen before the diff is computed, so that any concurrent change invalidates the snapshot
+        final Optional<ChangeJournal.Checkpoint> checkpoint = ChangeJournal.checkpoint(key);
+        final Optional<String> fingerprint = checkpoint.isPresent() ? Optional.empty() : fingerprint(key, ignoredPaths);
+
+        final Snapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(key);
+        }
+        if (snapshot != null && (snapshot.matches(fingerprint) || snapshot.unchangedSince(key, checkpoint, ignoredPaths))) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debugf("Re-using changes of %s computed previously.", key);
+            }
+            return snapshot.diff;
+        }
+
+        final FsDiff diff = loader.load();
+        synchronized (snapshots) {
+            if (fingerprint.isPresent() || checkpoint.isPresent()) {
+                snapshots.put(key, new Snapshot(fingerprint.orElse(null), checkpoint.orElse(null), diff));
+            } else {
+                snapshots.remove(key);
+            }
+        }
+        return diff;
+    }
+
+    void invalidate(Path root) {
+        synchronized (snapshots) {
+            snapshots.remove(root.toAbsolutePath().normalize());
+        }
+    }
+
+    void clear() {
+        synchronized (snapshots) {
+            snapshots.clear();
+        }
+    }
+
+    /*
+     * digest of names, sizes, modification times and file keys of all the files under root. Directories only contribute
+     * their names, as their modification time changes also when an ignored path is added.
+     * Returns empty Optional if the tree can't be scanned or contains recently modified files.
+     */
+    private Optional<String> fingerprint(Path root, Set<Path> ignoredPaths) {
+        if (!Files.isDirectory(root)) {
+            return Optional.empty();
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final long settledBefore = TimeUnit.MILLISECONDS.toNanos(FileTimestamps.settledBefore(clock.getAsLong()));
+        final boolean[] settled = {true};
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    final Path relative = root.relativize(dir);
+                    if (ignoredPaths.contains(relative)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    update(digest, "d:" + relative);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    final Path relative = root.relativize(file);
+                    if (ignoredPaths.contains(relative)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final long lastModified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                    if (lastModified > settledBefore) {
+                        settled[0] = false;
+                        return FileVisitResult.TERMINATE;
+                    }
+                    update(digest, "f:" + relative + ":" + attrs.size() + ":" + lastModified + ":" + attrs.fileKey());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.debug("Unable to scan " + root + " for changes", e);
+            return Optional.empty();
+        }
+
+        if (!settled[0]) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debugf("%s contains recently modified files, the changes will not be cached.", root);
+            }
+            return Optional.empty();
+        }
+        return Optional.of(HashUtils.bytesToHexString(digest.digest()));
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static class Snapshot {
+        private final String fingerprint;
+        private final ChangeJournal.Checkpoint checkpoint;
+        private final FsDiff diff;
+
+        Snapshot(String fingerprint, ChangeJournal.Checkpoint checkpoint, FsDiff diff) {
+            this.fingerprint = fingerprint;
+            this.checkpoint = checkpoint;
+            this.diff = diff;
+        }
+
+        boolean matches(Optional<String> fingerprint) {
+            return this.fingerprint != null && fingerprint.isPresent() && this.fingerprint.equals(fingerprint.get());
+        }
+
+        /*
+         * true if only ignored paths were journaled since the snapshot was taken
+         */
+        boolean unchangedSince(Path root, Optional<ChangeJournal.Checkpoint> current, Set<Path> ignoredPaths) {
+            if (this.checkpoint == null || current.isEmpty()) {
+                return false;
+            }
+            return ChangeJournal.changes(root, this.checkpoint, current.get())
+                    .map(paths -> paths.stream().allMatch(path -> isIgnored(Path.of(path), ignoredPaths)))
+                    .orElse(false);
+        }
+
+        private static boolean isIgnored(Path path, Set<Path> ignoredPaths) {
+            return ignoredPaths.stream().anyMatch(path::startsWith);
+        }
+    }
+}
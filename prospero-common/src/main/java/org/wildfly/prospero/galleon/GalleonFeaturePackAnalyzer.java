@@ -34,6 +34,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import org.jboss.galleon.api.Provisioning;
 import org.jboss.galleon.api.config.GalleonProvisioningConfig;
@@ -94,13 +95,19 @@ public class GalleonFeaturePackAnalyzer {
                 LOG.debug("Unable to find wildfly-config-get artifact", e);
             }
 
-            updateHashes(installedDir);
+            artifactCache.flush();
+            // de-duplicate artifacts cached by the Galleon plugin as well
+            final Optional<SharedArtifactStore> sharedStore = SharedArtifactStore.fromSystemProperties();
+            if (sharedStore.isPresent()) {
+                sharedStore.get().shareAll(installedDir.resolve(ArtifactCache.CACHE_FOLDER));
+            }
+            updateHashes(installedDir, artifactCache);
         } finally {
             FileUtils.deleteQuietly(tempInstallationPath.toFile());
         }
     }
 
-    private void updateHashes(Path installedDir) throws IOException {
+    private void updateHashes(Path installedDir, ArtifactCache artifactCache) throws IOException {
         final Path hashesFile = installedDir.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES)
                 .resolve(ArtifactCache.CACHE_FOLDER).resolve(Constants.HASHES);
         final Path cachesDir = installedDir.resolve(ArtifactCache.CACHE_FOLDER);
@@ -108,7 +115,10 @@ public class GalleonFeaturePackAnalyzer {
         StringBuilder sb = new StringBuilder();
         for (File file : cachesDir.toFile().listFiles()) {
             sb.append(file.getName()).append(System.lineSeparator());
-            sb.append(HashUtils.bytesToHexString(HashUtils.hashPath(file.toPath()))).append(System.lineSeparator());
+            // reuse the hash computed when the file was cached, if the file has not been changed since
+            final Optional<String> recordedHash = artifactCache.getVerifiedHash(file.toPath());
+            sb.append(recordedHash.isPresent() ? recordedHash.get() : HashUtils.bytesToHexString(HashUtils.hashPath(file.toPath())))
+                    .append(System.lineSeparator());
         }
         Files.writeString(hashesFile, sb.toString());
     }
@@ -40,6 +40,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import javax.xml.stream.XMLStreamException;
 import org.jboss.galleon.api.GalleonBuilder;
@@ -72,6 +73,7 @@ public class GalleonUtils {
     private static final String OPTION_RESET_EMBEDDED_SYSTEM_PROPERTIES = "jboss-reset-embedded-system-properties";
 
     private static final Logger logger = Logger.getLogger(GalleonUtils.class.getName());
+    private static final FsDiffCache FS_DIFF_CACHE = new FsDiffCache(4, System::currentTimeMillis);
 
     public static void executeGalleon(GalleonExecution execution, Path localRepository) throws ProvisioningException, UnresolvedMavenArtifactException {
         final Map<String, String> substitutedProperties = new HashMap<>();
@@ -298,6 +300,32 @@ public class GalleonUtils {
      * @throws OperationException
      */
     public static FsDiff findChanges(Path root) throws ProvisioningException, OperationException {
+        return findChanges(root, Collections.emptySet());
+    }
+
+    /**
+     * Returns list of files in the installation folder with their status (changed/added/removed)
+     *
+     * The result is re-used by subsequent calls as long as the sizes and modification times of files in the installation
+     * don't change. If the state of the installation files has been recorded, only the files changed since then are
+     * hashed.
+     *
+     * @param root
+     * @param ignoredPaths - paths relative to {@code root} that can change without affecting the result, e.g. temporary files
+     * @return
+     * @throws ProvisioningException
+     * @throws OperationException
+     */
+    public static FsDiff findChanges(Path root, Set<Path> ignoredPaths) throws ProvisioningException, OperationException {
+        return FS_DIFF_CACHE.get(root, ignoredPaths, () -> computeChanges(root, ignoredPaths));
+    }
+
+    private static FsDiff computeChanges(Path root, Set<Path> ignoredPaths) throws ProvisioningException, OperationException {
+        final Optional<FsDiff> recorded = RecordedFsDiff.compute(root, ignoredPaths);
+        if (recorded.isPresent()) {
+            return recorded.get();
+        }
+
         // offline is enough - we just need to read the configuration
         final MavenOptions mavenOptions = MavenOptions.builder()
                 .setOffline(true)
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.Constants;
+import org.jboss.galleon.ProvisioningException;
+import org.jboss.galleon.diff.FsDiff;
+import org.jboss.galleon.diff.FsEntry;
+import org.jboss.galleon.util.HashUtils;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Computes the {@link FsDiff} of a server from its recorded {@link FileStateTree}, so that only the files changed since
+ * the state was recorded are hashed. If the server is watched by a {@link ChangeJournal.Watcher}, these are only the
+ * journaled paths.
+ *
+ * The result is the same as the {@code FsDiff} computed by Galleon - the provisioned state is read from the Galleon
+ * hashes and compared with the server files, excluding the Galleon provisioning state and {@code .glnew} files. The
+ * files that are not part of the recorded state, e.g. the metadata or symbolic links, are hashed by Galleon when
+ * needed.
+ */
+class RecordedFsDiff {
+
+    private static final Logger LOG = Logger.getLogger(RecordedFsDiff.class);
+
+    private static final String GLNEW_SUFFIX = ".glnew";
+
+    private RecordedFsDiff() {
+    }
+
+    /**
+     * @param root - root of the server
+     * @param ignoredPaths - paths relative to {@code root} that are not part of the recorded state, e.g. the update backup
+     * @return the changes in the server, or empty if the state of the server or its Galleon hashes were not recorded
+     */
+    static Optional<FsDiff> compute(Path root, Set<Path> ignoredPaths) throws ProvisioningException {
+        final Path hashesDir = root.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES);
+        if (!Files.isDirectory(hashesDir) || !FileStateTree.isRecorded(root)) {
+            return Optional.empty();
+        }
+
+        try {
+            final FileStateTree state = FileStateTree.scan(root, ignoredPaths);
+            final FsEntry original = new FsEntry(null, hashesDir);
+            readHashes(original);
+            final FsEntry current = new FsEntry(null, root);
+            readFiles(root, current, state);
+            return Optional.of(FsDiff.diff(original, current));
+        } catch (IOException e) {
+            LOG.debug("Unable to compute the changes of " + root + " from the recorded file state", e);
+            return Optional.empty();
+        }
+    }
+
+    /*
+     * the provisioned files, recorded by Galleon as pairs of lines - a name and a hash - in the hashes file of each
+     * directory
+     */
+    private static void readHashes(FsEntry dir) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir.getPath())) {
+            for (Path child : children) {
+                if (child.getFileName().toString().equals(Constants.HASHES)) {
+                    try (BufferedReader reader = Files.newBufferedReader(child)) {
+                        String name;
+                        while ((name = reader.readLine()) != null) {
+                            new FsEntry(dir, name, HashUtils.hexStringToByteArray(reader.readLine()));
+                        }
+                    }
+                } else {
+                    readHashes(new FsEntry(dir, child));
+                }
+            }
+        }
+    }
+
+    private static void readFiles(Path root, FsEntry dir, FileStateTree state) throws IOException {
+        final boolean isRoot = dir.getPath().equals(root);
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir.getPath())) {
+            for (Path child : children) {
+                final String name = child.getFileName().toString();
+                if (name.endsWith(GLNEW_SUFFIX) || isRoot && name.equals(Constants.PROVISIONED_STATE_DIR)) {
+                    continue;
+                }
+                // links are followed by Galleon, their recorded state identifies only the target
+                final Optional<String> hash = Files.isRegularFile(child, LinkOption.NOFOLLOW_LINKS)
+                        ? state.getDigest(toKey(root.relativize(child))) : Optional.empty();
+                if (hash.isPresent()) {
+                    new RecordedEntry(dir, child, HashUtils.hexStringToByteArray(hash.get()));
+                } else {
+                    final FsEntry entry = new FsEntry(dir, child);
+                    if (entry.isDir() && Files.isReadable(child)) {
+                        readFiles(root, entry, state);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String toKey(Path relative) {
+        // FsDiff always uses UNIX separators
+        return relative.toString().replace(File.separator, "/");
+    }
+
+    /*
+     * a file with a known hash, the FsDiff reads the path of the compared files
+     */
+    private static final class RecordedEntry extends FsEntry {
+        private final byte[] hash;
+
+        private RecordedEntry(FsEntry parent, Path path, byte[] hash) {
+            super(parent, path);
+            this.hash = hash;
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash;
+        }
+    }
+}
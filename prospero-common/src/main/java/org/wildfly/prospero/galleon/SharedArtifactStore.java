@@ -0,0 +1,415 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.util.HashUtils;
+import org.jboss.logging.Logger;
+import org.wildfly.prospero.ProsperoLogger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Host-wide, content-addressable store of cached artifacts shared by multiple installations.
+ *
+ * Each stored file is kept in {@code storeDir}/{@code objects} under its SHA-256 hash. Installations reference the
+ * stored files through hardlinks placed in their {@link ArtifactCache#CACHE_FOLDER}, so the layout of the installation
+ * cache is the same as without the store. Each link is recorded in {@code storeDir}/{@code refs}/{@code <hash>}, because
+ * the installation files are linked by other tools as well, e.g. backups or the local Maven repository, so the number of
+ * links of a stored file is not its reference count. A recorded reference is valid while the recorded path is still
+ * linked to the stored file. When installation files are replaced, the stored files they linked to are removed by
+ * {@link #release(Collection)} if they have no valid references left. {@link #collectGarbage()} sweeps the whole store
+ * and is never run implicitly.
+ *
+ * The stored files are read-only, because a change written into a linked file would change it in every installation.
+ * Cached files have to be replaced, never modified in place.
+ *
+ * The store is enabled by setting {@link #SHARED_STORE_PROPERTY} to the location of the store. It requires a
+ * filesystem supporting hardlinks. If an artifact cannot be linked, e.g. because the installation is
+ * on a different filesystem than the store, the artifact is copied into the installation.
+ */
+public class SharedArtifactStore {
+
+    private static final Logger LOG = Logger.getLogger(SharedArtifactStore.class);
+
+    /**
+     * Location of the host-wide artifact store. If not set, the artifacts are copied into each installation.
+     */
+    public static final String SHARED_STORE_PROPERTY = "prospero.cache.shared-store";
+    static final String OBJECTS_DIR = "objects";
+    static final String REFS_DIR = "refs";
+    static final String TEMP_DIR = "tmp";
+    private static final Set<PosixFilePermission> READ_ONLY = PosixFilePermissions.fromString("r--r--r--");
+
+    private final Path objectsDir;
+    private final Path refsDir;
+    private final Path tempDir;
+
+    /**
+     * @return the store configured by {@link #SHARED_STORE_PROPERTY}, or empty {@code Optional} if the store is not
+     * configured or not supported on this system
+     */
+    public static Optional<SharedArtifactStore> fromSystemProperties() {
+        final String location = System.getProperty(SHARED_STORE_PROPERTY);
+        if (location == null || location.isBlank()) {
+            return Optional.empty();
+        }
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("unix")) {
+            ProsperoLogger.ROOT_LOGGER.sharedArtifactStoreNotSupported(location);
+            return Optional.empty();
+        }
+        return Optional.of(new SharedArtifactStore(Path.of(location)));
+    }
+
+    public SharedArtifactStore(Path storeDir) {
+        this.objectsDir = storeDir.resolve(OBJECTS_DIR);
+        this.refsDir = storeDir.resolve(REFS_DIR);
+        this.tempDir = storeDir.resolve(TEMP_DIR);
+    }
+
+    /**
+     * places the content of {@code source} at {@code target}. The {@code target} is linked to the stored copy of the
+     * content if possible.
+     *
+     * @param source - file to be stored
+     * @param target - location of the file in the installation. Replaced if it already exists.
+     * @throws IOException - if unable to store or copy the file
+     */
+    public void link(Path source, Path target) throws IOException {
+        link(source, target, sha256(source));
+    }
+
+    /**
+     * places the content of {@code source} at {@code target}, using already computed hash of the {@code source}.
+     *
+     * @param source - file to be stored
+     * @param target - location of the file in the installation. Replaced if it already exists.
+     * @param sha256 - hex-encoded SHA-256 hash of the {@code source}
+     * @throws IOException - if unable to store or copy the file
+     */
+    public void link(Path source, Path target, String sha256) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (!linkStored(source, target, sha256)) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * replaces {@code files} in the installation with links to their stored copies. Files that cannot be linked and
+     * the cache descriptors are left unchanged.
+     *
+     * @param files - files in the installation
+     * @throws IOException - if unable to store the files
+     */
+    public void share(List<Path> files) throws IOException {
+        for (Path file : files) {
+            // the descriptor is specific to each installation
+            if (Files.isRegularFile(file) && !file.getFileName().toString().equals(ArtifactCache.CACHE_FILENAME)) {
+                linkStored(file, file, sha256(file));
+            }
+        }
+    }
+
+    /**
+     * replaces all the files in the {@code cacheDir} with links to their stored copies.
+     *
+     * @param cacheDir - the {@link ArtifactCache#CACHE_FOLDER} of an installation
+     * @throws IOException - if unable to store the files
+     */
+    public void shareAll(Path cacheDir) throws IOException {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        final List<Path> files;
+        try (Stream<Path> list = Files.list(cacheDir)) {
+            files = list.collect(Collectors.toList());
+        }
+        share(files);
+    }
+
+    /**
+     * finds the stored file {@code file} is linked to. Only files with more than one link are hashed.
+     *
+     * @param file - a file in the installation
+     * @return the stored file, or empty {@code Optional} if {@code file} is not linked to the store
+     * @throws IOException - if unable to read the file
+     */
+    public Optional<Path> findStoredObject(Path file) throws IOException {
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || getLinkCount(file) <= 1) {
+            return Optional.empty();
+        }
+        final Path object = objectPath(sha256(file));
+        return Files.exists(object) && Files.isSameFile(object, file) ? Optional.of(object) : Optional.empty();
+    }
+
+    /**
+     * removes the stored {@code objects} that are not referenced by any installation anymore. Called with the stored
+     * files of replaced installation files, so that only the stored files that lost a reference are checked.
+     *
+     * @param objects - stored files, see {@link #findStoredObject(Path)}
+     * @return number of removed files
+     * @throws IOException - if unable to read the store
+     */
+    public int release(Collection<Path> objects) throws IOException {
+        int removed = 0;
+        for (Path object : objects) {
+            if (removeIfUnreferenced(object)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * removes all stored files that are not referenced by any installation, their references, and leftovers of
+     * interrupted writes. Walks
+     * the whole store, which grows with the number of installations on the host, so it's meant to be run explicitly as
+     * maintenance. Updates release the replaced files with {@link #release(Collection)}.
+     *
+     * @return number of removed files
+     * @throws IOException - if unable to read the store
+     */
+    public int collectGarbage() throws IOException {
+        int removed = 0;
+        if (Files.isDirectory(objectsDir)) {
+            final List<Path> objects;
+            try (Stream<Path> walk = Files.walk(objectsDir)) {
+                objects = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            removed += release(objects);
+        }
+
+        if (Files.isDirectory(refsDir)) {
+            final List<Path> references;
+            try (Stream<Path> walk = Files.walk(refsDir, 2)) {
+                references = walk.filter(dir -> dir.getNameCount() == refsDir.getNameCount() + 2).collect(Collectors.toList());
+            }
+            for (Path dir : references) {
+                // references of objects removed by an interrupted release
+                if (!Files.exists(objectPath(dir.getFileName().toString()))) {
+                    deleteReferences(dir);
+                }
+            }
+        }
+
+        if (Files.isDirectory(tempDir)) {
+            final FileTime staleTime = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS));
+            final List<Path> tempFiles;
+            try (Stream<Path> list = Files.list(tempDir)) {
+                tempFiles = list.collect(Collectors.toList());
+            }
+            for (Path tempFile : tempFiles) {
+                try {
+                    if (Files.getLastModifiedTime(tempFile).compareTo(staleTime) < 0) {
+                        Files.deleteIfExists(tempFile);
+                        removed++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // removed concurrently
+                }
+            }
+        }
+        return removed;
+    }
+
+    private boolean removeIfUnreferenced(Path object) throws IOException {
+        if (countReferences(object) > 0) {
+            return false;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debugf("Removing unreferenced stored artifact %s.", object);
+        }
+        final boolean removed = Files.deleteIfExists(object);
+        deleteReferences(referencesDir(object.getFileName().toString()));
+        return removed;
+    }
+
+    /*
+     * counts the valid references of the stored {@code object}, removing the references that are not valid anymore
+     */
+    private int countReferences(Path object) throws IOException {
+        final Path dir = referencesDir(object.getFileName().toString());
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        final List<Path> references;
+        try (Stream<Path> list = Files.list(dir)) {
+            references = list.collect(Collectors.toList());
+        }
+        int count = 0;
+        for (Path reference : references) {
+            if (isLinked(reference, object)) {
+                count++;
+            } else {
+                Files.deleteIfExists(reference);
+            }
+        }
+        return count;
+    }
+
+    private static boolean isLinked(Path reference, Path object) throws IOException {
+        try {
+            final Path file = Path.of(Files.readString(reference, StandardCharsets.UTF_8));
+            return Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(file, object);
+        } catch (NoSuchFileException e) {
+            // removed concurrently
+            return false;
+        }
+    }
+
+    private static void deleteReferences(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path reference : list.collect(Collectors.toList())) {
+                Files.deleteIfExists(reference);
+            }
+        }
+        try {
+            Files.deleteIfExists(dir);
+        } catch (DirectoryNotEmptyException e) {
+            // referenced again concurrently
+        }
+    }
+
+    /*
+     * records that {@code target} is linked to the stored object with {@code sha256} hash
+     */
+    private Path addReference(String sha256, Path target) throws IOException {
+        final String path = target.toAbsolutePath().normalize().toString();
+        final Path reference = referencesDir(sha256).resolve(sha1(path));
+        Files.createDirectories(reference.getParent());
+        Files.writeString(reference, path, StandardCharsets.UTF_8);
+        return reference;
+    }
+
+    /**
+     * @param file - a file in the installation
+     * @return number of installation files referencing the same stored copy as {@code file}, or {@code 0} if the file
+     * is not stored
+     * @throws IOException - if unable to read the file
+     */
+    public int getReferenceCount(Path file) throws IOException {
+        final Path object = objectPath(sha256(file));
+        return Files.exists(object) && Files.isSameFile(object, file) ? countReferences(object) : 0;
+    }
+
+    private boolean linkStored(Path source, Path target, String sha256) throws IOException {
+        // the stored object might be removed by a concurrent garbage collection before the link is created, retry once
+        for (int attempt = 0; attempt < 2; attempt++) {
+            final Path object = store(source, sha256);
+            final Path reference = addReference(sha256, target);
+            final Path tempLink = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            try {
+                Files.createLink(tempLink, object);
+                Files.move(tempLink, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // a concurrent release could have checked the reference before the link was in place
+                if (Files.exists(reference) && Files.exists(object)) {
+                    return true;
+                }
+                LOG.debugf("Stored artifact %s was released while it was being linked.", object);
+            } catch (NoSuchFileException e) {
+                LOG.debugf(e, "Stored artifact %s was removed before it could be linked.", object);
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.debugf(e, "Unable to link %s to stored artifact %s.", target, object);
+                return false;
+            } finally {
+                Files.deleteIfExists(tempLink);
+            }
+        }
+        return false;
+    }
+
+    private Path store(Path source, String sha256) throws IOException {
+        final Path object = objectPath(sha256);
+        if (Files.exists(object)) {
+            return object;
+        }
+
+        Files.createDirectories(object.getParent());
+        Files.createDirectories(tempDir);
+        final Path tempFile = Files.createTempFile(tempDir, object.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            makeReadOnly(tempFile);
+            // unlike a move, doesn't replace an object stored concurrently, which might already be linked
+            Files.createLink(object, tempFile);
+        } catch (FileAlreadyExistsException e) {
+            // stored concurrently by another installation
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return object;
+    }
+
+    private static void makeReadOnly(Path object) {
+        try {
+            Files.setPosixFilePermissions(object, READ_ONLY);
+        } catch (IOException e) {
+            // e.g. stored by another user, the owner is responsible for the permissions
+            LOG.debugf(e, "Unable to make stored artifact %s read-only.", object);
+        }
+    }
+
+    private Path objectPath(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path referencesDir(String hash) {
+        return refsDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static int getLinkCount(Path file) throws IOException {
+        return (Integer) Files.getAttribute(file, "unix:nlink");
+    }
+
+    private static String sha256(Path file) throws IOException {
+        return FileDigests.of(file, true).getSha256();
+    }
+
+    private static String sha1(String text) {
+        try {
+            return HashUtils.bytesToHexString(MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.wildfly.channel.ChannelMetadataCoordinate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers channel metadata that could not be resolved from the remote repositories, so that
+ * {@link CachedVersionResolver} can use the cached copy without waiting for another timeout.
+ *
+ * A failure is remembered for {@code ttl} milliseconds, after that the metadata is requested from the repositories again.
+ * The same instance is shared by all the resolvers created within one session.
+ */
+class UnresolvedMetadataCache {
+
+    private final long ttl;
+    private final LongSupplier clock;
+    private final Map<String, Long> expiryTimes = new ConcurrentHashMap<>();
+
+    UnresolvedMetadataCache() {
+        this(TimeUnit.SECONDS.toMillis(Long.getLong(CachedVersionResolver.UNRESOLVED_METADATA_TTL_PROPERTY, 300)),
+                System::currentTimeMillis);
+    }
+
+    UnresolvedMetadataCache(long ttl, LongSupplier clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    void markUnresolved(ChannelMetadataCoordinate coordinate) {
+        if (ttl > 0 && coordinate.getUrl() == null) {
+            expiryTimes.put(key(coordinate), clock.getAsLong() + ttl);
+        }
+    }
+
+    boolean isUnresolved(ChannelMetadataCoordinate coordinate) {
+        if (coordinate.getUrl() != null) {
+            return false;
+        }
+        final String key = key(coordinate);
+        final Long expiryTime = expiryTimes.get(key);
+        if (expiryTime == null) {
+            return false;
+        }
+        if (clock.getAsLong() >= expiryTime) {
+            expiryTimes.remove(key, expiryTime);
+            return false;
+        }
+        return true;
+    }
+
+    private static String key(ChannelMetadataCoordinate coordinate) {
+        return String.join(":", coordinate.getGroupId(), coordinate.getArtifactId(), coordinate.getExtension(),
+                coordinate.getClassifier());
+    }
+}
@@ -18,6 +18,7 @@
 package org.wildfly.prospero.installation.git;
 
 import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.api.errors.NoHeadException;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.util.SystemReader;
@@ -40,6 +41,7 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.wildfly.channel.Stream;
 import org.wildfly.prospero.model.ProsperoConfig;
 
@@ -66,6 +68,7 @@ public class GitStorage implements AutoCloseable {
     private final Git git;
     private final Path base;
     private final SavedStateParser savedStateParser;
+    private RevisionIndex revisionIndex;
 
     static {
         // override the SystemReader to ignore git configuration files
@@ -85,21 +88,71 @@ public class GitStorage implements AutoCloseable {
 
     public List<SavedState> getRevisions() throws MetadataException {
         try {
-            final Iterable<RevCommit> call = git.log().call();
-            List<SavedState> history = new ArrayList<>();
-            for (RevCommit revCommit : call) {
-                final String commitMessage = revCommit.getFullMessage();
-                final Instant commitTime = Instant.ofEpochSecond(revCommit.getCommitTime());
-                final String commitHash = revCommit.getName().substring(0, 8);
-                history.add(savedStateParser.read(commitHash, commitTime, commitMessage));
+            final ObjectId head = git.getRepository().resolve(Constants.HEAD);
+            if (head == null) {
+                throw new NoHeadException("No history has been recorded in " + base);
             }
 
+            final RevisionIndex index = getRevisionIndex();
+            final Optional<List<SavedState>> indexed = index.getRevisions(head);
+            if (indexed.isPresent()) {
+                return indexed.get();
+            }
+
+            final List<RevCommit> commits = new ArrayList<>();
+            final List<SavedState> history = new ArrayList<>();
+            try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+                // the message is read only for the commits missing in the index
+                revWalk.setRetainBody(false);
+                revWalk.markStart(revWalk.parseCommit(head));
+                for (RevCommit revCommit : revWalk) {
+                    final Optional<SavedState> state = index.get(revCommit);
+                    if (state.isPresent()) {
+                        history.add(state.get());
+                    } else {
+                        revWalk.parseBody(revCommit);
+                        history.add(readState(revCommit));
+                    }
+                    commits.add(revCommit);
+                }
+            }
+            index.replace(commits, history);
+
             return history;
         } catch (GitAPIException | IOException e) {
             throw ProsperoLogger.ROOT_LOGGER.unableToAccessHistoryStorage(base, e);
         }
     }
 
+    private SavedState readState(RevCommit revCommit) throws IOException {
+        final String commitMessage = revCommit.getFullMessage();
+        final Instant commitTime = Instant.ofEpochSecond(revCommit.getCommitTime());
+        final String commitHash = revCommit.getName().substring(0, 8);
+        return savedStateParser.read(commitHash, commitTime, commitMessage);
+    }
+
+    /*
+     * the index is loaded on first use, most of the operations don't read the history
+     */
+    private RevisionIndex getRevisionIndex() {
+        if (revisionIndex == null) {
+            revisionIndex = RevisionIndex.load(git.getRepository().getDirectory().toPath().resolve(RevisionIndex.INDEX_FILE));
+        }
+        return revisionIndex;
+    }
+
+    /*
+     * adds a new commit to the revision index, so that the history doesn't need to be parsed again
+     */
+    private void indexCommit(RevCommit commit) {
+        try {
+            final RevCommit parent = commit.getParentCount() == 0 ? null : commit.getParent(0);
+            getRevisionIndex().append(parent, commit, readState(commit));
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to index the history record " + commit.getName(), e);
+        }
+    }
+
     public void record() throws MetadataException {
         try {
 
@@ -112,11 +165,12 @@ public class GitStorage implements AutoCloseable {
                 git.add().addFilepattern(CURRENT_VERSION_FILE).call();
                 git.add().addFilepattern(ProsperoMetadataUtils.PROVISIONING_RECORD_XML).call();
                 // adjust the date so that when taking over a non-prosper installation date matches creation
-                git.commit()
+                final RevCommit commit = git.commit()
                         .setAuthor(author)
                         .setCommitter(author)
                         .setMessage(msg)
                         .call();
+                indexCommit(commit);
             } else {
                 recordChange(SavedState.Type.UPDATE);
             }
@@ -155,11 +209,12 @@ public class GitStorage implements AutoCloseable {
 
             String msg = readCommitMessage(commitType);
 
-            git.commit()
+            final RevCommit commit = git.commit()
                     .setAuthor(author)
                     .setCommitter(author)
                     .setMessage(msg)
                     .call();
+            indexCommit(commit);
 
         } catch (IOException | GitAPIException e) {
             throw ProsperoLogger.ROOT_LOGGER.unableToAccessHistoryStorage(base, e);
@@ -182,11 +237,12 @@ public class GitStorage implements AutoCloseable {
         try {
             git.add().addFilepattern(ProsperoMetadataUtils.INSTALLER_CHANNELS_FILE_NAME).call();
             final PersonIdent author = getCommitter();
-            git.commit()
+            final RevCommit commit = git.commit()
                     .setAuthor(author)
                     .setCommitter(author)
                     .setMessage(SavedState.Type.CONFIG_CHANGE.name())
                     .call();
+            indexCommit(commit);
         } catch (GitAPIException e) {
             throw ProsperoLogger.ROOT_LOGGER.unableToAccessHistoryStorage(base, e);
         }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.installation.git;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.wildfly.prospero.ProsperoLogger;
+import org.wildfly.prospero.api.SavedState;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Persisted index of the parsed history records, keyed by the commit id.
+ *
+ * The records are stored oldest first, one JSON document per line, so that a new commit is indexed by appending a line.
+ * The stored history is used only if its latest record is the current HEAD. Otherwise, the records of known commits are
+ * re-used when the index is rebuilt from the log.
+ *
+ * The index is only a cache of the commit messages. If it cannot be read or written, the history is parsed from the
+ * log as if the index didn't exist.
+ */
+class RevisionIndex {
+
+    static final String INDEX_FILE = "prospero-revisions";
+    private static final String HEADER = "prospero-revision-index 1";
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    private final Path file;
+    // commit ids, oldest first
+    private final List<String> ids;
+    private final Map<String, SavedState> states;
+
+    private RevisionIndex(Path file, List<String> ids, Map<String, SavedState> states) {
+        this.file = file;
+        this.ids = ids;
+        this.states = states;
+    }
+
+    /**
+     * reads the index stored in {@code file}. A missing or unreadable index is returned empty.
+     *
+     * @param file - the index file
+     * @return the stored index
+     */
+    static RevisionIndex load(Path file) {
+        final List<String> ids = new ArrayList<>();
+        final Map<String, SavedState> states = new HashMap<>();
+        try {
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(HEADER)) {
+                for (String line : lines.subList(1, lines.size())) {
+                    final JsonNode node = JSON_MAPPER.readTree(line);
+                    final String id = node.get("id").asText();
+                    ids.add(id);
+                    states.put(id, fromJson(node));
+                }
+            } else {
+                ProsperoLogger.ROOT_LOGGER.debug("Ignoring history index with unknown format " + file);
+            }
+        } catch (NoSuchFileException e) {
+            // the history hasn't been indexed yet
+        } catch (IOException | RuntimeException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to read the history index " + file, e);
+            ids.clear();
+            states.clear();
+        }
+        return new RevisionIndex(file, ids, states);
+    }
+
+    /**
+     * @param head - the current HEAD commit
+     * @return the indexed history, newest first, or empty if the index doesn't end at {@code head}
+     */
+    Optional<List<SavedState>> getRevisions(AnyObjectId head) {
+        if (ids.isEmpty() || !ids.get(ids.size() - 1).equals(head.getName())) {
+            return Optional.empty();
+        }
+        final List<SavedState> revisions = new ArrayList<>(ids.size());
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            revisions.add(states.get(ids.get(i)));
+        }
+        return Optional.of(revisions);
+    }
+
+    /**
+     * @param commit - the commit to look up
+     * @return the indexed record of {@code commit}
+     */
+    Optional<SavedState> get(AnyObjectId commit) {
+        return Optional.ofNullable(states.get(commit.getName()));
+    }
+
+    /**
+     * replaces the index with the history walked from the HEAD.
+     *
+     * @param commits - ids of the commits, newest first
+     * @param revisions - records of the {@code commits}
+     */
+    void replace(List<? extends AnyObjectId> commits, List<SavedState> revisions) {
+        ids.clear();
+        states.clear();
+        for (int i = commits.size() - 1; i >= 0; i--) {
+            final String id = commits.get(i).getName();
+            ids.add(id);
+            states.put(id, revisions.get(i));
+        }
+
+        try {
+            final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (String id : ids) {
+                    writer.write(toJson(id, states.get(id)));
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to write the history index " + file, e);
+        }
+    }
+
+    /**
+     * adds a new commit to the index. The commit is indexed only if its parent is the latest indexed commit, otherwise
+     * the index is rebuilt when the history is read next time.
+     *
+     * @param parent - the parent of the new commit or {@code null} if it's the first commit
+     * @param commit - the new commit
+     * @param state - the record of {@code commit}
+     */
+    void append(AnyObjectId parent, AnyObjectId commit, SavedState state) {
+        final String latest = ids.isEmpty() ? null : ids.get(ids.size() - 1);
+        final String expected = parent == null ? null : parent.getName();
+        if (latest == null ? expected != null : !latest.equals(expected)) {
+            return;
+        }
+
+        try {
+            final String line = toJson(commit.getName(), state) + System.lineSeparator();
+            if (latest == null) {
+                Files.writeString(file, HEADER + System.lineSeparator() + line, StandardCharsets.UTF_8);
+            } else {
+                Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            }
+            ids.add(commit.getName());
+            states.put(commit.getName(), state);
+        } catch (IOException e) {
+            ProsperoLogger.ROOT_LOGGER.debug("Unable to write the history index " + file, e);
+        }
+    }
+
+    private static String toJson(String id, SavedState state) throws IOException {
+        final ObjectNode node = JSON_MAPPER.createObjectNode();
+        node.put("id", id);
+        node.put("name", state.getName());
+        node.put("time", state.getTimestamp().getEpochSecond());
+        node.put("type", state.getType().name());
+        node.put("msg", state.getMsg());
+        final ArrayNode versions = node.putArray("versions");
+        for (SavedState.Version version : state.getManifestVersions()) {
+            versions.addObject()
+                    .put("identifier", version.getIdentifier())
+                    .put("physicalVersion", version.getPhysicalVersion())
+                    .put("logicalVersion", version.getLogicalVersion());
+        }
+        return JSON_MAPPER.writeValueAsString(node);
+    }
+
+    private static SavedState fromJson(JsonNode node) {
+        final List<SavedState.Version> versions = new ArrayList<>();
+        for (JsonNode version : node.path("versions")) {
+            versions.add(new SavedState.Version(version.get("identifier").asText(),
+                    version.get("physicalVersion").asText(), textOrNull(version.get("logicalVersion"))));
+        }
+        return new SavedState(node.get("name").asText(), Instant.ofEpochSecond(node.get("time").asLong()),
+                SavedState.Type.valueOf(node.get("type").asText()), textOrNull(node.get("msg")), versions);
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+}
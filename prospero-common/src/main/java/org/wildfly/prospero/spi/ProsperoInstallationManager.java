@@ -45,6 +45,7 @@ import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -125,6 +126,25 @@ public class ProsperoInstallationManager implements InstallationManager {
 
     @Override
     public Collection<FileConflict> verifyCandidate(Path candidatePath, CandidateType candidateType) throws Exception {
+        return map(validateCandidate(candidatePath, candidateType).getConflicts(), ProsperoInstallationManager::mapFileConflict);
+    }
+
+    /**
+     * Verifies the candidate like {@link #verifyCandidate(Path, CandidateType)}, but passes the file conflicts to
+     * {@code conflictConsumer} as they are found instead of collecting them.
+     *
+     * @param candidatePath - path to the candidate server
+     * @param candidateType - the operation the candidate was prepared for
+     * @param conflictConsumer - receives each {@code FileConflict}
+     * @return number of conflicts found
+     * @throws Exception - if the candidate is not valid or the conflicts cannot be determined
+     */
+    public int verifyCandidate(Path candidatePath, CandidateType candidateType, Consumer<FileConflict> conflictConsumer) throws Exception {
+        return validateCandidate(candidatePath, candidateType)
+                .reportConflicts(fileConflict -> conflictConsumer.accept(mapFileConflict(fileConflict)));
+    }
+
+    private ApplyCandidateAction validateCandidate(Path candidatePath, CandidateType candidateType) throws Exception {
         final ApplyCandidateAction applyCandidateAction = actionFactory.getApplyCandidateAction(candidatePath);
         final ApplyCandidateAction.Type operation;
         switch (candidateType) {
@@ -156,7 +176,7 @@ public class ProsperoInstallationManager implements InstallationManager {
                 throw new InvalidUpdateCandidateException(String.format("The candidate server %s is invalid - %s.", candidatePath, validationResult));
         }
 
-        return map(applyCandidateAction.getConflicts(), ProsperoInstallationManager::mapFileConflict);
+        return applyCandidateAction;
     }
 
     private static FileConflict mapFileConflict(org.wildfly.prospero.api.FileConflict fileConflict) {
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.updates;
+
+import org.jboss.logging.Logger;
+import org.wildfly.channel.ArtifactTransferException;
+import org.wildfly.channel.ChannelSession;
+import org.wildfly.channel.MavenArtifact;
+import org.wildfly.prospero.api.ArtifactChange;
+import org.wildfly.prospero.galleon.ArtifactCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An estimate of the disk and network usage of applying an {@link UpdateSet} to an installation, computed without
+ * provisioning the update.
+ *
+ * The installed files of each changed artifact are found in the installation's {@link ArtifactCache}. For each of
+ * them, the artifact with the same extension and classifier in the new version is resolved by the {@link ChannelSession}.
+ * The candidate artifacts are downloaded into the local Maven repository, where they are reused when the update is
+ * provisioned. The artifacts that were not available in the local repository before the estimate count towards the
+ * download size.
+ *
+ * Artifacts added by the update have no installed files, so their files are only known once the update is
+ * provisioned, they are not included in the totals.
+ *
+ * The backup created while applying the update links the files of the installation, so only the replaced and removed
+ * files occupy additional space until the backup is removed.
+ */
+public class UpdateEstimate {
+
+    private static final Logger LOG = Logger.getLogger(UpdateEstimate.class);
+
+    private final int artifactCount;
+    private final int unknownArtifactCount;
+    private final int filesToReplace;
+    private final int filesToRemove;
+    private final long bytesToDownload;
+    private final long bytesToWrite;
+    private final long backupBytes;
+
+    UpdateEstimate(int artifactCount, int unknownArtifactCount, int filesToReplace, int filesToRemove,
+                   long bytesToDownload, long bytesToWrite, long backupBytes) {
+        this.artifactCount = artifactCount;
+        this.unknownArtifactCount = unknownArtifactCount;
+        this.filesToReplace = filesToReplace;
+        this.filesToRemove = filesToRemove;
+        this.bytesToDownload = bytesToDownload;
+        this.bytesToWrite = bytesToWrite;
+        this.backupBytes = backupBytes;
+    }
+
+    /**
+     * estimates the cost of applying {@code updateSet} to the installation at {@code installationDir}.
+     *
+     * @param installationDir - root of the installation
+     * @param localRepository - local Maven repository used to provision the update
+     * @param channelSession - session resolving the artifacts of the update into the {@code localRepository}
+     * @param updateSet - changes to estimate
+     * @return the estimate
+     * @throws IOException - if the installation's artifact cache cannot be read
+     */
+    public static UpdateEstimate of(Path installationDir, Path localRepository, ChannelSession channelSession,
+                                    UpdateSet updateSet) throws IOException {
+        // the cache is only read once, it's not kept in memory
+        final ArtifactCache cache = ArtifactCache.load(installationDir);
+
+        int unknown = 0;
+        int replaced = 0;
+        int removed = 0;
+        long download = 0;
+        long write = 0;
+        long backup = 0;
+        for (ArtifactChange change : updateSet.getArtifactUpdates()) {
+            if (change.isInstalled()) {
+                unknown++;
+                continue;
+            }
+
+            // the name is <groupId>:<artifactId>[:<classifier>]
+            final String[] name = change.getArtifactName().split(":");
+            final List<MavenArtifact> installed = cache.findRecordedArtifacts(name[0], name[1],
+                    name.length > 2 ? name[2] : null, change.getOldVersion().get());
+            final List<Long> installedSizes = sizesOf(installed);
+            if (installed.isEmpty() || installedSizes == null) {
+                // the artifact was not recorded, or the installation was modified since the files were recorded
+                unknown++;
+                continue;
+            }
+
+            if (change.isRemoved()) {
+                for (long size : installedSizes) {
+                    backup += size;
+                    removed++;
+                }
+                continue;
+            }
+
+            final List<Candidate> candidates = resolveCandidates(localRepository, channelSession, installed,
+                    change.getNewVersion().get());
+            if (candidates == null) {
+                unknown++;
+                continue;
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                final Candidate candidate = candidates.get(i);
+                if (candidate.downloaded) {
+                    download += candidate.size;
+                }
+                write += candidate.size;
+                backup += installedSizes.get(i);
+                replaced++;
+            }
+        }
+
+        return new UpdateEstimate(updateSet.getArtifactUpdates().size(), unknown, replaced, removed, download, write,
+                backup);
+    }
+
+    /*
+     * resolves the new version of each {@code installed} artifact, or returns {@code null} if any of them is not
+     * available
+     */
+    private static List<Candidate> resolveCandidates(Path localRepository, ChannelSession channelSession,
+                                                     List<MavenArtifact> installed, String version) throws IOException {
+        final List<Candidate> candidates = new ArrayList<>(installed.size());
+        for (MavenArtifact artifact : installed) {
+            final boolean local = isLocal(localRepository, artifact, version);
+            final MavenArtifact candidate;
+            try {
+                candidate = channelSession.resolveDirectMavenArtifact(artifact.getGroupId(), artifact.getArtifactId(),
+                        artifact.getExtension(), artifact.getClassifier(), version);
+            } catch (ArtifactTransferException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debugf(e, "Unable to resolve %s:%s:%s:%s:%s to estimate the update.", artifact.getGroupId(),
+                            artifact.getArtifactId(), artifact.getExtension(), artifact.getClassifier(), version);
+                }
+                return null;
+            }
+            candidates.add(new Candidate(Files.size(candidate.getFile().toPath()), !local));
+        }
+        return candidates;
+    }
+
+    /*
+     * checks if the {@code version} of the {@code artifact} is already in the {@code localRepository}
+     */
+    private static boolean isLocal(Path localRepository, MavenArtifact artifact, String version) {
+        if (localRepository == null) {
+            return false;
+        }
+        final String classifier = artifact.getClassifier() == null || artifact.getClassifier().isEmpty()
+                ? "" : "-" + artifact.getClassifier();
+        final Path file = localRepository.resolve(artifact.getGroupId().replace('.', '/'))
+                .resolve(artifact.getArtifactId()).resolve(version)
+                .resolve(artifact.getArtifactId() + "-" + version + classifier + "." + artifact.getExtension());
+        return Files.isRegularFile(file);
+    }
+
+    /*
+     * returns the sizes of the {@code artifacts}, or {@code null} if any of the files doesn't exist anymore
+     */
+    private static List<Long> sizesOf(List<MavenArtifact> artifacts) throws IOException {
+        final List<Long> sizes = new ArrayList<>(artifacts.size());
+        for (MavenArtifact artifact : artifacts) {
+            try {
+                sizes.add(Files.size(artifact.getFile().toPath()));
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+        return sizes;
+    }
+
+    private static final class Candidate {
+        private final long size;
+        private final boolean downloaded;
+
+        private Candidate(long size, boolean downloaded) {
+            this.size = size;
+            this.downloaded = downloaded;
+        }
+    }
+
+    /**
+     * @return number of changed artifacts
+     */
+    public int getArtifactCount() {
+        return artifactCount;
+    }
+
+    /**
+     * @return number of changed artifacts which size could not be estimated, they are not included in the totals
+     */
+    public int getUnknownArtifactCount() {
+        return unknownArtifactCount;
+    }
+
+    /**
+     * @return number of installation files that will be replaced by their new versions
+     */
+    public int getFilesToReplace() {
+        return filesToReplace;
+    }
+
+    /**
+     * @return number of installation files that will be removed
+     */
+    public int getFilesToRemove() {
+        return filesToRemove;
+    }
+
+    /**
+     * @return size of the new artifacts that were missing in the local repository
+     */
+    public long getBytesToDownload() {
+        return bytesToDownload;
+    }
+
+    /**
+     * @return size of the new files written into the installation
+     */
+    public long getBytesToWrite() {
+        return bytesToWrite;
+    }
+
+    /**
+     * @return size of the replaced and removed installation files kept by the backup
+     */
+    public long getBackupBytes() {
+        return backupBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateEstimate{" +
+                "artifactCount=" + artifactCount +
+                ", unknownArtifactCount=" + unknownArtifactCount +
+                ", filesToReplace=" + filesToReplace +
+                ", filesToRemove=" + filesToRemove +
+                ", bytesToDownload=" + bytesToDownload +
+                ", bytesToWrite=" + bytesToWrite +
+                ", backupBytes=" + backupBytes +
+                '}';
+    }
+}
@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +39,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -54,6 +56,7 @@ import org.wildfly.prospero.api.FileConflict;
 import org.wildfly.prospero.api.SavedState;
 import org.wildfly.prospero.api.exceptions.InvalidUpdateCandidateException;
 import org.wildfly.prospero.galleon.ArtifactCache;
+import org.wildfly.prospero.galleon.FileStateTree;
 import org.wildfly.prospero.installation.git.GitStorage;
 import org.wildfly.prospero.metadata.ManifestVersionRecord;
 import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
@@ -91,6 +94,12 @@ public class ApplyCandidateActionTest {
                 .skip(METADATA_DIR);
     }
 
+    @After
+    public void tearDown() {
+        System.clearProperty(ApplyCandidateAction.SWAP_APPLY_PROPERTY);
+        System.clearProperty(ApplyCandidateAction.LAZY_BACKUP_PROPERTY);
+    }
+
     @Test
     public void testUpdateNoUserChanges() throws Exception {
         final DirState expectedState = dirBuilder
@@ -110,6 +119,97 @@ public class ApplyCandidateActionTest {
         assertThat(conflicts).isEmpty();
     }
 
+    @Test
+    public void testUpdateReplacesOnlyChangedFiles() throws Exception {
+        creator.newFeaturePack(FeaturePackLocation.fromString(FPL_100).getFPID())
+                .newPackage("p1", true)
+                .writeContent("prod1/p1.txt", "p1 1.0.0")
+                .writeContent("prod1/p2.txt", "p2 1.0.0")
+                .getFeaturePack();
+        creator.newFeaturePack(FeaturePackLocation.fromString(FPL_101).getFPID())
+                .newPackage("p1", true)
+                .writeContent("prod1/p1.txt", "p1 1.0.1")
+                .writeContent("prod1/p2.txt", "p2 1.0.0")
+                .writeContent("prod1/p3.txt", "p3 1.0.1")
+                .getFeaturePack();
+        creator.install();
+
+        install(installationPath, FPL_100);
+        prepareUpdate(updatePath, installationPath, FPL_101);
+        final Object unchangedFileKey = Files.readAttributes(installationPath.resolve("prod1").resolve("p2.txt"), BasicFileAttributes.class).fileKey();
+        new ApplyCandidateAction(installationPath, updatePath).applyUpdate(ApplyCandidateAction.Type.UPDATE);
+
+        dirBuilder
+                .addFile("prod1/p1.txt", "p1 1.0.1")
+                .addFile("prod1/p2.txt", "p2 1.0.0")
+                .addFile("prod1/p3.txt", "p3 1.0.1")
+                .build()
+                .assertState(installationPath);
+        assertEquals(unchangedFileKey, Files.readAttributes(installationPath.resolve("prod1").resolve("p2.txt"), BasicFileAttributes.class).fileKey());
+    }
+
+    @Test
+    public void testUpdateWithLazyBackup() throws Exception {
+        final DirState expectedState = dirBuilder
+                .addFile("prod1/p1.txt", "p1 1.0.1")
+                .build();
+
+        createSimpleFeaturePacks();
+
+        install(installationPath, FPL_100);
+        prepareUpdate(updatePath, installationPath, FPL_101);
+        System.setProperty(ApplyCandidateAction.LAZY_BACKUP_PROPERTY, "true");
+        final List<FileConflict> conflicts = new ApplyCandidateAction(installationPath, updatePath).applyUpdate(ApplyCandidateAction.Type.UPDATE);
+
+        expectedState.assertState(installationPath);
+        assertThat(conflicts).isEmpty();
+        assertThat(installationPath.resolve(ApplyStageBackup.BACKUP_FOLDER)).doesNotExist();
+    }
+
+    @Test
+    public void testUpdateBySwappingStagedInstallation() throws Exception {
+        creator.newFeaturePack(FeaturePackLocation.fromString(FPL_100).getFPID())
+                .newPackage("p1", true)
+                .writeContent("prod1/p1.txt", "p1 1.0.0")
+                .writeContent("prod1/p2.txt", "p2 1.0.0")
+                .writeContent("prod1/p3.txt", "p3 1.0.0")
+                .getFeaturePack();
+        creator.newFeaturePack(FeaturePackLocation.fromString(FPL_101).getFPID())
+                .newPackage("p1", true)
+                .writeContent("prod1/p1.txt", "p1 1.0.1")
+                .writeContent("prod1/p2.txt", "p2 1.0.0")
+                .writeContent("prod1/p3.txt", "p3 1.0.1")
+                .getFeaturePack();
+        creator.install();
+
+        install(installationPath, FPL_100);
+        writeContent("prod1/p3.txt", "user p3");
+        prepareUpdate(updatePath, installationPath, FPL_101);
+        final Object unchangedFileKey = Files.readAttributes(installationPath.resolve("prod1").resolve("p2.txt"), BasicFileAttributes.class).fileKey();
+
+        final Object installationDirKey = Files.readAttributes(installationPath, BasicFileAttributes.class).fileKey();
+
+        System.setProperty(ApplyCandidateAction.SWAP_APPLY_PROPERTY, "true");
+        final List<FileConflict> conflicts = new ApplyCandidateAction(installationPath, updatePath).applyUpdate(ApplyCandidateAction.Type.UPDATE);
+
+        dirBuilder
+                .addFile("prod1/p1.txt", "p1 1.0.1")
+                .addFile("prod1/p2.txt", "p2 1.0.0")
+                .addFile("prod1/p3.txt", "user p3")
+                .addFile("prod1/p3.txt.glnew", "p3 1.0.1")
+                .build()
+                .assertState(installationPath);
+        assertThat(conflicts).containsExactly(FileConflict.userModified("prod1/p3.txt").updateModified().userPreserved());
+        assertThat(Files.readAttributes(installationPath, BasicFileAttributes.class).fileKey()).isNotEqualTo(installationDirKey);
+        // unchanged files are linked into the staged installation
+        assertEquals(unchangedFileKey, Files.readAttributes(installationPath.resolve("prod1").resolve("p2.txt"), BasicFileAttributes.class).fileKey());
+        assertThat(installationPath.getParent().toFile().list())
+                .noneMatch(name -> name.startsWith("." + installationPath.getFileName()));
+        try (GitStorage gitStorage = new GitStorage(installationPath)) {
+            assertEquals(2, gitStorage.getRevisions().size());
+        }
+    }
+
     @Test
     public void testUpdateWithUserChanges() throws Exception {
         final DirState expectedState = dirBuilder
@@ -225,6 +325,9 @@ public class ApplyCandidateActionTest {
         final DirState expectedState = DirState.rootBuilder()
                 .skip("prod1")
                 .skip(METADATA_DIR + "/" + ".git")
+                .skip(METADATA_DIR + "/" + ".cache-index")
+                .skip(GalleonHashesDigest.RECORD_FILE.toString().replace(File.separatorChar, '/'))
+                .skip(FileStateTree.RECORD_FILE.toString().replace(File.separatorChar, '/'))
                 .skip(Constants.PROVISIONED_STATE_DIR)
                 .addFile(METADATA_DIR + "/" + ProsperoMetadataUtils.MANIFEST_FILE_NAME,
                         manifest("manifest " + FPL_101).trim())
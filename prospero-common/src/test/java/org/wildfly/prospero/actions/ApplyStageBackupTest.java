@@ -9,12 +9,15 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.wildfly.prospero.galleon.ChangeJournal;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
@@ -97,6 +100,19 @@ public class ApplyStageBackupTest {
                 .hasContent("test text");
     }
 
+    @Test
+    public void restoreFileReplacedWithSameSize() throws Exception {
+        final Path testFile = createFile("test.txt");
+        createCandidateFile("test.txt");
+
+        backup.recordAll();
+        writeFile(testFile, "TEST TEXT");
+        backup.restore();
+
+        assertThat(testFile)
+                .hasContent("test text");
+    }
+
     @Test
     public void dontTouchUnchangedFiles() throws Exception {
         final Path testFile = createFile("test.txt");
@@ -245,6 +261,48 @@ public class ApplyStageBackupTest {
                 .exists();
     }
 
+    @Test
+    public void restoreFilesInDeletedDirectory() throws Exception {
+        final Path testFile = createFile("test/test.txt");
+        final Path otherFile = createFile("test/other.txt");
+
+        backup.recordAll();
+        FileUtils.deleteDirectory(testFile.getParent().toFile());
+        backup.restore();
+
+        assertThat(testFile)
+                .hasContent("test text");
+        assertThat(otherFile)
+                .hasContent("test text");
+    }
+
+    @Test
+    public void removeAddedFileLinkedInCandidate() throws Exception {
+        final Path testFile = server.resolve("test.txt");
+        createCandidateFile("target.txt");
+        createSymbolicLink(candidate.resolve("test.txt"), candidate.resolve("target.txt"));
+
+        backup.recordAll();
+        writeFile(testFile);
+        backup.restore();
+
+        assertThat(testFile)
+                .doesNotExist();
+    }
+
+    @Test
+    public void keepAddedFileIfCandidateHasDanglingLink() throws Exception {
+        final Path testFile = server.resolve("test.txt");
+        createSymbolicLink(candidate.resolve("test.txt"), candidate.resolve("missing.txt"));
+
+        backup.recordAll();
+        writeFile(testFile);
+        backup.restore();
+
+        assertThat(testFile)
+                .hasContent("changed text");
+    }
+
     @Test
     public void dontRemoveUnchangedFiles() throws Exception {
         final Path testFile = server.resolve("test/test.txt");
@@ -335,6 +393,70 @@ public class ApplyStageBackupTest {
         }
     }
 
+    @Test
+    public void lazyBackupRecordsOnlyChangedFiles() throws Exception {
+        final Path testFile = createFile("test.txt");
+        final Path unchangedFile = createFile("unchanged.txt");
+        final Path addedFile = server.resolve("test/added.txt");
+
+        backup.recordMetadata();
+        backup.record(List.of(testFile, addedFile));
+        writeFile(testFile);
+        Files.createDirectories(addedFile.getParent());
+        writeFile(addedFile);
+
+        assertThat(backupFolder.resolve("unchanged.txt"))
+                .doesNotExist();
+
+        backup.restore();
+
+        assertThat(testFile)
+                .hasContent("test text");
+        assertThat(unchangedFile)
+                .hasContent("test text");
+        assertThat(server.resolve("test"))
+                .doesNotExist();
+    }
+
+    @Test
+    public void lazyBackupRestoresRemovedDirectories() throws Exception {
+        final Path testFile = createFile("test/test.txt");
+        final Path emptyDir = Files.createDirectories(server.resolve("test/empty"));
+
+        backup.recordMetadata();
+        backup.record(List.of(testFile, emptyDir, testFile.getParent()));
+        Files.delete(testFile);
+        Files.delete(emptyDir);
+        Files.delete(testFile.getParent());
+
+        backup.restore();
+
+        assertThat(testFile)
+                .hasContent("test text");
+        assertThat(emptyDir)
+                .isDirectory();
+    }
+
+    @Test
+    public void changeJournalIsNotBackedUp() throws Exception {
+        final Path metadataDir = Files.createDirectories(server.resolve(ProsperoMetadataUtils.METADATA_DIR));
+        Files.writeString(metadataDir.resolve("manifest.yaml"), "manifest");
+        Files.writeString(server.resolve(ChangeJournal.JOURNAL_FILE), "s session\n");
+
+        backup.recordMetadata();
+
+        assertThat(backupFolder.resolve(ProsperoMetadataUtils.METADATA_DIR).resolve("manifest.yaml"))
+                .hasContent("manifest");
+        assertThat(backupFolder.resolve(ChangeJournal.JOURNAL_FILE))
+                .doesNotExist();
+
+        Files.writeString(server.resolve(ChangeJournal.JOURNAL_FILE), "s session\nc test.txt\n");
+        backup.restore();
+
+        assertThat(server.resolve(ChangeJournal.JOURNAL_FILE))
+                .hasContent("s session\nc test.txt\n");
+    }
+
     @Test
     public void skipBackupIfHashesIsNotAvailable() throws Exception {
         final Path testFile = server.resolve("test/test.txt");
@@ -366,6 +488,14 @@ public class ApplyStageBackupTest {
         Files.writeString(testFile, testText);
     }
 
+    private static void createSymbolicLink(Path link, Path target) throws IOException {
+        try {
+            Files.createSymbolicLink(link, target);
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
     private Path createFile(String path) throws IOException {
         final Path testFile = server.resolve(path);
         if (!Files.exists(testFile.getParent())) {
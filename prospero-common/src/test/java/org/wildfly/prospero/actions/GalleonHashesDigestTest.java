@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.jboss.galleon.Constants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GalleonHashesDigestTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void sameRecordsHaveSameRoot() throws Exception {
+        final Path serverOne = server("p1.txt\nabcd1234\n");
+        final Path serverTwo = server("p1.txt\nabcd1234\n");
+
+        assertEquals(GalleonHashesDigest.of(serverOne).getRoot(), GalleonHashesDigest.of(serverTwo).getRoot());
+    }
+
+    @Test
+    public void changedHashChangesRoot() throws Exception {
+        final Path serverOne = server("p1.txt\nabcd1234\n");
+        final Path serverTwo = server("p1.txt\nefgh5678\n");
+
+        assertNotEquals(GalleonHashesDigest.of(serverOne).getRoot(), GalleonHashesDigest.of(serverTwo).getRoot());
+    }
+
+    @Test
+    public void addedDirectoryChangesRoot() throws Exception {
+        final Path serverOne = server("p1.txt\nabcd1234\n");
+        final Path serverTwo = server("p1.txt\nabcd1234\n");
+        Files.createDirectories(hashesRoot(serverTwo).resolve("prod2"));
+
+        assertNotEquals(GalleonHashesDigest.of(serverOne).getRoot(), GalleonHashesDigest.of(serverTwo).getRoot());
+    }
+
+    @Test
+    public void recordedDigestsAreReusedUntilFileChanges() throws Exception {
+        final Path server = server("p1.txt\nabcd1234\n");
+        final String root = GalleonHashesDigest.of(server).getRoot();
+        final Path recordFile = server.resolve(GalleonHashesDigest.RECORD_FILE);
+        assertTrue(Files.exists(recordFile));
+
+        // replace the recorded digest of prod1 - if the file is not read again, the fake digest is used
+        final List<String> fakeRecord = Files.readAllLines(recordFile).stream()
+                .map(line -> line.endsWith("prod1/" + Constants.HASHES) ? "0000" + line.substring(4) : line)
+                .collect(Collectors.toList());
+        Files.write(recordFile, fakeRecord);
+        assertNotEquals(root, GalleonHashesDigest.of(server).getRoot());
+
+        // a change of the file invalidates the recorded digest
+        final Path hashesFile = hashesRoot(server).resolve("prod1").resolve(Constants.HASHES);
+        Files.setLastModifiedTime(hashesFile, FileTime.fromMillis(Files.getLastModifiedTime(hashesFile).toMillis() + 10_000));
+        assertEquals(root, GalleonHashesDigest.of(server).getRoot());
+    }
+
+    @Test
+    public void recentlyModifiedFilesAreNotRecorded() throws Exception {
+        final Path server = server("p1.txt\nabcd1234\n");
+        final Path hashesFile = hashesRoot(server).resolve("prod1").resolve(Constants.HASHES);
+        Files.setLastModifiedTime(hashesFile, FileTime.fromMillis(System.currentTimeMillis()));
+
+        GalleonHashesDigest.of(server);
+
+        // a file modified within the timestamp granularity could be rewritten without changing its size and mtime
+        assertThat(Files.readAllLines(server.resolve(GalleonHashesDigest.RECORD_FILE)))
+                .noneMatch(line -> line.endsWith("prod1/" + Constants.HASHES))
+                .anyMatch(line -> line.endsWith(" " + Constants.HASHES));
+    }
+
+    private Path server(String prod1Hashes) throws Exception {
+        final Path server = temp.newFolder().toPath();
+        Files.createDirectories(server.resolve(ProsperoMetadataUtils.METADATA_DIR));
+        final Path hashesRoot = Files.createDirectories(hashesRoot(server));
+        Files.writeString(hashesRoot.resolve(Constants.HASHES), "root.txt\nabcd1234\n");
+        Files.createDirectories(hashesRoot.resolve("prod1"));
+        Files.writeString(hashesRoot.resolve("prod1").resolve(Constants.HASHES), prod1Hashes);
+        // only files that were not modified recently are recorded
+        final FileTime settled = FileTime.fromMillis(System.currentTimeMillis() - 10_000);
+        Files.setLastModifiedTime(hashesRoot.resolve(Constants.HASHES), settled);
+        Files.setLastModifiedTime(hashesRoot.resolve("prod1").resolve(Constants.HASHES), settled);
+        return server;
+    }
+
+    private static Path hashesRoot(Path server) {
+        return server.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.jboss.galleon.Constants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GalleonHashesRecordTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void readRecordedHashes() throws Exception {
+        final Path server = temp.newFolder().toPath();
+        final Path hashesRoot = Files.createDirectories(server.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES));
+        Files.writeString(hashesRoot.resolve(Constants.HASHES), "root.txt\nabcd1234\n");
+        Files.createDirectories(hashesRoot.resolve("prod1").resolve("sub"));
+        Files.writeString(hashesRoot.resolve("prod1").resolve("sub").resolve(Constants.HASHES), "p1.txt\nefgh5678\np2.txt\n1234abcd\n");
+
+        final GalleonHashesRecord record = GalleonHashesRecord.read(server);
+
+        assertEquals("abcd1234", record.getHash("root.txt"));
+        assertEquals("efgh5678", record.getHash("prod1/sub/p1.txt"));
+        assertEquals("1234abcd", record.getHash("prod1/sub/p2.txt"));
+        assertNull(record.getHash("prod1/sub"));
+        assertNull(record.getHash("p1.txt"));
+    }
+
+    @Test
+    public void serverWithoutRecordHasNoHashes() throws Exception {
+        final GalleonHashesRecord record = GalleonHashesRecord.read(temp.newFolder().toPath());
+
+        assertNull(record.getHash("root.txt"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ParallelFileWalkerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = temp.newFolder("root").toPath();
+        for (String dir : List.of("a", "b", "c")) {
+            for (int i = 0; i < 10; i++) {
+                final Path file = root.resolve(dir).resolve("sub" + i).resolve("file.txt");
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, dir + i);
+            }
+        }
+    }
+
+    @Test
+    public void directoriesArePostVisitedAfterTheirEntries() throws Exception {
+        final Set<Path> visited = ConcurrentHashMap.newKeySet();
+        final List<Path> postVisitedTooEarly = new CopyOnWriteArrayList<>();
+
+        new ParallelFileWalker(4).walk(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                visited.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                try (var entries = Files.list(dir)) {
+                    if (!entries.allMatch(visited::contains)) {
+                        postVisitedTooEarly.add(dir);
+                    }
+                }
+                visited.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        assertThat(visited)
+                .hasSize(3 * 10 * 2 + 3 + 1)
+                .contains(root.resolve("b").resolve("sub7").resolve("file.txt"));
+        assertThat(postVisitedTooEarly).isEmpty();
+    }
+
+    @Test
+    public void skippedDirectoriesAreNotWalked() throws Exception {
+        final Set<Path> visited = ConcurrentHashMap.newKeySet();
+
+        new ParallelFileWalker(4).walk(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.equals(root.resolve("b")) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                visited.add(root.relativize(file).getName(0));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        assertThat(visited).containsExactlyInAnyOrder(Path.of("a"), Path.of("c"));
+    }
+
+    @Test
+    public void firstFailureOfSequentialWalkIsReported() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> new ParallelFileWalker(4).walk(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (file.getParent().getFileName().toString().equals("sub3")) {
+                        throw new IOException(root.relativize(file).toString());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            }))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage(Path.of("a", "sub3", "file.txt").toString())
+                    .satisfies(e -> assertThat(e.getSuppressed()).hasSize(2));
+        }
+    }
+
+    @Test
+    public void otherTreesAreWalkedInParallel() throws Exception {
+        // dirN has sub-directories dir(N * 10 + 1) ... dir(N * 10 + 3)
+        final Set<Integer> visited = ConcurrentHashMap.newKeySet();
+        final Set<Integer> postVisited = ConcurrentHashMap.newKeySet();
+
+        new ParallelFileWalker(4).walk(0, new ParallelFileWalker.TreeVisitor<Integer>() {
+            @Override
+            public boolean visitDirectory(Integer dir, Consumer<Integer> subdirectories) {
+                visited.add(dir);
+                if (dir < 10) {
+                    for (int i = 1; i <= 3; i++) {
+                        subdirectories.accept(dir * 10 + i);
+                    }
+                }
+                return dir % 10 != 2;
+            }
+
+            @Override
+            public void postVisitDirectory(Integer dir) {
+                postVisited.add(dir);
+            }
+        });
+
+        assertThat(visited).containsExactlyInAnyOrder(0, 1, 2, 3, 11, 12, 13, 21, 22, 23, 31, 32, 33);
+        assertThat(postVisited).containsExactlyInAnyOrder(0, 1, 3, 11, 13, 21, 23, 31, 33);
+    }
+}
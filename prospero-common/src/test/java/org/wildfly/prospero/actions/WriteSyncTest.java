@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.actions;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.prospero.api.exceptions.OperationException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WriteSyncTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ApplyCandidateAction.APPLY_SYNC_PROPERTY);
+    }
+
+    @Test
+    public void writesAreSyncedOncePerDirectoryOnCommit() throws Exception {
+        final Path root = temp.newFolder().toPath();
+        final Path dir = Files.createDirectories(root.resolve("dir"));
+        final WriteSync writeSync = new WriteSync(WriteSync.Mode.PHASE);
+
+        writeSync.written(Files.writeString(dir.resolve("a.txt"), "a"));
+        writeSync.written(Files.writeString(dir.resolve("b.txt"), "b"));
+        writeSync.entryChanged(root.resolve("removed.txt"));
+
+        assertThat(writeSync.pendingFiles()).isEqualTo(2);
+        assertThat(writeSync.pendingDirectories()).isEqualTo(2);
+
+        writeSync.commit();
+
+        assertThat(writeSync.pendingFiles()).isZero();
+        assertThat(writeSync.pendingDirectories()).isZero();
+    }
+
+    @Test
+    public void writtenTreeRecordsAllFiles() throws Exception {
+        final Path root = temp.newFolder().toPath();
+        final Path tree = Files.createDirectories(root.resolve("tree").resolve("sub"));
+        Files.writeString(tree.resolve("a.txt"), "a");
+        Files.writeString(tree.getParent().resolve("b.txt"), "b");
+        final WriteSync writeSync = new WriteSync(WriteSync.Mode.PHASE);
+
+        writeSync.writtenTree(root.resolve("tree"));
+
+        assertThat(writeSync.pendingFiles()).isEqualTo(2);
+        // tree/sub, tree and root
+        assertThat(writeSync.pendingDirectories()).isEqualTo(3);
+    }
+
+    @Test
+    public void noWritesAreRecordedWithoutSync() throws Exception {
+        final Path file = temp.newFile().toPath();
+        final WriteSync writeSync = WriteSync.fromSystemProperties();
+
+        writeSync.written(file);
+
+        assertThat(writeSync.getMode()).isEqualTo(WriteSync.Mode.NONE);
+        assertThat(writeSync.pendingFiles()).isZero();
+        assertThat(writeSync.pendingDirectories()).isZero();
+    }
+
+    @Test
+    public void strictModeDoesNotDeferWrites() throws Exception {
+        final Path file = temp.newFile().toPath();
+        System.setProperty(ApplyCandidateAction.APPLY_SYNC_PROPERTY, "Strict");
+        final WriteSync writeSync = WriteSync.fromSystemProperties();
+
+        writeSync.written(file);
+
+        assertThat(writeSync.getMode()).isEqualTo(WriteSync.Mode.STRICT);
+        assertThat(writeSync.pendingFiles()).isZero();
+        assertThat(writeSync.pendingDirectories()).isZero();
+    }
+
+    @Test
+    public void invalidModeIsRejected() {
+        System.setProperty(ApplyCandidateAction.APPLY_SYNC_PROPERTY, "always");
+
+        assertThatThrownBy(WriteSync::fromSystemProperties)
+                .isInstanceOf(OperationException.class)
+                .hasMessageContaining("PRSP000279")
+                .hasMessageContaining(ApplyCandidateAction.APPLY_SYNC_PROPERTY);
+    }
+}
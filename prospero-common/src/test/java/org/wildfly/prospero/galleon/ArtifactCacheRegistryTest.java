@@ -0,0 +1,182 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ArtifactCacheRegistryTest {
+
+    private static final Path SERVER_ONE = Path.of("server-one");
+    private static final Path SERVER_TWO = Path.of("server-two");
+    private static final Path SERVER_THREE = Path.of("server-three");
+
+    private final AtomicLong now = new AtomicLong();
+    // references to the evicted instances, cleared to simulate the instances being garbage collected
+    private final List<Reference<ArtifactCache>> evictedReferences = new CopyOnWriteArrayList<>();
+    private ArtifactCacheRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new ArtifactCacheRegistry(2, 1000, now::get, cache -> {
+            final WeakReference<ArtifactCache> reference = new WeakReference<>(cache);
+            evictedReferences.add(reference);
+            return reference;
+        });
+    }
+
+    @Test
+    public void returnsLoadedInstance() throws Exception {
+        final ArtifactCache cache = registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+
+        assertThat(registry.get(SERVER_ONE, p -> mock(ArtifactCache.class)))
+                .isSameAs(cache);
+        assertStatistics(1, 1, 0, 1);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedInstanceWhenFull() throws Exception {
+        final ArtifactCache one = registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+        final ArtifactCache two = registry.get(SERVER_TWO, p -> mock(ArtifactCache.class));
+        registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+
+        registry.get(SERVER_THREE, p -> mock(ArtifactCache.class));
+        verify(two).awaitJournal();
+        releaseEvictedInstances();
+
+        assertThat(registry.get(SERVER_ONE, p -> mock(ArtifactCache.class)))
+                .isSameAs(one);
+        assertThat(registry.get(SERVER_TWO, p -> mock(ArtifactCache.class)))
+                .isNotSameAs(two);
+    }
+
+    @Test
+    public void returnsEvictedInstanceStillInUse() throws Exception {
+        final ArtifactCache one = registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+        registry.get(SERVER_TWO, p -> mock(ArtifactCache.class));
+        registry.get(SERVER_THREE, p -> mock(ArtifactCache.class));
+
+        assertThat(registry.get(SERVER_ONE, p -> mock(ArtifactCache.class)))
+                .isSameAs(one);
+        assertStatistics(1, 3, 2, 2);
+    }
+
+    @Test
+    public void evictsIdleInstances() throws Exception {
+        final ArtifactCache one = registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+        now.set(500);
+        final ArtifactCache two = registry.get(SERVER_TWO, p -> mock(ArtifactCache.class));
+
+        now.set(1200);
+
+        assertThat(registry.get(SERVER_TWO, p -> mock(ArtifactCache.class)))
+                .isSameAs(two);
+        assertStatistics(1, 2, 1, 1);
+        verify(one).awaitJournal();
+        releaseEvictedInstances();
+        assertThat(registry.get(SERVER_ONE, p -> mock(ArtifactCache.class)))
+                .isNotSameAs(one);
+    }
+
+    @Test
+    public void concurrentRequestsWaitForSingleLoad() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final ArtifactCacheRegistry.Loader slowLoader = p -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return mock(ArtifactCache.class);
+        };
+
+        final CompletableFuture<ArtifactCache> first = CompletableFuture.supplyAsync(() -> get(SERVER_ONE, slowLoader));
+        loading.await(10, TimeUnit.SECONDS);
+        final CompletableFuture<ArtifactCache> second = CompletableFuture.supplyAsync(() -> get(SERVER_ONE, slowLoader));
+
+        // other installations are not blocked by the load
+        registry.get(SERVER_TWO, p -> mock(ArtifactCache.class));
+
+        release.countDown();
+        assertThat(second.get(10, TimeUnit.SECONDS)).isSameAs(first.get(10, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void failedLoadIsNotRegistered() throws Exception {
+        assertThatThrownBy(() -> registry.get(SERVER_ONE, p -> {
+            throw new IOException("corrupt");
+        })).isInstanceOf(IOException.class).hasMessage("corrupt");
+
+        final ArtifactCache one = registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+        assertThat(one).isNotNull();
+        assertStatistics(0, 2, 0, 1);
+    }
+
+    @Test
+    public void clearReleasesAllInstances() throws Exception {
+        final ArtifactCache one = registry.get(SERVER_ONE, p -> mock(ArtifactCache.class));
+
+        registry.clear();
+
+        verify(one).awaitJournal();
+        assertStatistics(0, 1, 0, 0);
+    }
+
+    private ArtifactCache get(Path installationDir, ArtifactCacheRegistry.Loader loader) {
+        try {
+            return registry.get(installationDir, loader);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void releaseEvictedInstances() {
+        evictedReferences.forEach(Reference::clear);
+    }
+
+    private void assertStatistics(long hits, long misses, long evictions, int size) {
+        final ArtifactCache.RegistryStatistics statistics = registry.getStatistics();
+        assertEquals(hits, statistics.getHits());
+        assertEquals(misses, statistics.getMisses());
+        assertEquals(evictions, statistics.getEvictions());
+        assertEquals(size, statistics.getSize());
+    }
+}
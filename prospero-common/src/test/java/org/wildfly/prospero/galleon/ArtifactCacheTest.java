@@ -17,6 +17,7 @@
 
 package org.wildfly.prospero.galleon;
 
+import org.jboss.galleon.util.HashUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -25,15 +26,28 @@ import org.wildfly.channel.MavenArtifact;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
 public class ArtifactCacheTest {
 
@@ -85,6 +99,7 @@ public class ArtifactCacheTest {
     @Test
     public void recordCreatesCacheListIfNotPresent() throws Exception {
         cache.record(anArtifact, installationDir.resolve("target.jar"));
+        cache.flush();
 
         final String line = Files.readString(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME));
         assertThat(line)
@@ -98,6 +113,7 @@ public class ArtifactCacheTest {
         cache.record(anArtifact, installationDir.resolve("target.jar"));
         cache.record(otherArtifact, installationDir.resolve("target2.jar"));
         cache.record(anArtifact, installationDir.resolve("target3.jar"));
+        cache.flush();
 
         final List<String> lines = Files.readAllLines(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME));
         assertEquals(2, lines.size());
@@ -110,6 +126,7 @@ public class ArtifactCacheTest {
     @Test
     public void cacheAddsArtifactToCacheFolderAndRecordsIt() throws Exception {
         cache.cache(anArtifact);
+        cache.flush();
 
         final List<String> line = Files.readAllLines(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME));
         assertEquals(1, line.size());
@@ -156,6 +173,7 @@ public class ArtifactCacheTest {
     public void cacheRecordsArtifactsInAlphabeticOrder() throws Exception {
         cache.cache(otherArtifact);
         cache.cache(anArtifact);
+        cache.flush();
 
         final List<String> line = Files.readAllLines(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME));
         assertEquals(2, line.size());
@@ -164,4 +182,395 @@ public class ArtifactCacheTest {
         assertThat(line.get(1))
                 .contains(otherArtifact.getGroupId() + ":" + ARTIFACT_ID);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void recordedArtifactsAreReadFromJournalIfCacheWasNotFlushed() throws Exception {
+        cache.cache(anArtifact);
+        ArtifactCache.cleanInstancesCache();
+
+        final ArtifactCache reloaded = ArtifactCache.getInstance(installationDir);
+
+        assertTrue(reloaded.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void flushCompactsJournalIntoIndex() throws Exception {
+        cache.cache(anArtifact);
+        cache.awaitJournal();
+        assertThat(installationDir.resolve(ArtifactCacheIndex.INDEX_FOLDER).resolve(ArtifactCacheIndex.JOURNAL_FILENAME))
+                .exists();
+
+        cache.flush();
+
+        assertThat(installationDir.resolve(ArtifactCacheIndex.INDEX_FOLDER).resolve(ArtifactCacheIndex.JOURNAL_FILENAME))
+                .doesNotExist();
+        assertThat(installationDir.resolve(ArtifactCacheIndex.INDEX_FOLDER).resolve(ArtifactCacheIndex.INDEX_FILENAME))
+                .exists();
+        ArtifactCache.cleanInstancesCache();
+        assertTrue(ArtifactCache.getInstance(installationDir).getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void recordMergesDescriptorChangedOutsideOfCache() throws Exception {
+        cache.cache(anArtifact);
+        cache.flush();
+        final Path cacheList = installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME);
+        Files.writeString(cacheList, "org.foo:bar:jar:1.0.0::abcd::foo/bar.jar\n");
+
+        cache.record(otherArtifact, installationDir.resolve("target2.jar"));
+        cache.flush();
+
+        assertThat(Files.readAllLines(cacheList))
+                .hasSize(3)
+                .anyMatch(l -> l.startsWith("org.foo:bar:jar:1.0.0::abcd::foo/bar.jar"))
+                .anyMatch(l -> l.startsWith(GROUP_ID + ":" + ARTIFACT_ID))
+                .anyMatch(l -> l.startsWith(GROUP_ID + "Two:" + ARTIFACT_ID));
+    }
+
+    @Test
+    public void staleIndexIsRebuiltFromDescriptor() throws Exception {
+        cache.cache(anArtifact);
+        cache.flush();
+        Files.writeString(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME), "");
+        ArtifactCache.cleanInstancesCache();
+
+        final ArtifactCache reloaded = ArtifactCache.getInstance(installationDir);
+
+        assertEquals(Optional.empty(), reloaded.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION));
+    }
+
+    @Test
+    public void getArtifactTrustsVerifiedFileState() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+
+        // change the content without changing size, modification time or the inode
+        final FileTime lastModified = Files.getLastModifiedTime(cachedFile);
+        Files.writeString(cachedFile, "bar");
+        Files.setLastModifiedTime(cachedFile, lastModified);
+
+        assertTrue(cache.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void getArtifactRehashesInParanoidMode() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+
+        final FileTime lastModified = Files.getLastModifiedTime(cachedFile);
+        Files.writeString(cachedFile, "bar");
+        Files.setLastModifiedTime(cachedFile, lastModified);
+
+        System.setProperty(ArtifactCache.PARANOID_VERIFICATION_PROPERTY, "true");
+        try {
+            assertEquals(Optional.empty(), cache.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION));
+        } finally {
+            System.clearProperty(ArtifactCache.PARANOID_VERIFICATION_PROPERTY);
+        }
+    }
+
+    @Test
+    public void getArtifactRehashesIfFileStateChanged() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+
+        Files.writeString(cachedFile, "bar");
+
+        assertEquals(Optional.empty(), cache.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION));
+    }
+
+    @Test
+    public void verifiedFileStateIsPersisted() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+        cache.flush();
+        ArtifactCache.cleanInstancesCache();
+        cache = ArtifactCache.getInstance(installationDir);
+
+        final FileTime lastModified = Files.getLastModifiedTime(cachedFile);
+        Files.writeString(cachedFile, "bar");
+        Files.setLastModifiedTime(cachedFile, lastModified);
+
+        assertTrue(cache.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void getArtifactDoesntReturnRemovedFile() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+
+        Files.delete(cachedFile);
+
+        assertEquals(Optional.empty(), cache.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION));
+    }
+
+    @Test
+    public void artifactsCanBeRecordedConcurrently() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final MavenArtifact artifact = new MavenArtifact(GROUP_ID, ARTIFACT_ID + i, EXTENSION, CLASSIFIER, VERSION,
+                        temp.newFile("test" + i + ".jar"));
+                tasks.add(executor.submit(() -> {
+                    cache.cache(artifact);
+                    return cache.getArtifact(GROUP_ID, artifact.getArtifactId(), EXTENSION, CLASSIFIER, VERSION);
+                }));
+            }
+            for (Future<?> task : tasks) {
+                assertThat((Optional<?>) task.get()).isPresent();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        cache.flush();
+
+        final List<String> lines = Files.readAllLines(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME));
+        assertThat(lines)
+                .hasSize(100)
+                .isSorted();
+        ArtifactCache.cleanInstancesCache();
+        assertTrue(ArtifactCache.getInstance(installationDir).getArtifact(GROUP_ID, ARTIFACT_ID + 42, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void cachedArtifactHashIsAvailableWithoutVerification() throws Exception {
+        Files.writeString(anArtifact.getFile().toPath(), "foo");
+        Files.setLastModifiedTime(anArtifact.getFile().toPath(), FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+
+        cache.cache(anArtifact);
+
+        final Path cachedFile = installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(anArtifact.getFile().getName());
+        assertEquals(Optional.of(HashUtils.hashFile(cachedFile)), cache.getVerifiedHash(cachedFile));
+    }
+
+    @Test
+    public void verifiedHashIsNotReturnedForChangedFile() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+        assertTrue(cache.getVerifiedHash(cachedFile).isPresent());
+
+        Files.writeString(cachedFile, "bar");
+
+        assertEquals(Optional.empty(), cache.getVerifiedHash(cachedFile));
+    }
+
+    @Test
+    public void verifiedHashIsAvailableAfterReload() throws Exception {
+        final Path cachedFile = cacheSettledArtifact();
+        final Optional<String> hash = cache.getVerifiedHash(cachedFile);
+        assertTrue(hash.isPresent());
+        cache.flush();
+
+        ArtifactCache.cleanInstancesCache();
+
+        assertEquals(hash, ArtifactCache.getInstance(installationDir).getVerifiedHash(cachedFile));
+    }
+
+    @Test
+    public void verifiedHashIsNotReturnedForUnknownFile() throws Exception {
+        final Path otherFile = installationDir.resolve("other.jar");
+        Files.writeString(otherFile, "foo");
+
+        assertEquals(Optional.empty(), cache.getVerifiedHash(otherFile));
+        assertEquals(Optional.empty(), cache.getVerifiedHash(anArtifact.getFile().toPath()));
+    }
+
+    @Test
+    public void updateFromCandidateReplacesOnlyChangedFiles() throws Exception {
+        final MavenArtifact thirdArtifact = new MavenArtifact(GROUP_ID + "Three", ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION, temp.newFile("testThree.jar"));
+        Files.writeString(anArtifact.getFile().toPath(), "unchanged");
+        Files.writeString(otherArtifact.getFile().toPath(), "removed");
+        cache.cache(anArtifact);
+        cache.cache(otherArtifact);
+        cache.flush();
+        final Path installationCache = installationDir.resolve(ArtifactCache.CACHE_FOLDER);
+        final Object unchangedFileKey = Files.readAttributes(installationCache.resolve("test.jar"), BasicFileAttributes.class).fileKey();
+
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        final ArtifactCache candidateCache = ArtifactCache.getInstance(candidateDir);
+        Files.writeString(thirdArtifact.getFile().toPath(), "added");
+        candidateCache.cache(anArtifact);
+        candidateCache.cache(thirdArtifact);
+        candidateCache.flush();
+
+        final List<Path> updated = ArtifactCache.updateFromCandidate(candidateDir, installationDir);
+
+        assertThat(updated).containsExactly(installationCache.resolve("testThree.jar"), installationCache.resolve(ArtifactCache.CACHE_FILENAME));
+        assertEquals(unchangedFileKey, Files.readAttributes(installationCache.resolve("test.jar"), BasicFileAttributes.class).fileKey());
+        assertThat(installationCache.resolve("testThree.jar")).hasContent("added");
+        assertThat(installationCache.resolve("testTwo.jar")).doesNotExist();
+        assertThat(installationCache.resolve(ArtifactCache.CACHE_FILENAME))
+                .hasSameTextualContentAs(candidateDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(ArtifactCache.CACHE_FILENAME));
+
+        final ArtifactCache reloaded = ArtifactCache.getInstance(installationDir);
+        assertTrue(reloaded.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+        assertTrue(reloaded.getArtifact(thirdArtifact.getGroupId(), ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+        assertEquals(Optional.empty(), reloaded.getArtifact(otherArtifact.getGroupId(), ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION));
+    }
+
+    @Test
+    public void updateFromCandidateReplacesFileWithChangedContent() throws Exception {
+        Files.writeString(anArtifact.getFile().toPath(), "foo");
+        cache.cache(anArtifact);
+        cache.flush();
+
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        Files.writeString(anArtifact.getFile().toPath(), "bar");
+        final ArtifactCache candidateCache = ArtifactCache.getInstance(candidateDir);
+        candidateCache.cache(anArtifact);
+        candidateCache.flush();
+
+        ArtifactCache.updateFromCandidate(candidateDir, installationDir);
+
+        assertThat(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve("test.jar")).hasContent("bar");
+        assertTrue(ArtifactCache.getInstance(installationDir).getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void updateFromCandidateWithoutCacheRemovesInstallationCache() throws Exception {
+        cache.cache(anArtifact);
+        cache.flush();
+
+        ArtifactCache.updateFromCandidate(temp.newFolder("candidate").toPath(), installationDir);
+
+        assertThat(installationDir.resolve(ArtifactCache.CACHE_FOLDER)).doesNotExist();
+        assertEquals(Optional.empty(), ArtifactCache.getInstance(installationDir).getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION));
+    }
+
+    @Test
+    public void updateFromCandidateReleasesReplacedSharedArtifacts() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+        final SharedArtifactStore store = new SharedArtifactStore(temp.newFolder("store").toPath());
+        final Path installationCache = installationDir.resolve(ArtifactCache.CACHE_FOLDER);
+        Files.writeString(anArtifact.getFile().toPath(), "foo");
+        cache.cache(anArtifact);
+        cache.flush();
+        store.share(List.of(installationCache.resolve("test.jar")));
+        final Path replacedObject = store.findStoredObject(installationCache.resolve("test.jar")).get();
+
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        Files.writeString(anArtifact.getFile().toPath(), "bar");
+        final ArtifactCache candidateCache = ArtifactCache.getInstance(candidateDir);
+        candidateCache.cache(anArtifact);
+        candidateCache.flush();
+
+        ArtifactCache.updateFromCandidate(candidateDir, installationDir, store);
+
+        assertThat(installationCache.resolve("test.jar")).hasContent("bar");
+        assertThat(replacedObject).doesNotExist();
+        assertThat(store.findStoredObject(installationCache.resolve("test.jar"))).isPresent();
+    }
+
+    @Test
+    public void candidateCacheIsNotKeptInMemory() throws Exception {
+        Files.writeString(anArtifact.getFile().toPath(), "foo");
+        cache.cache(anArtifact);
+        cache.flush();
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        final ArtifactCache candidateCache = ArtifactCache.getInstance(candidateDir);
+        candidateCache.cache(anArtifact);
+        candidateCache.flush();
+        ArtifactCache.cleanInstancesCache();
+
+        ArtifactCache.linkUnchangedArtifacts(installationDir, candidateDir);
+        // only the installation's cache is registered
+        assertEquals(1, ArtifactCache.getRegistryStatistics().getSize());
+
+        ArtifactCache.updateFromCandidate(candidateDir, installationDir);
+        // the installation's cache is reloaded when requested next time
+        assertEquals(0, ArtifactCache.getRegistryStatistics().getSize());
+    }
+
+    @Test
+    public void loadedCacheIsNotRegistered() throws Exception {
+        Files.writeString(anArtifact.getFile().toPath(), "foo");
+        cache.cache(anArtifact);
+        cache.flush();
+        ArtifactCache.cleanInstancesCache();
+
+        final ArtifactCache loaded = ArtifactCache.load(installationDir);
+
+        assertTrue(loaded.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+        assertEquals(0, ArtifactCache.getRegistryStatistics().getSize());
+    }
+
+    @Test
+    public void linkUnchangedArtifactsLinksOnlyMatchingFiles() throws Exception {
+        Files.writeString(anArtifact.getFile().toPath(), "unchanged");
+        Files.writeString(otherArtifact.getFile().toPath(), "old");
+        cache.cache(anArtifact);
+        cache.cache(otherArtifact);
+        cache.flush();
+        final Path installationCache = installationDir.resolve(ArtifactCache.CACHE_FOLDER);
+
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        final ArtifactCache candidateCache = ArtifactCache.getInstance(candidateDir);
+        Files.writeString(otherArtifact.getFile().toPath(), "new");
+        candidateCache.cache(anArtifact);
+        candidateCache.cache(otherArtifact);
+        candidateCache.flush();
+        final Path candidateCacheDir = candidateDir.resolve(ArtifactCache.CACHE_FOLDER);
+
+        assertEquals(1, ArtifactCache.linkUnchangedArtifacts(installationDir, candidateDir));
+
+        assertTrue(Files.isSameFile(installationCache.resolve("test.jar"), candidateCacheDir.resolve("test.jar")));
+        assertThat(candidateCacheDir.resolve("testTwo.jar")).hasContent("new");
+        assertThat(installationCache.resolve("testTwo.jar")).hasContent("old");
+        assertTrue(ArtifactCache.getInstance(candidateDir).getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+    }
+
+    @Test
+    public void linkUnchangedArtifactsSkipsModifiedInstallationFiles() throws Exception {
+        Files.writeString(anArtifact.getFile().toPath(), "unchanged");
+        cache.cache(anArtifact);
+        cache.flush();
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        final ArtifactCache candidateCache = ArtifactCache.getInstance(candidateDir);
+        candidateCache.cache(anArtifact);
+        candidateCache.flush();
+
+        // modified after it was cached, keeping the same size
+        Files.writeString(installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve("test.jar"), "modified!");
+
+        assertEquals(0, ArtifactCache.linkUnchangedArtifacts(installationDir, candidateDir));
+        assertThat(candidateDir.resolve(ArtifactCache.CACHE_FOLDER).resolve("test.jar")).hasContent("unchanged");
+    }
+
+    @Test
+    public void linkUnchangedArtifactsSkipsOnlyFilesThatCannotBeLinked() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Files.writeString(anArtifact.getFile().toPath(), "first");
+        Files.writeString(otherArtifact.getFile().toPath(), "second");
+        final Path candidateDir = temp.newFolder("candidate").toPath();
+        for (Path root : List.of(installationDir, candidateDir)) {
+            final ArtifactCache rootCache = ArtifactCache.getInstance(root);
+            rootCache.record(anArtifact, copyTo(anArtifact, root.resolve("a")));
+            rootCache.record(otherArtifact, copyTo(otherArtifact, root.resolve("b")));
+            rootCache.flush();
+        }
+
+        // the first artifact cannot be linked into a read-only directory
+        final Path readOnlyDir = candidateDir.resolve("a");
+        Files.setPosixFilePermissions(readOnlyDir, PosixFilePermissions.fromString("r-xr-xr-x"));
+        try {
+            assumeFalse("Permissions are not enforced for the current user", Files.isWritable(readOnlyDir));
+
+            assertEquals(1, ArtifactCache.linkUnchangedArtifacts(installationDir, candidateDir));
+
+            assertFalse(Files.isSameFile(installationDir.resolve("a/test.jar"), candidateDir.resolve("a/test.jar")));
+            assertTrue(Files.isSameFile(installationDir.resolve("b/testTwo.jar"), candidateDir.resolve("b/testTwo.jar")));
+        } finally {
+            Files.setPosixFilePermissions(readOnlyDir, PosixFilePermissions.fromString("rwxr-xr-x"));
+        }
+    }
+
+    private static Path copyTo(MavenArtifact artifact, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return Files.copy(artifact.getFile().toPath(), dir.resolve(artifact.getFile().getName()));
+    }
+
+    private Path cacheSettledArtifact() throws IOException {
+        Files.writeString(anArtifact.getFile().toPath(), "foo");
+        cache.cache(anArtifact);
+        final Path cachedFile = installationDir.resolve(ArtifactCache.CACHE_FOLDER).resolve(anArtifact.getFile().getName());
+        Files.setLastModifiedTime(cachedFile, FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS)));
+        // first lookup verifies the content and records the file state
+        assertTrue(cache.getArtifact(GROUP_ID, ARTIFACT_ID, EXTENSION, CLASSIFIER, VERSION).isPresent());
+        return cachedFile;
+    }
+}
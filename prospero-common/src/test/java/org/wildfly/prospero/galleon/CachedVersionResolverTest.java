@@ -23,8 +23,11 @@ import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.installation.InstallRequest;
 import org.eclipse.aether.installation.InstallationException;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.jboss.galleon.universe.maven.MavenArtifact;
 import org.jboss.galleon.universe.maven.MavenUniverseException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -42,11 +45,15 @@ import org.wildfly.channel.ChannelMetadataCoordinate;
 import org.wildfly.channel.spi.MavenVersionsResolver;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -75,6 +82,8 @@ public class CachedVersionResolverTest {
     private Function<ArtifactCoordinate, String> manifestVersionProvider;
     @Mock
     private RepositoryListener repositoryListener;
+    @Mock
+    private LocalRepositoryManager localRepositoryManager;
     @Captor
     private ArgumentCaptor<InstallRequest> requestCaptor;
     @Captor
@@ -97,6 +106,12 @@ public class CachedVersionResolverTest {
         resolver = new CachedVersionResolver(mockResolver, artifactCache, system, session, manifestVersionProvider);
     }
 
+    @After
+    public void tearDown() {
+        System.clearProperty(CachedVersionResolver.LINK_CACHED_ARTIFACTS_PROPERTY);
+        System.clearProperty(CachedVersionResolver.CACHE_RESOLUTION_PARALLELISM_PROPERTY);
+    }
+
     @Test
     public void testNoCacheFallbackToWrappedResolver() throws Exception {
         when(artifactCache.getArtifact(any(), any(), any(), any(), any())).thenReturn(Optional.empty());
@@ -136,6 +151,66 @@ public class CachedVersionResolverTest {
         assertEquals(testJar, artifact.getFile());
     }
 
+    @Test
+    public void testCachedArtifactIsLinkedIntoLocalRepository() throws Exception {
+        System.setProperty(CachedVersionResolver.LINK_CACHED_ARTIFACTS_PROPERTY, "true");
+        resolver = new CachedVersionResolver(mockResolver, artifactCache, system, session, manifestVersionProvider);
+        final File testJar = temp.newFile("test.jar");
+        Files.writeString(testJar.toPath(), "test content");
+        final Path localRepository = temp.newFolder("local-repo").toPath();
+        when(session.getLocalRepositoryManager()).thenReturn(localRepositoryManager);
+        when(localRepositoryManager.getRepository()).thenReturn(new LocalRepository(localRepository.toFile()));
+        when(localRepositoryManager.getPathForLocalArtifact(any())).thenReturn("group/artifact/1.0.0/artifact-1.0.0-classifier.jar");
+        when(artifactCache.getArtifact(ARTIFACT.getGroupId(), ARTIFACT.getArtifactId(), ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion()))
+                .thenReturn(Optional.of(testJar));
+
+        resolver.resolveArtifact(ARTIFACT.getGroupId(), ARTIFACT.getArtifactId(), ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion());
+
+        final Path installed = localRepository.resolve("group/artifact/1.0.0/artifact-1.0.0-classifier.jar");
+        assertThat(installed).exists();
+        assertThat(Files.isSameFile(installed, testJar.toPath())).isTrue();
+        // the installer is still called to record the artifact in the LRM
+        verify(system).install(eq(session), requestCaptor.capture());
+        assertEquals(testJar, requestCaptor.getValue().getArtifacts().stream().findFirst().get().getFile());
+    }
+
+    @Test
+    public void testLinkReplacesExistingFileInLocalRepository() throws Exception {
+        System.setProperty(CachedVersionResolver.LINK_CACHED_ARTIFACTS_PROPERTY, "true");
+        resolver = new CachedVersionResolver(mockResolver, artifactCache, system, session, manifestVersionProvider);
+        final File testJar = temp.newFile("test.jar");
+        Files.writeString(testJar.toPath(), "test content");
+        final Path localRepository = temp.newFolder("local-repo").toPath();
+        final Path installed = localRepository.resolve("group/artifact/1.0.0/artifact-1.0.0-classifier.jar");
+        Files.createDirectories(installed.getParent());
+        Files.writeString(installed, "old content");
+        when(session.getLocalRepositoryManager()).thenReturn(localRepositoryManager);
+        when(localRepositoryManager.getRepository()).thenReturn(new LocalRepository(localRepository.toFile()));
+        when(localRepositoryManager.getPathForLocalArtifact(any())).thenReturn("group/artifact/1.0.0/artifact-1.0.0-classifier.jar");
+        when(artifactCache.getArtifact(ARTIFACT.getGroupId(), ARTIFACT.getArtifactId(), ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion()))
+                .thenReturn(Optional.of(testJar));
+
+        resolver.resolveArtifact(ARTIFACT.getGroupId(), ARTIFACT.getArtifactId(), ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion());
+
+        assertThat(Files.isSameFile(installed, testJar.toPath())).isTrue();
+        assertThat(installed).hasContent("test content");
+        try (Stream<Path> files = Files.list(installed.getParent())) {
+            assertThat(files).containsExactly(installed);
+        }
+    }
+
+    @Test
+    public void testCachedArtifactIsNotLinkedByDefault() throws Exception {
+        final File testJar = temp.newFile("test.jar");
+        when(artifactCache.getArtifact(ARTIFACT.getGroupId(), ARTIFACT.getArtifactId(), ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion()))
+                .thenReturn(Optional.of(testJar));
+
+        resolver.resolveArtifact(ARTIFACT.getGroupId(), ARTIFACT.getArtifactId(), ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion());
+
+        verify(session, never()).getLocalRepositoryManager();
+        verify(system).install(eq(session), any());
+    }
+
     @Test
     public void testLocalInstallationFailsFailoverToResolver() throws Exception {
         final File testJar = temp.newFile("test.jar");
@@ -198,6 +273,54 @@ public class CachedVersionResolverTest {
         assertEquals("artifactTwo", listCaptor.getValue().get(1).getArtifactId());
     }
 
+    @Test
+    public void testBulkResolvePreservesOrderOfCoordinates() throws Exception {
+        final List<ArtifactCoordinate> coordinates = new ArrayList<>();
+        final List<File> expected = new ArrayList<>();
+        final List<File> fromMaven = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final ArtifactCoordinate coordinate = new ArtifactCoordinate(ARTIFACT.getGroupId(), "artifact" + i,
+                    ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion());
+            final File file = temp.newFile("test" + i + ".jar");
+            coordinates.add(coordinate);
+            expected.add(file);
+            if (i % 3 == 0) {
+                when(artifactCache.getArtifact(ARTIFACT.getGroupId(), "artifact" + i, ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion()))
+                        .thenReturn(Optional.empty());
+                fromMaven.add(file);
+            } else {
+                when(artifactCache.getArtifact(ARTIFACT.getGroupId(), "artifact" + i, ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion()))
+                        .thenReturn(Optional.of(file));
+            }
+        }
+        when(mockResolver.resolveArtifacts(listCaptor.capture()))
+                .thenReturn(fromMaven);
+
+        final List<File> resolved = resolver.resolveArtifacts(coordinates);
+
+        assertThat(resolved)
+                .containsExactlyElementsOf(expected);
+        assertThat(listCaptor.getValue())
+                .map(ArtifactCoordinate::getArtifactId)
+                .containsExactly("artifact0", "artifact3", "artifact6", "artifact9", "artifact12", "artifact15", "artifact18");
+    }
+
+    @Test
+    public void testBulkResolveRethrowsFailureOfParallelLookup() throws Exception {
+        System.setProperty(CachedVersionResolver.CACHE_RESOLUTION_PARALLELISM_PROPERTY, "4");
+        final IllegalStateException failure = new IllegalStateException("Corrupted cache");
+        when(artifactCache.getArtifact(any(), any(), any(), any(), any())).thenThrow(failure);
+        final List<ArtifactCoordinate> coordinates = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            coordinates.add(new ArtifactCoordinate(ARTIFACT.getGroupId(), "artifact" + i,
+                    ARTIFACT.getExtension(), ARTIFACT.getClassifier(), ARTIFACT.getVersion()));
+        }
+
+        assertThatThrownBy(() -> resolver.resolveArtifacts(coordinates))
+                .isSameAs(failure);
+        verify(mockResolver, never()).resolveArtifacts(any());
+    }
+
     @Test
     public void testResolveChannelMetadata_FallbackFailsIfNoCurrentVersionFound() throws Exception {
         final ArtifactTransferException resolutionException = new ArtifactTransferException("",
@@ -286,4 +409,71 @@ public class CachedVersionResolverTest {
                 new ChannelManifestCoordinate("org.test", "manifest-two"))))
                 .containsExactly(testFileOne.toURI().toURL(), testFileTwo.toURI().toURL());
     }
-}
\ No newline at end of file
+    @Test
+    public void testResolveChannelMetadata_UnresolvedManifestIsNotRequestedAgain() throws Exception {
+        final ArtifactTransferException resolutionException = new ArtifactTransferException("",
+                Set.of(new ArtifactCoordinate("org.test", "manifest-one", ChannelManifest.EXTENSION, ChannelManifest.CLASSIFIER, "")),
+                Collections.emptySet());
+        final File testFile = new File("test");
+        when(mockResolver.resolveChannelMetadata(any())).thenThrow(resolutionException);
+        when(manifestVersionProvider.apply(any())).thenReturn("1.2.3");
+        when(artifactCache.getArtifact("org.test", "manifest-one", ChannelManifest.EXTENSION, ChannelManifest.CLASSIFIER, "1.2.3"))
+                .thenReturn(Optional.of(testFile));
+
+        resolver.resolveChannelMetadata(List.of(new ChannelManifestCoordinate("org.test", "manifest-one")));
+        assertThat(resolver.resolveChannelMetadata(List.of(new ChannelManifestCoordinate("org.test", "manifest-one"))))
+                .containsExactly(testFile.toURI().toURL());
+
+        verify(mockResolver, times(1)).resolveChannelMetadata(any());
+    }
+
+    @Test
+    public void testResolveChannelMetadata_UnresolvedManifestIsRequestedAgainAfterTimeout() throws Exception {
+        final long[] time = {0};
+        resolver = new CachedVersionResolver(mockResolver, artifactCache, system, session, manifestVersionProvider,
+                new UnresolvedMetadataCache(1000, () -> time[0]));
+        final ArtifactTransferException resolutionException = new ArtifactTransferException("",
+                Set.of(new ArtifactCoordinate("org.test", "manifest-one", ChannelManifest.EXTENSION, ChannelManifest.CLASSIFIER, "")),
+                Collections.emptySet());
+        final File testFile = new File("test");
+        when(mockResolver.resolveChannelMetadata(any())).thenThrow(resolutionException);
+        when(manifestVersionProvider.apply(any())).thenReturn("1.2.3");
+        when(artifactCache.getArtifact("org.test", "manifest-one", ChannelManifest.EXTENSION, ChannelManifest.CLASSIFIER, "1.2.3"))
+                .thenReturn(Optional.of(testFile));
+
+        resolver.resolveChannelMetadata(List.of(new ChannelManifestCoordinate("org.test", "manifest-one")));
+        time[0] = 1000;
+        resolver.resolveChannelMetadata(List.of(new ChannelManifestCoordinate("org.test", "manifest-one")));
+
+        verify(mockResolver, times(2)).resolveChannelMetadata(any());
+    }
+
+    @Test
+    public void testResolveChannelMetadata_ResolvedManifestsAreRetriedInOneRequest() throws Exception {
+        final ArtifactTransferException resolutionException = new ArtifactTransferException("",
+                Set.of(new ArtifactCoordinate("org.test", "manifest-two", ChannelManifest.EXTENSION, ChannelManifest.CLASSIFIER, "")),
+                Collections.emptySet());
+        final File testFileOne = new File("testOne");
+        final File testFileTwo = new File("testTwo");
+        final File testFileThree = new File("testThree");
+        when(mockResolver.resolveChannelMetadata(List.of(
+                new ChannelManifestCoordinate("org.test", "manifest-one"),
+                new ChannelManifestCoordinate("org.test", "manifest-two"),
+                new ChannelManifestCoordinate("org.test", "manifest-three"))))
+                .thenThrow(resolutionException);
+        when(mockResolver.resolveChannelMetadata(List.of(
+                new ChannelManifestCoordinate("org.test", "manifest-one"),
+                new ChannelManifestCoordinate("org.test", "manifest-three"))))
+                .thenReturn(List.of(testFileOne.toURI().toURL(), testFileThree.toURI().toURL()));
+        when(manifestVersionProvider.apply(any())).thenReturn("1.2.3");
+        when(artifactCache.getArtifact("org.test", "manifest-two", ChannelManifest.EXTENSION, ChannelManifest.CLASSIFIER, "1.2.3"))
+                .thenReturn(Optional.of(testFileTwo));
+
+        assertThat(resolver.resolveChannelMetadata(List.of(
+                new ChannelManifestCoordinate("org.test", "manifest-one"),
+                new ChannelManifestCoordinate("org.test", "manifest-two"),
+                new ChannelManifestCoordinate("org.test", "manifest-three"))))
+                .containsExactly(testFileOne.toURI().toURL(), testFileTwo.toURI().toURL(), testFileThree.toURI().toURL());
+        verify(mockResolver, times(2)).resolveChannelMetadata(any());
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ChangeJournalTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path server;
+    private ChangeJournal.Watcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = temp.newFolder("server").toPath();
+        Files.createDirectories(server.resolve(ProsperoMetadataUtils.METADATA_DIR));
+        Files.createDirectories(server.resolve("modules"));
+        Files.writeString(server.resolve("modules").resolve("test.jar"), "test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void serverWithoutWatcherHasNoCheckpoint() {
+        assertThat(ChangeJournal.isWatched(server)).isFalse();
+        assertThat(ChangeJournal.checkpoint(server)).isEmpty();
+    }
+
+    @Test
+    public void journalFilesAreRecognized() {
+        assertThat(ChangeJournal.isJournalFile(ChangeJournal.JOURNAL_FILE)).isTrue();
+        assertThat(ChangeJournal.isJournalFile(ChangeJournal.LOCK_FILE)).isTrue();
+        assertThat(ChangeJournal.isJournalFile(Path.of(ProsperoMetadataUtils.METADATA_DIR, "manifest.yaml"))).isFalse();
+        assertThat(ChangeJournal.isJournalFile(Path.of("modules", ChangeJournal.JOURNAL_FILE.getFileName().toString()))).isFalse();
+    }
+
+    @Test
+    public void changesBetweenCheckpointsAreJournaled() throws Exception {
+        startWatcher();
+        final ChangeJournal.Checkpoint first = checkpoint();
+
+        Files.writeString(server.resolve("modules").resolve("test.jar"), "changed");
+        // files created before the new directory is watched are journaled too
+        Files.createDirectories(server.resolve("modules").resolve("sub").resolve("dir"));
+        Files.writeString(server.resolve("modules").resolve("sub").resolve("dir").resolve("new.jar"), "new");
+        final ChangeJournal.Checkpoint second = checkpoint();
+
+        assertThat(ChangeJournal.changes(server, first, second)).hasValueSatisfying(paths -> assertThat(paths)
+                .contains("modules/test.jar", "modules/sub", "modules/sub/dir/new.jar")
+                .noneMatch(path -> path.startsWith(ProsperoMetadataUtils.METADATA_DIR + "/.change-journal")));
+        assertThat(ChangeJournal.changes(server, second, checkpoint())).hasValue(Set.of());
+    }
+
+    @Test
+    public void changeInSubdirectoryRightBeforeCheckpointIsJournaled() throws Exception {
+        final Path file = server.resolve("modules").resolve("sub").resolve("test.jar");
+        Files.createDirectories(file.getParent());
+        startWatcher();
+        ChangeJournal.Checkpoint previous = checkpoint();
+
+        // the fence and the change are reported by different directories
+        for (int i = 0; i < 50; i++) {
+            Files.writeString(file, "changed " + i);
+            final ChangeJournal.Checkpoint next = checkpoint();
+
+            assertThat(ChangeJournal.changes(server, previous, next)).hasValueSatisfying(paths -> assertThat(paths)
+                    .contains("modules/sub/test.jar"));
+            previous = next;
+        }
+    }
+
+    @Test
+    public void changesAreNotReadAcrossSessions() throws Exception {
+        startWatcher();
+        final ChangeJournal.Checkpoint first = checkpoint();
+        watcher.close();
+        assertThat(ChangeJournal.isWatched(server)).isFalse();
+
+        Files.writeString(server.resolve("modules").resolve("test.jar"), "changed");
+        startWatcher();
+
+        assertThat(ChangeJournal.changes(server, first, checkpoint())).isEmpty();
+    }
+
+    @Test
+    public void replacedRootIsWatchedInNewSession() throws Exception {
+        startWatcher();
+        final ChangeJournal.Checkpoint first = checkpoint();
+
+        // the staged copy replaces the server like in the swap apply
+        final Path staged = temp.newFolder("staged").toPath();
+        Files.createDirectories(staged.resolve(ProsperoMetadataUtils.METADATA_DIR));
+        Files.createDirectories(staged.resolve("modules"));
+        Files.writeString(staged.resolve("modules").resolve("test.jar"), "changed");
+        Files.move(server, server.resolveSibling("replaced"));
+        Files.move(staged, server);
+
+        final Optional<ChangeJournal.Checkpoint> second = ChangeJournal.checkpoint(server);
+        assertThat(second).isPresent();
+        assertThat(ChangeJournal.changes(server, first, second.get())).isEmpty();
+        assertThat(Files.readString(server.resolve(ChangeJournal.JOURNAL_FILE))).contains("g root-replaced");
+        assertThat(ChangeJournal.isWatched(server)).isTrue();
+    }
+
+    @Test
+    public void serverCanBeWatchedOnlyOnce() throws Exception {
+        startWatcher();
+
+        assertThat(ChangeJournal.isWatched(server)).isTrue();
+        assertThatThrownBy(() -> ChangeJournal.watch(server))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void fileStateRehashesJournaledFiles() throws Exception {
+        final Path file = server.resolve("modules").resolve("test.jar");
+        final FileTime modified = Files.getLastModifiedTime(file);
+        startWatcher();
+        Assume.assumeTrue(ChangeJournal.checkpoint(server).isPresent());
+        FileStateTree.record(server, Collections.emptySet());
+
+        // same size and modification time, the change can be found only in the journal
+        Files.writeString(file, "tset");
+        Files.setLastModifiedTime(file, modified);
+
+        assertThat(FileStateTree.scan(server, Collections.emptySet()).getDigest("modules/test.jar")).hasValue(FileDigests.of(file).getSha1());
+    }
+
+    private void startWatcher() throws IOException {
+        watcher = ChangeJournal.watch(server);
+        final ChangeJournal.Watcher current = watcher;
+        final Thread thread = new Thread(() -> {
+            try {
+                current.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private ChangeJournal.Checkpoint checkpoint() {
+        final Optional<ChangeJournal.Checkpoint> checkpoint = ChangeJournal.checkpoint(server);
+        // watchers polling the file system might not record the changes in time
+        Assume.assumeTrue(checkpoint.isPresent());
+        return checkpoint.get();
+    }
+}
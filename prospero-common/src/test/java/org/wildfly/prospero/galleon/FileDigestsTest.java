@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.util.HashUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileDigestsTest {
+
+    private static final String CONTENT = "test content";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = temp.newFile("test.jar").toPath();
+        Files.writeString(file, CONTENT);
+    }
+
+    @Test
+    public void digestsMatchSeparatelyComputedHashes() throws Exception {
+        final FileDigests digests = FileDigests.of(file, true);
+
+        assertEquals(HashUtils.hashFile(file), digests.getSha1());
+        assertEquals(HashUtils.bytesToHexString(MessageDigest.getInstance("SHA-256").digest(CONTENT.getBytes(StandardCharsets.UTF_8))),
+                digests.getSha256());
+    }
+
+    @Test
+    public void sha256IsOnlyComputedOnRequest() throws Exception {
+        assertNull(FileDigests.of(file).getSha256());
+    }
+
+    @Test
+    public void copyDigestsCopiedContent() throws Exception {
+        final FileTime lastModified = FileTime.from(Instant.now().minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS));
+        Files.setLastModifiedTime(file, lastModified);
+        final Path target = temp.getRoot().toPath().resolve("copy").resolve("test.jar");
+
+        final FileDigests digests = FileDigests.copy(file, target, false);
+
+        assertThat(target).hasContent(CONTENT);
+        assertEquals(HashUtils.hashFile(file), digests.getSha1());
+        assertEquals(lastModified, Files.getLastModifiedTime(target));
+    }
+
+    @Test
+    public void copyDoesntWriteThroughExistingLink() throws Exception {
+        final Path other = temp.newFile("other.jar").toPath();
+        Files.writeString(other, "other content");
+        final Path target = temp.getRoot().toPath().resolve("target.jar");
+        Files.createLink(target, other);
+
+        FileDigests.copy(file, target, false);
+
+        assertThat(target).hasContent(CONTENT);
+        assertThat(other).hasContent("other content");
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.Constants;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileStateTreeTest {
+
+    private static final Set<Path> NO_IGNORED_PATHS = Collections.emptySet();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = temp.newFolder("server").toPath();
+        Files.createDirectories(server.resolve(ProsperoMetadataUtils.METADATA_DIR));
+        writeSettled("modules/test.jar", "test");
+        writeSettled("bin/standalone.sh", "run");
+    }
+
+    @Test
+    public void provisionedServerIsRecordedFromGalleonHashes() throws Exception {
+        final Path hashes = server.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES).resolve("modules");
+        Files.createDirectories(hashes);
+        // a hash that doesn't match the content shows the file was not read
+        Files.writeString(hashes.resolve(Constants.HASHES), "test.jar\nabcd\n");
+
+        FileStateTree.recordProvisioned(server, NO_IGNORED_PATHS);
+
+        assertThat(FileStateTree.isRecorded(server)).isTrue();
+        assertThat(Files.readString(server.resolve(FileStateTree.RECORD_FILE))).contains("abcd");
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("modules/test.jar")).hasValue("abcd");
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("bin/standalone.sh")).hasValue(FileDigests.of(server.resolve("bin/standalone.sh")).getSha1());
+    }
+
+    @Test
+    public void metadataIsNotPartOfTheTree() throws Exception {
+        final FileStateTree before = FileStateTree.scan(server, NO_IGNORED_PATHS);
+        Files.writeString(server.resolve(ProsperoMetadataUtils.METADATA_DIR).resolve("manifest.yaml"), "changed");
+
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("")).isEqualTo(before.getDigest(""));
+        assertThat(before.getDigest(ProsperoMetadataUtils.METADATA_DIR)).isEmpty();
+    }
+
+    @Test
+    public void unchangedFilesAreNotHashedAgain() throws Exception {
+        FileStateTree.record(server, NO_IGNORED_PATHS);
+        // replace the recorded hash, an unchanged file must not be read again
+        final Path recordFile = server.resolve(FileStateTree.RECORD_FILE);
+        final String realHash = FileDigests.of(server.resolve("modules/test.jar")).getSha1();
+        Files.writeString(recordFile, Files.readString(recordFile).replace(realHash, "abcd"));
+
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("modules/test.jar")).hasValue("abcd");
+
+        // a change in the size or time is noticed
+        writeSettled("modules/test.jar", "changed");
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("modules/test.jar"))
+                .hasValue(FileDigests.of(server.resolve("modules/test.jar")).getSha1());
+    }
+
+    @Test
+    public void changedFilesChangeDigestsOfTheirDirectories() throws Exception {
+        final FileStateTree before = FileStateTree.scan(server, NO_IGNORED_PATHS);
+        writeSettled("modules/test.jar", "changed");
+        writeSettled("modules/sub/new.jar", "new");
+
+        final FileStateTree after = FileStateTree.scan(server, NO_IGNORED_PATHS);
+
+        assertThat(after.getDigest("modules/test.jar")).isNotEqualTo(before.getDigest("modules/test.jar"));
+        assertThat(after.getDigest("modules")).isNotEqualTo(before.getDigest("modules"));
+        assertThat(after.getDigest("bin")).isEqualTo(before.getDigest("bin"));
+
+        Files.delete(server.resolve("bin/standalone.sh"));
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("bin")).isNotEqualTo(before.getDigest("bin"));
+    }
+
+    @Test
+    public void symbolicLinksAreIdentifiedByTheirTarget() throws Exception {
+        final Path link = server.resolve("bin/link.sh");
+        try {
+            Files.createSymbolicLink(link, Path.of("standalone.sh"));
+        } catch (UnsupportedOperationException | IOException e) {
+            Assume.assumeNoException("Symbolic links are not supported", e);
+        }
+        final FileStateTree linked = FileStateTree.scan(server, NO_IGNORED_PATHS);
+        assertThat(linked.getDigest("bin/link.sh")).isPresent();
+
+        Files.delete(link);
+        final FileStateTree removed = FileStateTree.scan(server, NO_IGNORED_PATHS);
+        assertThat(removed.getDigest("bin")).isNotEqualTo(linked.getDigest("bin"));
+
+        // a link to a file with the same content is still a different link
+        writeSettled("bin/copy.sh", "run");
+        Files.createSymbolicLink(link, Path.of("copy.sh"));
+        final FileStateTree retargeted = FileStateTree.scan(server, NO_IGNORED_PATHS);
+        assertThat(retargeted.getDigest("bin/link.sh")).isNotEqualTo(linked.getDigest("bin/link.sh"));
+    }
+
+    @Test
+    public void ignoredPathsAreNotPartOfTheTree() throws Exception {
+        final Set<Path> ignoredPaths = Set.of(Path.of(".update.old"));
+        final FileStateTree before = FileStateTree.scan(server, ignoredPaths);
+        writeSettled(".update.old/modules/test.jar", "backup");
+
+        assertThat(FileStateTree.scan(server, ignoredPaths).getDigest("")).isEqualTo(before.getDigest(""));
+        assertThat(FileStateTree.scan(server, NO_IGNORED_PATHS).getDigest("")).isNotEqualTo(before.getDigest(""));
+    }
+
+    @Test
+    public void directoriesWithSameContentHaveSameDigest() throws Exception {
+        final Path other = temp.newFolder("other").toPath();
+        Files.createDirectories(other.resolve("modules"));
+        Files.writeString(other.resolve("modules/test.jar"), "test");
+        Files.createDirectories(other.resolve("bin"));
+        Files.writeString(other.resolve("bin/standalone.sh"), "changed");
+
+        final FileStateTree serverState = FileStateTree.scan(server, NO_IGNORED_PATHS);
+        final FileStateTree otherState = FileStateTree.scan(other, NO_IGNORED_PATHS);
+
+        assertThat(serverState.getDigest("modules")).isPresent().isEqualTo(otherState.getDigest("modules"));
+        assertThat(serverState.getDigest("bin")).isNotEqualTo(otherState.getDigest("bin"));
+        assertThat(serverState.getDigest("")).isNotEqualTo(otherState.getDigest(""));
+        assertThat(serverState.getDigest("bin/standalone.sh")).isNotEqualTo(otherState.getDigest("bin/standalone.sh"));
+    }
+
+    private void writeSettled(String path, String content) throws Exception {
+        final Path file = server.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        // older than the settle time, so that the file is recorded
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)
+                - content.length() * 1000L));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.diff.FsDiff;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class FsDiffCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private long now;
+    private FsDiffCache cache;
+    private Path server;
+
+    @Before
+    public void setUp() throws Exception {
+        // all the test files are considered settled
+        now = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        cache = new FsDiffCache(2, () -> now);
+        server = temp.newFolder("server").toPath();
+        Files.createDirectories(server.resolve("modules"));
+        Files.writeString(server.resolve("modules").resolve("test.jar"), "test");
+    }
+
+    @Test
+    public void unchangedServerReusesChanges() throws Exception {
+        final FsDiff first = cache.get(server, Collections.emptySet(), this::load);
+        final FsDiff second = cache.get(server, Collections.emptySet(), this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void modifiedFileInvalidatesChanges() throws Exception {
+        cache.get(server, Collections.emptySet(), this::load);
+        Files.writeString(server.resolve("modules").resolve("test.jar"), "changed");
+        cache.get(server, Collections.emptySet(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void addedFileInvalidatesChanges() throws Exception {
+        cache.get(server, Collections.emptySet(), this::load);
+        Files.writeString(server.resolve("new.txt"), "test");
+        cache.get(server, Collections.emptySet(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void changesInIgnoredPathsDontInvalidateChanges() throws Exception {
+        final Set<Path> ignored = Set.of(Path.of("backup"));
+        cache.get(server, ignored, this::load);
+        Files.createDirectories(server.resolve("backup"));
+        Files.writeString(server.resolve("backup").resolve("test.jar"), "test");
+        cache.get(server, ignored, this::load);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void recentlyModifiedServerIsNotCached() throws Exception {
+        now = System.currentTimeMillis();
+        cache.get(server, Collections.emptySet(), this::load);
+        cache.get(server, Collections.emptySet(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void invalidatedChangesAreComputedAgain() throws Exception {
+        cache.get(server, Collections.emptySet(), this::load);
+        cache.invalidate(server);
+        cache.get(server, Collections.emptySet(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    private FsDiff load() {
+        loads.incrementAndGet();
+        return mock(FsDiff.class);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.jboss.galleon.Constants;
+import org.jboss.galleon.diff.FsDiff;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.prospero.metadata.ProsperoMetadataUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecordedFsDiffTest {
+
+    private static final Set<Path> NO_IGNORED_PATHS = Collections.emptySet();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = temp.newFolder("server").toPath();
+        Files.createDirectories(server.resolve(ProsperoMetadataUtils.METADATA_DIR));
+        writeSettled("modules/test.jar", "test");
+        writeSettled("bin/standalone.sh", "run");
+        final Path hashes = server.resolve(Constants.PROVISIONED_STATE_DIR).resolve(Constants.HASHES);
+        Files.createDirectories(hashes.resolve("modules"));
+        Files.createDirectories(hashes.resolve("bin"));
+        Files.writeString(hashes.resolve("modules").resolve(Constants.HASHES), "test.jar\n" + sha1("modules/test.jar")
+                + "\nremoved.jar\nabcd\n");
+        Files.writeString(hashes.resolve("bin").resolve(Constants.HASHES), "standalone.sh\n" + sha1("bin/standalone.sh") + "\n");
+    }
+
+    @Test
+    public void serverWithoutRecordedStateIsNotComputed() throws Exception {
+        assertThat(RecordedFsDiff.compute(server, NO_IGNORED_PATHS)).isEmpty();
+    }
+
+    @Test
+    public void changesAreComparedWithTheProvisionedState() throws Exception {
+        FileStateTree.record(server, NO_IGNORED_PATHS);
+        writeSettled("modules/test.jar", "changed");
+        writeSettled("bin/added.sh", "added");
+
+        final FsDiff diff = RecordedFsDiff.compute(server, NO_IGNORED_PATHS).get();
+
+        assertThat(diff.getModifiedPaths()).containsExactly("modules/test.jar");
+        assertThat(diff.getAddedPaths()).contains("bin/added.sh")
+                .noneMatch(path -> path.startsWith(Constants.PROVISIONED_STATE_DIR));
+        assertThat(diff.getRemovedPaths()).containsExactly("modules/removed.jar");
+    }
+
+    @Test
+    public void recordedHashesAreUsedForUnchangedFiles() throws Exception {
+        FileStateTree.record(server, NO_IGNORED_PATHS);
+        final Path file = server.resolve("modules/test.jar");
+        final FileTime modified = Files.getLastModifiedTime(file);
+        // same size and modification time, the file is not read again
+        Files.writeString(file, "TEST");
+        Files.setLastModifiedTime(file, modified);
+
+        final FsDiff diff = RecordedFsDiff.compute(server, NO_IGNORED_PATHS).get();
+
+        assertThat(diff.getModifiedPaths()).isEmpty();
+    }
+
+    @Test
+    public void galleonTemporaryFilesAreNotCompared() throws Exception {
+        FileStateTree.record(server, NO_IGNORED_PATHS);
+        writeSettled("modules/test.jar.glnew", "new");
+
+        final FsDiff diff = RecordedFsDiff.compute(server, NO_IGNORED_PATHS).get();
+
+        assertThat(diff.getAddedPaths()).doesNotContain("modules/test.jar.glnew");
+    }
+
+    private String sha1(String path) throws Exception {
+        return FileDigests.of(server.resolve(path)).getSha1();
+    }
+
+    private void writeSettled(String path, String content) throws Exception {
+        final Path file = server.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        // older than the settle time, so that the file is recorded
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)
+                - content.length() * 1000L));
+    }
+}
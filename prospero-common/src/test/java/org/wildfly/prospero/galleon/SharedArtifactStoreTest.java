@@ -0,0 +1,193 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.galleon;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class SharedArtifactStoreTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private SharedArtifactStore store;
+    private Path storeDir;
+    private Path artifact;
+    private Path serverOne;
+    private Path serverTwo;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+        storeDir = temp.newFolder("store").toPath();
+        store = new SharedArtifactStore(storeDir);
+        artifact = temp.newFile("test.jar").toPath();
+        Files.writeString(artifact, "test content");
+        serverOne = temp.newFolder("server-one").toPath().resolve(ArtifactCache.CACHE_FOLDER);
+        serverTwo = temp.newFolder("server-two").toPath().resolve(ArtifactCache.CACHE_FOLDER);
+    }
+
+    @Test
+    public void linkedArtifactsShareTheSameFile() throws Exception {
+        store.link(artifact, serverOne.resolve("test.jar"));
+        store.link(artifact, serverTwo.resolve("test.jar"));
+
+        assertThat(serverOne.resolve("test.jar")).hasContent("test content");
+        assertThat(Files.isSameFile(serverOne.resolve("test.jar"), serverTwo.resolve("test.jar"))).isTrue();
+        assertEquals(2, store.getReferenceCount(serverOne.resolve("test.jar")));
+        assertEquals(1, countStoredObjects());
+    }
+
+    @Test
+    public void linkReplacesExistingFile() throws Exception {
+        Files.createDirectories(serverOne);
+        Files.writeString(serverOne.resolve("test.jar"), "old content");
+
+        store.link(artifact, serverOne.resolve("test.jar"));
+
+        assertThat(serverOne.resolve("test.jar")).hasContent("test content");
+        assertEquals(1, store.getReferenceCount(serverOne.resolve("test.jar")));
+    }
+
+    @Test
+    public void shareAllReplacesCachedFilesWithLinks() throws Exception {
+        Files.createDirectories(serverOne);
+        Files.copy(artifact, serverOne.resolve("test.jar"));
+        Files.writeString(serverOne.resolve(ArtifactCache.CACHE_FILENAME), "descriptor");
+        store.link(artifact, serverTwo.resolve("test.jar"));
+
+        store.shareAll(serverOne);
+
+        assertThat(Files.isSameFile(serverOne.resolve("test.jar"), serverTwo.resolve("test.jar"))).isTrue();
+        assertEquals(0, store.getReferenceCount(serverOne.resolve(ArtifactCache.CACHE_FILENAME)));
+        assertEquals(1, countStoredObjects());
+    }
+
+    @Test
+    public void garbageCollectionRemovesOnlyUnreferencedArtifacts() throws Exception {
+        final Path other = temp.newFile("other.jar").toPath();
+        Files.writeString(other, "other content");
+        store.link(artifact, serverOne.resolve("test.jar"));
+        store.link(other, serverOne.resolve("other.jar"));
+        store.link(other, serverTwo.resolve("other.jar"));
+
+        Files.delete(serverOne.resolve("test.jar"));
+        Files.delete(serverOne.resolve("other.jar"));
+
+        assertEquals(1, store.collectGarbage());
+        assertEquals(1, countStoredObjects());
+        assertEquals(1, store.getReferenceCount(serverTwo.resolve("other.jar")));
+    }
+
+    @Test
+    public void artifactIsStoredAgainAfterGarbageCollection() throws Exception {
+        store.link(artifact, serverOne.resolve("test.jar"));
+        Files.delete(serverOne.resolve("test.jar"));
+        store.collectGarbage();
+
+        store.link(artifact, serverTwo.resolve("test.jar"));
+
+        assertThat(serverTwo.resolve("test.jar")).hasContent("test content");
+        assertEquals(1, store.getReferenceCount(serverTwo.resolve("test.jar")));
+    }
+
+    @Test
+    public void releaseRemovesOnlyUnreferencedObjects() throws Exception {
+        final Path other = temp.newFile("other.jar").toPath();
+        Files.writeString(other, "other content");
+        store.link(artifact, serverOne.resolve("test.jar"));
+        store.link(other, serverOne.resolve("other.jar"));
+        store.link(other, serverTwo.resolve("other.jar"));
+        final Path testObject = store.findStoredObject(serverOne.resolve("test.jar")).get();
+        final Path otherObject = store.findStoredObject(serverOne.resolve("other.jar")).get();
+
+        Files.delete(serverOne.resolve("test.jar"));
+        Files.delete(serverOne.resolve("other.jar"));
+
+        assertEquals(1, store.release(List.of(testObject, otherObject)));
+        assertThat(testObject).doesNotExist();
+        assertEquals(1, store.getReferenceCount(serverTwo.resolve("other.jar")));
+    }
+
+    @Test
+    public void linksCreatedOutsideTheStoreAreNotReferences() throws Exception {
+        store.link(artifact, serverOne.resolve("test.jar"));
+        // e.g. a backup of the installation
+        final Path backup = temp.newFolder("backup").toPath().resolve("test.jar");
+        Files.createLink(backup, serverOne.resolve("test.jar"));
+
+        assertEquals(1, store.getReferenceCount(serverOne.resolve("test.jar")));
+
+        Files.delete(serverOne.resolve("test.jar"));
+
+        assertEquals(1, store.collectGarbage());
+        assertEquals(0, countStoredObjects());
+        assertThat(backup).hasContent("test content");
+    }
+
+    @Test
+    public void storedObjectIsNotReplacedByLaterLinks() throws Exception {
+        store.link(artifact, serverOne.resolve("test.jar"));
+        final Path object = store.findStoredObject(serverOne.resolve("test.jar")).get();
+        final Object fileKey = Files.readAttributes(object, BasicFileAttributes.class).fileKey();
+
+        store.link(artifact, serverTwo.resolve("test.jar"));
+
+        assertEquals(fileKey, Files.readAttributes(object, BasicFileAttributes.class).fileKey());
+        assertThat(Files.isSameFile(serverOne.resolve("test.jar"), serverTwo.resolve("test.jar"))).isTrue();
+    }
+
+    @Test
+    public void unlinkedFileHasNoStoredObject() throws Exception {
+        Files.createDirectories(serverOne);
+        Files.copy(artifact, serverOne.resolve("test.jar"));
+        store.link(artifact, serverTwo.resolve("test.jar"));
+
+        assertThat(store.findStoredObject(serverOne.resolve("test.jar"))).isEmpty();
+    }
+
+    @Test
+    public void storedArtifactsAreReadOnly() throws Exception {
+        store.link(artifact, serverOne.resolve("test.jar"));
+
+        assertThat(Files.getPosixFilePermissions(serverOne.resolve("test.jar")))
+                .containsExactlyInAnyOrder(PosixFilePermission.OWNER_READ, PosixFilePermission.GROUP_READ,
+                        PosixFilePermission.OTHERS_READ);
+        assertThat(artifact).isWritable();
+    }
+
+    private long countStoredObjects() throws Exception {
+        try (Stream<Path> walk = Files.walk(storeDir.resolve(SharedArtifactStore.OBJECTS_DIR))) {
+            return walk.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -50,6 +50,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -738,6 +739,61 @@ public class GitStorageTest {
                         new FeatureChange(FEATURE, "org.test:feature-four:zip", Diff.Status.ADDED));
     }
 
+    @Test
+    public void revisionsAreReadFromIndexAfterRecord() throws Exception {
+        final List<SavedState> revisions;
+        try (GitStorage gitStorage = new GitStorage(base.getParent())) {
+            setArtifact(manifest, "org.test:test:1.2.3");
+            gitStorage.record();
+            setArtifact(manifest, "org.test:test:1.2.4");
+            gitStorage.record();
+
+            revisions = gitStorage.getRevisions();
+        }
+
+        assertThat(base.resolve(".git").resolve(RevisionIndex.INDEX_FILE)).exists();
+        try (GitStorage gitStorage = new GitStorage(base.getParent())) {
+            assertThat(gitStorage.getRevisions())
+                    .containsExactlyElementsOf(revisions)
+                    .extracting(SavedState::getType)
+                    .containsExactly(SavedState.Type.UPDATE, SavedState.Type.INSTALL);
+        }
+    }
+
+    @Test
+    public void revisionIndexIsRebuiltIfHistoryChangedOutsideOfStorage() throws Exception {
+        try (GitStorage gitStorage = new GitStorage(base.getParent())) {
+            setArtifact(manifest, "org.test:test:1.2.3");
+            gitStorage.record();
+            gitStorage.getRevisions();
+        }
+
+        setArtifact(manifest, "org.test:test:1.2.4");
+        try (Git git = Git.open(base.resolve(".git").toFile())) {
+            git.add().addFilepattern(ProsperoMetadataUtils.MANIFEST_FILE_NAME).call();
+            git.commit().setMessage(SavedState.Type.CONFIG_CHANGE.name()).call();
+        }
+
+        try (GitStorage gitStorage = new GitStorage(base.getParent())) {
+            assertThat(gitStorage.getRevisions())
+                    .extracting(SavedState::getType)
+                    .containsExactly(SavedState.Type.CONFIG_CHANGE, SavedState.Type.INSTALL);
+        }
+    }
+
+    @Test
+    public void openingTheHistoryDoesNotChangeItsConfig() throws Exception {
+        new GitStorage(base.getParent()).close();
+        final Path config = base.resolve(".git").resolve("config");
+        final String content = Files.readString(config);
+        final FileTime modified = Files.getLastModifiedTime(config);
+
+        new GitStorage(base.getParent()).close();
+
+        assertEquals(content, Files.readString(config));
+        assertEquals(modified, Files.getLastModifiedTime(config));
+    }
+
     private HashSet<String> getPathsInCommit() throws IOException, GitAPIException {
         final Git git = Git.open(base.resolve(".git").toFile());
         HashSet<String> paths = new HashSet<>();
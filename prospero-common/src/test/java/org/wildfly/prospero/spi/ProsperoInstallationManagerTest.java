@@ -38,9 +38,11 @@ import org.wildfly.prospero.api.SavedState;
 import org.wildfly.prospero.updates.UpdateSet;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -276,6 +278,30 @@ public class ProsperoInstallationManagerTest {
                 );
     }
 
+    @Test
+    public void testVerifyCandidateStreamsMappedConflicts() throws Exception {
+        final ProsperoInstallationManager mgr = new ProsperoInstallationManager(actionFactory);
+
+        when(actionFactory.getApplyCandidateAction(any())).thenReturn(applyCandidateAction);
+        when(applyCandidateAction.verifyCandidate(any())).thenReturn(ApplyCandidateAction.ValidationResult.OK);
+        when(applyCandidateAction.reportConflicts(any())).thenAnswer(invocation -> {
+            final Consumer<org.wildfly.prospero.api.FileConflict> consumer = invocation.getArgument(0);
+            consumer.accept(org.wildfly.prospero.api.FileConflict.userModified("foo/bar").updateModified().userPreserved());
+            consumer.accept(org.wildfly.prospero.api.FileConflict.userAdded("system/file_b").updateAdded().overwritten());
+            return 2;
+        });
+
+        final List<FileConflict> conflicts = new ArrayList<>();
+        final int count = mgr.verifyCandidate(Path.of("candidate"), CandidateType.UPDATE, conflicts::add);
+
+        assertEquals(2, count);
+        assertThat(conflicts)
+                .containsExactly(
+                        new FileConflict(Path.of("foo/bar"), FileConflict.Status.MODIFIED, FileConflict.Status.MODIFIED, false),
+                        new FileConflict(Path.of("system/file_b"), FileConflict.Status.ADDED, FileConflict.Status.ADDED, true)
+                );
+    }
+
     @Test
     public void testCheckUpdatesThrowsVerificationExceptions() throws Exception {
         final ProsperoInstallationManager mgr = new ProsperoInstallationManager(actionFactory);
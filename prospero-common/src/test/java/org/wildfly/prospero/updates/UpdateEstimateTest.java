@@ -0,0 +1,170 @@
+/*
+ * Copyright 2026 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wildfly.prospero.updates;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.wildfly.channel.ArtifactTransferException;
+import org.wildfly.channel.ChannelSession;
+import org.wildfly.channel.MavenArtifact;
+import org.wildfly.prospero.api.ArtifactChange;
+import org.wildfly.prospero.galleon.ArtifactCache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class UpdateEstimateTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private Path installationDir;
+    private Path localRepository;
+    private ChannelSession channelSession;
+
+    @Before
+    public void setUp() throws Exception {
+        installationDir = temp.newFolder("server").toPath();
+        localRepository = temp.newFolder("repository").toPath();
+        channelSession = mock(ChannelSession.class);
+        Files.createDirectories(installationDir.resolve(ArtifactCache.CACHE_FOLDER));
+
+        final ArtifactCache cache = ArtifactCache.getInstance(installationDir);
+        cache.record(new MavenArtifact("org.test", "foo", "jar", null, "1.0", installedFile("foo-1.0.jar", 10)),
+                installationDir.resolve("modules").resolve("foo-1.0.jar"));
+        cache.record(new MavenArtifact("org.test", "bar", "jar", null, "1.0", installedFile("bar-1.0.jar", 20)),
+                installationDir.resolve("modules").resolve("bar-1.0.jar"));
+        cache.flush();
+    }
+
+    @Test
+    public void sizesOfCandidateArtifactsAreEstimated() throws Exception {
+        final Path localFile = localRepository.resolve("org/test/foo/1.1/foo-1.1.jar");
+        Files.createDirectories(localFile.getParent());
+        Files.write(localFile, new byte[15]);
+        resolves("org.test", "foo", "jar", null, "1.1", localFile);
+        resolves("org.test", "bar", "jar", null, "1.1", downloadedFile("bar-1.1.jar", 25));
+
+        final UpdateEstimate estimate = UpdateEstimate.of(installationDir, localRepository, channelSession, new UpdateSet(List.of(
+                ArtifactChange.updated(new DefaultArtifact("org.test:foo:1.0"), new DefaultArtifact("org.test:foo:1.1")),
+                ArtifactChange.updated(new DefaultArtifact("org.test:bar:1.0"), new DefaultArtifact("org.test:bar:1.1")),
+                ArtifactChange.added(new DefaultArtifact("org.test:baz:1.0")))));
+
+        assertThat(estimate.getArtifactCount()).isEqualTo(3);
+        // the files of added artifacts are not known before the update is provisioned
+        assertThat(estimate.getUnknownArtifactCount()).isEqualTo(1);
+        assertThat(estimate.getFilesToReplace()).isEqualTo(2);
+        assertThat(estimate.getFilesToRemove()).isZero();
+        // bar was not available locally, it's downloaded in the new version
+        assertThat(estimate.getBytesToDownload()).isEqualTo(25);
+        assertThat(estimate.getBytesToWrite()).isEqualTo(40);
+        assertThat(estimate.getBackupBytes()).isEqualTo(30);
+    }
+
+    @Test
+    public void candidatesAreResolvedWithInstalledExtension() throws Exception {
+        final ArtifactCache cache = ArtifactCache.getInstance(installationDir);
+        cache.record(new MavenArtifact("org.test", "dist", "zip", null, "1.0", installedFile("dist-1.0.zip", 5)),
+                installationDir.resolve("modules").resolve("dist-1.0.zip"));
+        cache.flush();
+        resolves("org.test", "dist", "zip", null, "1.1", downloadedFile("dist-1.1.zip", 8));
+
+        final UpdateEstimate estimate = UpdateEstimate.of(installationDir, localRepository, channelSession, new UpdateSet(List.of(
+                ArtifactChange.updated(new DefaultArtifact("org.test:dist:1.0"), new DefaultArtifact("org.test:dist:1.1")))));
+
+        verify(channelSession).resolveDirectMavenArtifact("org.test", "dist", "zip", null, "1.1");
+        assertThat(estimate.getFilesToReplace()).isEqualTo(1);
+        assertThat(estimate.getBytesToDownload()).isEqualTo(8);
+        assertThat(estimate.getBytesToWrite()).isEqualTo(8);
+        assertThat(estimate.getBackupBytes()).isEqualTo(5);
+    }
+
+    @Test
+    public void unresolvedCandidatesAreNotEstimated() throws Exception {
+        when(channelSession.resolveDirectMavenArtifact(any(), any(), any(), any(), any()))
+                .thenThrow(new ArtifactTransferException("Exception", Collections.emptySet(), Collections.emptySet()));
+
+        final UpdateEstimate estimate = UpdateEstimate.of(installationDir, localRepository, channelSession, new UpdateSet(List.of(
+                ArtifactChange.updated(new DefaultArtifact("org.test:foo:1.0"), new DefaultArtifact("org.test:foo:1.1")))));
+
+        assertThat(estimate.getUnknownArtifactCount()).isEqualTo(1);
+        assertThat(estimate.getFilesToReplace()).isZero();
+        assertThat(estimate.getBytesToDownload()).isZero();
+        assertThat(estimate.getBytesToWrite()).isZero();
+        assertThat(estimate.getBackupBytes()).isZero();
+    }
+
+    @Test
+    public void removedArtifactsAreKeptInBackup() throws Exception {
+        final UpdateEstimate estimate = UpdateEstimate.of(installationDir, localRepository, channelSession, new UpdateSet(List.of(
+                ArtifactChange.removed(new DefaultArtifact("org.test:foo:1.0")))));
+
+        assertThat(estimate.getFilesToReplace()).isZero();
+        assertThat(estimate.getFilesToRemove()).isEqualTo(1);
+        assertThat(estimate.getBytesToDownload()).isZero();
+        assertThat(estimate.getBytesToWrite()).isZero();
+        assertThat(estimate.getBackupBytes()).isEqualTo(10);
+        verifyNoInteractions(channelSession);
+    }
+
+    @Test
+    public void classifiedArtifactsAreEstimatedSeparately() throws Exception {
+        final ArtifactCache cache = ArtifactCache.getInstance(installationDir);
+        cache.record(new MavenArtifact("org.test", "foo", "jar", "sources", "1.0", installedFile("foo-1.0-sources.jar", 5)),
+                installationDir.resolve("modules").resolve("foo-1.0-sources.jar"));
+        cache.flush();
+
+        final UpdateEstimate estimate = UpdateEstimate.of(installationDir, localRepository, channelSession, new UpdateSet(List.of(
+                ArtifactChange.removed(new DefaultArtifact("org.test:foo:jar:sources:1.0")))));
+
+        assertThat(estimate.getFilesToRemove()).isEqualTo(1);
+        assertThat(estimate.getBackupBytes()).isEqualTo(5);
+    }
+
+    private void resolves(String groupId, String artifactId, String extension, String classifier, String version,
+                          Path file) throws Exception {
+        when(channelSession.resolveDirectMavenArtifact(groupId, artifactId, extension, classifier, version))
+                .thenReturn(new MavenArtifact(groupId, artifactId, extension, classifier, version, file.toFile()));
+    }
+
+    private Path downloadedFile(String name, int size) throws Exception {
+        final Path file = temp.newFolder().toPath().resolve(name);
+        Files.write(file, new byte[size]);
+        return file;
+    }
+
+    private File installedFile(String name, int size) throws Exception {
+        final Path file = installationDir.resolve("modules").resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        return file.toFile();
+    }
+}